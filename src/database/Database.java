@@ -36,11 +36,14 @@ public class Database implements IDatabase{
         add("insert");
         add("update");
         add("delete");
+        add("begin");
+        add("commit");
+        add("rollback");
     }};
 
-    private Database(String dbLoc, int pageBufferSize, int pageSize) {
+    private Database(String dbLoc, int pageBufferSize, int pageSize, boolean restart) {
         try {
-            storageManager = new StorageManager(dbLoc, pageBufferSize, pageSize, false);
+            storageManager = new StorageManager(dbLoc, pageBufferSize, pageSize, restart);
         } catch (StorageManagerException e) {
             System.err.println(e.getLocalizedMessage());
         }
@@ -57,8 +60,21 @@ public class Database implements IDatabase{
      * @return an instance of an database.IDatabase.
      */
     public static IDatabase getConnection(String dbLoc, int pageBufferSize, int pageSize ){
+        return getConnection(dbLoc, pageBufferSize, pageSize, false);
+    }
+
+    /**
+     * Static function that will create or reopen and return a database
+     * @param dbLoc the location to start/restart the database in
+     * @param pageBufferSize the size of the page buffer; max number of pages allowed in the buffer at any given time
+     * @param pageSize the size of a page in bytes, a reopened database keeps the page size it was made with
+     * @param restart reopen the database in the location if true, its catalog and tables are read as they are used;
+     *                start a new database otherwise
+     * @return an instance of an database.IDatabase.
+     */
+    public static IDatabase getConnection(String dbLoc, int pageBufferSize, int pageSize, boolean restart) {
         if (database != null) return database;
-        database = new Database(dbLoc, pageBufferSize, pageSize);
+        database = new Database(dbLoc, pageBufferSize, pageSize, restart);
         return database;
     }
 
@@ -67,10 +83,13 @@ public class Database implements IDatabase{
         statement = StringParser.toLowerCaseNonString(statement.trim());
         String[] statements = statement.split(";");
         for (String s : statements) {
-            if (s.trim().length() == 0) continue;
-            if (ddlCommands.contains(s.substring(0, s.indexOf(' '))))
+            s = s.trim();
+            if (s.length() == 0) continue;
+            // begin, commit and rollback are a single word
+            String command = s.split("[ \n]", 2)[0];
+            if (ddlCommands.contains(command))
                 executeNonQueryDDL(s);
-            else if (dmlCommands.contains(s.substring(0, s.indexOf(' '))))
+            else if (dmlCommands.contains(command))
                 executeNonQueryDML(s);
             else
                 System.err.println("Statement not a command: " + s);
@@ -7,6 +7,7 @@ import storagemanager.buffermanager.datatypes.DataTypeException;
 import storagemanager.buffermanager.datatypes.Datatype;
 import storagemanager.buffermanager.datatypes.ValidDataTypes;
 import storagemanager.buffermanager.datatypes.VarcharData;
+import storagemanager.buffermanager.page.PageCompression;
 
 import java.util.ArrayList;
 
@@ -30,6 +31,7 @@ public class DDLParser implements IDDLParser {
     private final String UNIQUE_STR = "unique";
     private final String FOREIGN_KEY_STR = "foreignkey";
     private final String REFERENCES_STR = "references";
+    private final String COMPRESS_STR = "compress";
     // more keywords
     private final String ADD_STR = "add";
     private final String DROP_STR = "drop";
@@ -55,6 +57,8 @@ public class DDLParser implements IDDLParser {
     private final static String CREATE_TABLE_CONSTRAINT_DEF = "A create table statement is attempting to define " +
             "a constraint which has already been defined. %s";
     private final static String CREATE_TABLE_ALREADY_EXISTS = "A table with the name %s already exists.";
+    private final static String CREATE_TABLE_INVALID_COMPRESSION = "A create table statement is attempting to " +
+            "compress its pages with a compression not supported by the database. \n%s";
     private final static String DROP_TABLE_EMPTY_NAME = "A drop table statement does not specify a table name. \n%s";
     private final static String DROP_TABLE_DNE = "The table %s does not exist and cannot be dropped.";
     private final static String ALTER_TABLE_NO_ADD_DROP = "A alter table statement does not specify either to " +
@@ -172,6 +176,9 @@ public class DDLParser implements IDDLParser {
 
         String innerStatements = args.substring(ibeg + 1,iend);
 
+        // the pages can be compressed with: create table name( ... ) compress [lz4|none], lz4 if none is named
+        PageCompression compression = parseCompression(statement, args.substring(iend + 1).trim());
+
         // we can only have one primary key
         String[] primaryKeyData = new String[0];
         // we can have multiple foreign keys or unique keys
@@ -321,6 +328,7 @@ public class DDLParser implements IDDLParser {
 
 
         Table table = new Table(tableName, attributes);
+        table.setCompression(compression);
 
         // settitng our primary key data
         table.setPrimaryKey(primaryKeyData);
@@ -336,11 +344,35 @@ public class DDLParser implements IDDLParser {
             table.addUnique(unique);
         }
 
-        // adding our table to the catalog
+        // adding our table to the catalog, tables are not part of a transaction
+        Database.storageManager.beginTableChange();
         Database.catalog.addTable(table);
 
     }
 
+    /**
+     * Parses the page compression that may follow the attributes of a create table statement
+     * @param options what follows the closing parenthesis of the statement
+     * @return the compression to use, none if no compression is given
+     * @throws DDLParserException the options are not a compression the database supports
+     */
+    private PageCompression parseCompression(String statement, String options) throws DDLParserException {
+        if (options.endsWith(";"))
+            options = options.substring(0, options.length() - 1).trim();
+        if (options.isEmpty())
+            return PageCompression.NONE;
+        if (!options.startsWith(COMPRESS_STR))
+            throw new DDLParserException(String.format(CREATE_TABLE_INVALID_COMPRESSION, statement));
+        String name = options.substring(COMPRESS_STR.length()).trim();
+        if (name.isEmpty())
+            return PageCompression.LZ4;
+        try {
+            return PageCompression.resolve(name);
+        } catch (IllegalArgumentException e) {
+            throw new DDLParserException(String.format(CREATE_TABLE_INVALID_COMPRESSION, statement));
+        }
+    }
+
     private void parseAlterTableStatement(String statement, String args) throws DDLParserException, StorageManagerException {
 
         int addIdx = args.indexOf(ADD_STR);
@@ -350,8 +382,9 @@ public class DDLParser implements IDDLParser {
         if (addIdx != -1){
             String tableName = args.substring(0, addIdx).trim();
 
-            // get our table
+            // get our table, it is not changed while a transaction runs
             Table table = Database.catalog.getTable(tableName);
+            Database.storageManager.beginTableChange();
 
             // add statement is everything after 'add'
             String addStatement = args.substring(addIdx + ADD_STR.length()).trim();
@@ -467,6 +500,7 @@ public class DDLParser implements IDDLParser {
             //Call tables insert record with each record array from the get records but with the index gotten previously removed
 
             Table table = Database.catalog.getTable(tableName);
+            Database.storageManager.beginTableChange();
 
             // call alterTableDrop(tableName, droppedAtr);
             int idx = Database.catalog.removeAttributeFromTable(tableName, droppedAtr);
@@ -504,6 +538,7 @@ public class DDLParser implements IDDLParser {
         String tableName = args.trim();
 
         try {
+            Database.storageManager.beginTableChange();
             Database.catalog.dropTable(tableName);
         } catch (StorageManagerException e) {
             throw new DDLParserException(e.getLocalizedMessage());
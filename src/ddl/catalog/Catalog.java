@@ -3,27 +3,40 @@ package ddl.catalog;
 import ddl.DDLParser;
 import ddl.DDLParserException;
 import storagemanager.StorageManagerException;
-import storagemanager.buffermanager.diskUtils.DataManager;
 
 import java.io.IOException;
-import java.io.Serializable;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
-public class Catalog implements Serializable {
+public class Catalog {
 
     private static String TABLE_DOES_NOT_EXIST = "The table (%s) does not exist.";
 
     private static Catalog catalog;
 
+    // the tables that were read from disk or added, by name
     private final Map<String, Table> tables;
+    // tables in the catalog on disk that have not been used yet, read on first use
+    private final Set<String> unread;
     private final TableIDGenerator idGenerator;
+    // the catalog on disk, null if it was never saved
+    private CatalogFile file;
 
     private Catalog() {
         tables = new HashMap<>();
+        unread = new HashSet<>();
         idGenerator = new TableIDGenerator();
     }
 
+    private Catalog(CatalogFile file) {
+        tables = new HashMap<>();
+        unread = new HashSet<>(file.getTableNames());
+        idGenerator = new TableIDGenerator(file.getLastTableID());
+        this.file = file;
+    }
+
     public static Catalog newCatalog() {
         if (catalog != null) return catalog;
         catalog = new Catalog();
@@ -40,6 +53,7 @@ public class Catalog implements Serializable {
 
     /**
      * Load a catalog from disk. The storage manager should already be initialized.
+     * Only the names of the tables are read, a table is read the first time it is used
      * @pre a database has previously been created. The storagemanager has already been loaded
      * @throws DDLParserException a catalog has never been created for this database
      * @return the catalog for this database
@@ -47,7 +61,7 @@ public class Catalog implements Serializable {
     public static Catalog loadCatalog() throws DDLParserException {
         if (catalog != null) return catalog;
         try {
-            catalog = DataManager.getCatalog();
+            catalog = new Catalog(CatalogFile.open());
         } catch (IOException e) {
             throw new DDLParserException(DDLParser.CANNOT_LOAD_CATALOG);
         }
@@ -76,7 +90,11 @@ public class Catalog implements Serializable {
      */
     public void saveCatalog() throws DDLParserException {
         try {
-            DataManager.saveCatalog(this);
+            file = CatalogFile.write(idGenerator.getLastID(), tables, unread, file);
+            unread.clear();
+            // every table is in the new catalog, the ones never used are read from it from now on
+            unread.addAll(file.getTableNames());
+            unread.removeAll(tables.keySet());
         } catch (IOException e) {
             throw new DDLParserException(DDLParser.CANNOT_SAVE_CATALOG);
         }
@@ -88,7 +106,7 @@ public class Catalog implements Serializable {
      * @throws StorageManagerException an underlying table with the same id already exists
      */
     public boolean addTable(Table table) throws StorageManagerException {
-        if (tables.containsKey(table.getTableName())) return false;
+        if (getTable(table.getTableName()) != null) return false;
         addTable(table, idGenerator.getNewID());
         return true;
     }
@@ -100,7 +118,7 @@ public class Catalog implements Serializable {
      * @throws StorageManagerException no table to replace
      */
     public boolean replaceTable(Table table) throws StorageManagerException {
-        if (!tables.containsKey(table.getTableName())) return false;
+        if (getTable(table.getTableName()) == null) return false;
         table.dropTable();
         addTable(table, tables.get(table.getTableName()).getTableID());
         return true;
@@ -124,9 +142,24 @@ public class Catalog implements Serializable {
      * @return the table if it exists. Otherwise null
      */
     public Table getTable(String tableName) {
+        if (unread.remove(tableName)) {
+            try {
+                tables.put(tableName, file.readTable(tableName));
+            } catch (IOException e) {
+                throw new IllegalStateException(DDLParser.CANNOT_LOAD_CATALOG, e);
+            }
+        }
         return tables.getOrDefault(tableName, null);
     }
 
+    /**
+     * Read every table that has not been used yet, for changes that have to look at all of them
+     */
+    private void readAllTables() {
+        for (String tableName: new HashSet<>(unread))
+            getTable(tableName);
+    }
+
     /**
      * Remove an attribute from the table
      * @param table the table name
@@ -135,6 +168,7 @@ public class Catalog implements Serializable {
      * @throws DDLParserException the attribute or table dne
      */
     public int removeAttributeFromTable(String table, String attribute) throws DDLParserException {
+        readAllTables();
         if (tables.containsKey(table)) {
             int location = tables.get(table).dropAttribute(attribute);
             for (Table rtable: tables.values()) {
@@ -153,6 +187,7 @@ public class Catalog implements Serializable {
      * @throws NullPointerException the table dne
      */
     public void dropTable(String tableName) throws StorageManagerException, NullPointerException{
+        readAllTables();
         tables.remove(tableName).dropTable();
         for (String name: tables.keySet()) {
             tables.get(name).dropForeignKeysTo(tableName);
@@ -0,0 +1,148 @@
+package ddl.catalog;
+
+import storagemanager.buffermanager.diskUtils.DataManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The catalog as it is kept on disk, a small header and a directory of the tables followed by each table's descriptor.
+ *
+ * <pre>
+ * header      | magic (4) | version (1) | reserved (3) | last table id (4) | tables (4) | directory length (4) |
+ * directory   | per table: name (utf) | position of its descriptor (8) | length of its descriptor (4) |
+ * descriptors | one per table, see {@link Table#write} |
+ * </pre>
+ *
+ * Opening the catalog only reads the header and directory, a table's descriptor is read the first time the table
+ * is used. Descriptors of tables that were never read are copied as they are when the catalog is saved.
+ */
+class CatalogFile {
+
+    private static final int MAGIC = 0x43544C47;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 20;
+
+    private final int lastTableID;
+    // where each table's descriptor is, by table name
+    private final Map<String, long[]> directory;
+
+    private CatalogFile(int lastTableID, Map<String, long[]> directory) {
+        this.lastTableID = lastTableID;
+        this.directory = directory;
+    }
+
+    /**
+     * Read the header and directory of the catalog
+     * @throws IOException there is no catalog or it is not one this version can read
+     */
+    static CatalogFile open() throws IOException {
+        ByteBuffer header = DataManager.readCatalog(0, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC || header.get(4) != VERSION)
+            throw new IOException("Unknown catalog format");
+        int tables = header.getInt(12);
+        int directoryLength = header.getInt(16);
+        ByteBuffer directoryBytes = DataManager.readCatalog(HEADER_SIZE, directoryLength);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(directoryBytes.array(),
+                directoryBytes.arrayOffset(), directoryBytes.limit()));
+        Map<String, long[]> directory = new HashMap<>();
+        for (int i = 0; i < tables; i++) {
+            String name = in.readUTF();
+            directory.put(name, new long[]{in.readLong(), in.readInt()});
+        }
+        return new CatalogFile(header.getInt(8), directory);
+    }
+
+    int getLastTableID() {
+        return lastTableID;
+    }
+
+    Set<String> getTableNames() {
+        return directory.keySet();
+    }
+
+    /**
+     * Read a table's descriptor
+     * @throws IOException the descriptor could not be read
+     */
+    Table readTable(String name) throws IOException {
+        ByteBuffer descriptor = descriptor(name);
+        return Table.read(new DataInputStream(new ByteArrayInputStream(descriptor.array(),
+                descriptor.arrayOffset(), descriptor.limit())));
+    }
+
+    private ByteBuffer descriptor(String name) throws IOException {
+        long[] location = directory.get(name);
+        return DataManager.readCatalog(location[0], (int) location[1]);
+    }
+
+    /**
+     * Replace the catalog on disk
+     * @param tables the tables that were read or added, they are written out again
+     * @param unread the names of the tables that were never read, their descriptors are copied from the old catalog
+     * @param old the catalog the unread tables are in, null if there is none
+     * @return the catalog that was written
+     */
+    static CatalogFile write(int lastTableID, Map<String, Table> tables, Set<String> unread, CatalogFile old)
+            throws IOException {
+        List<String> names = new ArrayList<>();
+        List<ByteBuffer> descriptors = new ArrayList<>();
+        for (Map.Entry<String, Table> entry: tables.entrySet()) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            entry.getValue().write(out);
+            out.flush();
+            names.add(entry.getKey());
+            descriptors.add(ByteBuffer.wrap(bytes.toByteArray()));
+        }
+        for (String name: unread) {
+            names.add(name);
+            descriptors.add(old.descriptor(name));
+        }
+
+        // the directory's length does not depend on where the descriptors go, so it is sized first
+        ByteArrayOutputStream directoryBytes = new ByteArrayOutputStream();
+        DataOutputStream directoryOut = new DataOutputStream(directoryBytes);
+        for (String name: names) {
+            directoryOut.writeUTF(name);
+            directoryOut.writeLong(0);
+            directoryOut.writeInt(0);
+        }
+        directoryOut.flush();
+        long position = HEADER_SIZE + directoryBytes.size();
+        directoryBytes.reset();
+        Map<String, long[]> directory = new HashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            int length = descriptors.get(i).remaining();
+            directoryOut.writeUTF(names.get(i));
+            directoryOut.writeLong(position);
+            directoryOut.writeInt(length);
+            directory.put(names.get(i), new long[]{position, length});
+            position += length;
+        }
+        directoryOut.flush();
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.put(4, VERSION);
+        header.putInt(8, lastTableID);
+        header.putInt(12, names.size());
+        header.putInt(16, directoryBytes.size());
+
+        List<ByteBuffer> pieces = new ArrayList<>();
+        pieces.add(header);
+        pieces.add(ByteBuffer.wrap(directoryBytes.toByteArray()));
+        pieces.addAll(descriptors);
+        DataManager.saveCatalog(pieces);
+        return new CatalogFile(lastTableID, directory);
+    }
+}
@@ -4,6 +4,9 @@ import database.Database;
 import ddl.DDLParserException;
 import storagemanager.StorageManagerException;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -46,6 +49,39 @@ public class ForeignKey implements Serializable {
         table.addForeignKey(this);
     }
 
+    private ForeignKey(String referenceTable, List<String> references, List<String> attributes) {
+        this.referenceTable = referenceTable;
+        this.references = references;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Write the foreign key as part of its table's descriptor in the catalog
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeUTF(referenceTable);
+        out.writeInt(attributes.size());
+        for (int i = 0; i < attributes.size(); i++) {
+            out.writeUTF(attributes.get(i));
+            out.writeUTF(references.get(i));
+        }
+    }
+
+    /**
+     * Read a foreign key written by {@link #write}, it was checked when it was created
+     */
+    static ForeignKey read(DataInputStream in) throws IOException {
+        String referenceTable = in.readUTF();
+        int size = in.readInt();
+        List<String> attributes = new ArrayList<>(size);
+        List<String> references = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            attributes.add(in.readUTF());
+            references.add(in.readUTF());
+        }
+        return new ForeignKey(referenceTable, references, attributes);
+    }
+
     public boolean isReferencingTable(String name) {
         return referenceTable.equals(name);
     }
@@ -4,7 +4,11 @@ import database.Database;
 import ddl.DDLParserException;
 import storagemanager.StorageManagerException;
 import storagemanager.buffermanager.datatypes.DataTypeException;
+import storagemanager.buffermanager.page.PageCompression;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
 
@@ -39,6 +43,9 @@ public class Table implements Serializable {
     private ArrayList<Set<Attribute>> uniques = new ArrayList<>();
     private Set<ForeignKey> foreignKeys = new HashSet<>();
 
+    // how the underlying table's pages are compressed on disk
+    private PageCompression compression = PageCompression.NONE;
+
     public Table(String tableName, ArrayList<Attribute> attributes) throws DDLParserException {
         this.tableName = tableName;
         this.tableSubnames = new HashSet<>();
@@ -149,6 +156,102 @@ public class Table implements Serializable {
         return descriptor;
     }
 
+    /**
+     * Write the table's descriptor to the catalog
+     *
+     * name (utf) | id (4) | compression (1) | subnames | attributes, in index order: name (utf), type (utf) and a
+     * bit per constraint (1) | primary key, -1 if there is none, then attribute indices | uniques, each a count then
+     * attribute indices | foreign keys
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeUTF(tableName);
+        out.writeInt(tableID);
+        out.writeByte(compression.ordinal());
+        out.writeInt(tableSubnames.size());
+        for (String subname: tableSubnames)
+            out.writeUTF(subname);
+        Attribute[] ordered = new Attribute[attributeIndices.size()];
+        for (Map.Entry<Attribute, Integer> entry: attributeIndices.entrySet())
+            ordered[entry.getValue()] = entry.getKey();
+        out.writeInt(ordered.length);
+        for (Attribute attribute: ordered) {
+            out.writeUTF(attribute.getName());
+            out.writeUTF(attribute.getDataType());
+            int constraints = 0;
+            for (Constraint constraint: attribute.getConstraints())
+                constraints |= 1 << constraint.ordinal();
+            out.writeByte(constraints);
+        }
+        out.writeInt(primaryKey == null ? -1 : primaryKey.size());
+        if (primaryKey != null) {
+            for (Attribute attribute: primaryKey)
+                out.writeInt(attributeIndices.get(attribute));
+        }
+        out.writeInt(uniques.size());
+        for (Set<Attribute> unique: uniques) {
+            out.writeInt(unique.size());
+            for (Attribute attribute: unique)
+                out.writeInt(attributeIndices.get(attribute));
+        }
+        out.writeInt(foreignKeys.size());
+        for (ForeignKey foreignKey: foreignKeys)
+            foreignKey.write(out);
+    }
+
+    /**
+     * Read a table's descriptor written by {@link #write}
+     * @throws IOException the descriptor is damaged
+     */
+    static Table read(DataInputStream in) throws IOException {
+        String tableName = in.readUTF();
+        int tableID = in.readInt();
+        PageCompression compression = PageCompression.values()[in.readByte()];
+        Set<String> subnames = new HashSet<>();
+        for (int i = in.readInt(); i > 0; i--)
+            subnames.add(in.readUTF());
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--) {
+            String name = in.readUTF();
+            String dataType = in.readUTF();
+            int bits = in.readByte();
+            List<Constraint> constraints = new ArrayList<>();
+            for (Constraint constraint: Constraint.values())
+                if ((bits & 1 << constraint.ordinal()) != 0) constraints.add(constraint);
+            attributes.add(new Attribute(name, dataType, constraints.toArray(new Constraint[0])));
+        }
+
+        Table table;
+        try {
+            table = new Table(tableName, attributes);
+        } catch (DDLParserException e) {
+            throw new IOException(e.getMessage());
+        }
+        table.tableID = tableID;
+        table.compression = compression;
+        table.tableSubnames.addAll(subnames);
+        int keySize = in.readInt();
+        if (keySize >= 0) {
+            table.primaryKey = new ArrayList<>(keySize);
+            table.primaryKeyParts = new HashSet<>();
+            for (int i = 0; i < keySize; i++) {
+                Attribute attribute = attributes.get(in.readInt());
+                table.primaryKey.add(attribute);
+                table.primaryKeyParts.add(attribute);
+            }
+        }
+        // the uniques made from the attributes' constraints are among the ones written
+        table.uniques.clear();
+        for (int i = in.readInt(); i > 0; i--) {
+            Set<Attribute> unique = new HashSet<>();
+            for (int j = in.readInt(); j > 0; j--)
+                unique.add(attributes.get(in.readInt()));
+            table.uniques.add(unique);
+        }
+        for (int i = in.readInt(); i > 0; i--)
+            table.foreignKeys.add(ForeignKey.read(in));
+        return table;
+    }
+
     public static String generateInternalIdentifier() {
         return Table.INTERNAL_TABLE_SIG + idGenerator.getNewID();
     }
@@ -227,7 +330,18 @@ public class Table implements Serializable {
      * @throws StorageManagerException the table already exists
      */
     void createTable() throws StorageManagerException {
-        Database.storageManager.addTable(tableID, generateDatatype(), generateKeyIndices());
+        Database.storageManager.addTable(tableID, generateDatatype(), generateKeyIndices(), compression);
+    }
+
+    public PageCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * @param compression how the underlying table's pages are compressed, set before the table is added
+     */
+    public void setCompression(PageCompression compression) {
+        this.compression = compression;
     }
 
     /**
@@ -429,6 +543,13 @@ public class Table implements Serializable {
         return true;
     }
 
+    /**
+     * @return true if the table has unique constraints, only then are its records needed to check them
+     */
+    public boolean hasUniques() {
+        return !uniques.isEmpty();
+    }
+
     public boolean checkUniqueConditions(Object[][] table, Set<Object[]> tuples) {
 
         final class UniquePair {
@@ -6,6 +6,14 @@ public class TableIDGenerator implements Serializable {
     int tableID = 0;
     TableIDGenerator() {}
 
+    TableIDGenerator(int lastID) {
+        this.tableID = lastID;
+    }
+
+    int getLastID() {
+        return tableID;
+    }
+
     public int getNewID() {
         return ++tableID;
     }
@@ -25,7 +25,7 @@ public class DMLParser implements IDMLParser {
     private static final String selectRegex = "[ ]*(from|where|order by)[ ]*";
 
     private enum DMLCommands {
-        INSERT(statement -> {
+        INSERT(true, statement -> {
 
             String[] dml = statement.split(" [ ]*", 5);
             String[] values = dml[4].split(",[ ]*");
@@ -36,7 +36,8 @@ public class DMLParser implements IDMLParser {
             boolean generateRefTable = true;
             for (String value: values) {
                 try {
-                    Object[][] tableValues = table.getRecords();
+                    // a table without unique constraints is not read to check them
+                    Object[][] tableValues = table.hasUniques() ? table.getRecords() : new Object[0][];
                     Object[] record = table.getRecordFromString(value.substring(1, value.length() - 1));
                     if (!table.checkNotNullConditions(record)) throw new DMLParserException(NOT_NULL);
                     if (!table.checkUniqueConditions(tableValues, Collections.singleton(record))) throw new DMLParserException(NOT_UNIQUE);
@@ -48,7 +49,7 @@ public class DMLParser implements IDMLParser {
                 }
             }
         }),
-        DELETE(statement -> {
+        DELETE(true, statement -> {
             String[] dml = statement.split(" [ ]*", 5);
 
 
@@ -70,7 +71,7 @@ public class DMLParser implements IDMLParser {
 
 
         }),
-        UPDATE(statement -> {
+        UPDATE(true, statement -> {
 
             String[] dml = statement.split(" [ ]*", 4);
             Table table = Database.catalog.getTable(dml[1]);
@@ -101,10 +102,34 @@ public class DMLParser implements IDMLParser {
             } catch (StorageManagerException e) {
                 throw new DMLParserException(e.getLocalizedMessage());
             }
+        }),
+        BEGIN(false, statement -> {
+            try {
+                Database.storageManager.beginTransaction();
+            } catch (StorageManagerException e) {
+                throw new DMLParserException(e.getLocalizedMessage());
+            }
+        }),
+        COMMIT(false, statement -> {
+            try {
+                Database.storageManager.commitTransaction();
+            } catch (StorageManagerException e) {
+                throw new DMLParserException(e.getLocalizedMessage());
+            }
+        }),
+        ROLLBACK(false, statement -> {
+            try {
+                Database.storageManager.rollbackTransaction();
+            } catch (StorageManagerException e) {
+                throw new DMLParserException(e.getLocalizedMessage());
+            }
         });
 
+        // the command changes records, the changes succeed or fail together
+        final boolean statement;
         final DMLHandle handle;
-        private DMLCommands(DMLHandle handle) {
+        private DMLCommands(boolean statement, DMLHandle handle) {
+            this.statement = statement;
             this.handle = handle;
         }
     }
@@ -123,10 +148,42 @@ public class DMLParser implements IDMLParser {
         return dmlParser;
     }
 
+    /**
+     * Statements between begin and commit are one transaction, its changes are made durable once by the commit.
+     * Rollback takes back every change made since begin. A statement that fails takes back every row it changed,
+     * inside a transaction the rest of the transaction carries on
+     */
     @Override
     public void parseDMLStatement(String statement) throws DMLParserException {
-        DMLCommands.valueOf(statement.substring(0, statement.indexOf(' ')).toUpperCase()).handle.parseDMLStatement(StringParser.toLowerCaseNonString(statement));
+        statement = statement.trim();
+        String command = statement.split(" ", 2)[0];
+        DMLCommands dmlCommand = DMLCommands.valueOf(command.toUpperCase());
+        statement = StringParser.toLowerCaseNonString(statement);
+        if (!dmlCommand.statement) {
+            dmlCommand.handle.parseDMLStatement(statement);
+            return;
+        }
 
+        try {
+            Database.storageManager.beginStatement();
+        } catch (StorageManagerException e) {
+            throw new DMLParserException(e.getLocalizedMessage());
+        }
+        try {
+            dmlCommand.handle.parseDMLStatement(statement);
+        } catch (DMLParserException | RuntimeException e) {
+            try {
+                Database.storageManager.rollbackStatement();
+            } catch (StorageManagerException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        }
+        try {
+            Database.storageManager.commitStatement();
+        } catch (StorageManagerException e) {
+            throw new DMLParserException(e.getLocalizedMessage());
+        }
     }
 
 
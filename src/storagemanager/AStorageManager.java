@@ -1,6 +1,7 @@
 package storagemanager;
 
 import storagemanager.buffermanager.datatypes.Datatype;
+import storagemanager.buffermanager.page.PageCompression;
 
 import java.util.ArrayList;
 
@@ -77,6 +78,50 @@ public abstract class AStorageManager {
      */
     public abstract void removeRecord(int table, Object[] keyValue) throws StorageManagerException;
 
+    /**
+     * Starts a transaction, the changes made until it is committed or rolled back are one transaction and are only
+     * made durable once, by the commit
+     * @throws StorageManagerException if a transaction is already running
+     */
+    public abstract void beginTransaction() throws StorageManagerException;
+
+    /**
+     * Commits the running transaction, its changes are durable once this returns
+     * @throws StorageManagerException if no transaction is running or its commit fails to be written
+     */
+    public abstract void commitTransaction() throws StorageManagerException;
+
+    /**
+     * Takes back every change made by the running transaction
+     * @throws StorageManagerException if no transaction is running
+     */
+    public abstract void rollbackTransaction() throws StorageManagerException;
+
+    /**
+     * Checks that tables can be created, changed or dropped, what is done to them is not part of a transaction and
+     * could not be rolled back
+     * @throws StorageManagerException if a transaction or statement is running
+     */
+    public abstract void beginTableChange() throws StorageManagerException;
+
+    /**
+     * Starts a statement, the changes made until it is committed or rolled back succeed or fail together. Outside
+     * a transaction the statement is a transaction of its own
+     * @throws StorageManagerException if a statement is already running
+     */
+    public abstract void beginStatement() throws StorageManagerException;
+
+    /**
+     * Commits the running statement, outside a transaction its changes are durable once this returns
+     * @throws StorageManagerException if its commit fails to be written
+     */
+    public abstract void commitStatement() throws StorageManagerException;
+
+    /**
+     * Takes back every change made by the running statement, the transaction it is part of carries on
+     */
+    public abstract void rollbackStatement() throws StorageManagerException;
+
     /**
      * Will delete all entries in this table. Including clearing and freeing all pages. Will also remove the table
      * from the database
@@ -107,6 +152,17 @@ public abstract class AStorageManager {
      */
     public abstract void addTable(int table, String[] dataTypes, Integer[] keyIndices) throws StorageManagerException;
 
+    /**
+     * Adds an empty table with the provided name whose pages are compressed on disk
+     * @param table number of the table
+     * @param dataTypes ArrayList of Strings representing the data types stored in the table
+     * @param keyIndices ArrayList containing the indices of the primary key attributes of the table.
+     * @param compression how the table's pages are compressed on disk
+     * @throws StorageManagerException if the table already exists
+     */
+    public abstract void addTable(int table, String[] dataTypes, Integer[] keyIndices, PageCompression compression)
+            throws StorageManagerException;
+
     /**
      * Get the underlying lists of datatypes from the internal table
      * @param id the internal table id
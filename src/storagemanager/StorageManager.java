@@ -1,9 +1,13 @@
 package storagemanager;
 
 import storagemanager.buffermanager.BufferManager;
+import storagemanager.buffermanager.BufferOptions;
 import storagemanager.buffermanager.Table;
 import storagemanager.buffermanager.datatypes.Datatype;
 import storagemanager.buffermanager.diskUtils.DataManager;
+import storagemanager.buffermanager.diskUtils.Superblock;
+import storagemanager.buffermanager.page.PageCompression;
+import storagemanager.buffermanager.pageManager.BufferStatistics;
 import storagemanager.buffermanager.pageManager.PageBuffer;
 
 import java.io.File;
@@ -29,6 +33,11 @@ public class StorageManager extends AStorageManager {
     public static final String CANNOT_MAKE_NEW_DB = "A new database cannot be created";
     public static final String CANNOT_LOAD_DATA = "Data failed to be loaded from disk.";
     public static final String CANNOT_LOAD_FILE = "File %s failed to be loaded from disk.";
+    public static final String UNSUPPORTED_FORMAT = "The database was written in format %s, which cannot be read.";
+    public static final String TRANSACTION_RUNNING = "a transaction is already running.";
+    public static final String NO_TRANSACTION = "there is no transaction running.";
+    public static final String STATEMENT_RUNNING = "a statement is already running.";
+    public static final String TABLE_CHANGE_IN_TRANSACTION = "tables cannot be created, changed or dropped while a transaction is running.";
 
 
     private BufferManager bufferManager;
@@ -46,10 +55,34 @@ public class StorageManager extends AStorageManager {
      * @throws StorageManagerException database fails to restart or start
      */
     public StorageManager(String dbLoc, int pageBufferSize, int pageSize, boolean restart) throws StorageManagerException {
+        this(dbLoc, pageBufferSize, pageSize, restart, new BufferOptions());
+    }
+
+    /**
+     * Creates an instance of the database with tuned buffer options.
+     *
+     * @param dbLoc the location to start/restart the database in
+     * @param pageBufferSize the size of the page buffer; max number of pages allowed in the buffer at any given time
+     * @param pageSize the size of a page in bytes
+     * @param restart restart the database in the location if true; start a new database otherwise
+     * @param options the page replacement policy, background writer, read ahead, async read, off heap frame, mapped read,
+     *                warm up, write ahead log and checkpoint settings
+     * @throws StorageManagerException database fails to restart or start
+     */
+    public StorageManager(String dbLoc, int pageBufferSize, int pageSize, boolean restart,
+                          BufferOptions options) throws StorageManagerException {
         super(dbLoc, pageBufferSize, pageSize, restart);
+        // a database keeps the page size it was made with
+        if (restart && DataManager.getSuperblock() != null)
+            pageSize = DataManager.getSuperblock().getPageSize();
         DataManager.setPageSize(pageSize);
+        DataManager.setMappedReads(options.isMappedReads());
         DataManager.setDbmsPath(dbLoc);
-        bufferManager = new BufferManager(pageBufferSize, pageSize);
+        bufferManager = new BufferManager(pageBufferSize, pageSize, options);
+        // a database that stopped without shutting down is brought back to where its write ahead log left it
+        bufferManager.open();
+        if (restart && options.isWarmUpOnRestart())
+            bufferManager.warmUp();
     }
 
     @Override
@@ -76,6 +109,41 @@ public class StorageManager extends AStorageManager {
         bufferManager.removeRecord(table,keyValue);
     }
 
+    @Override
+    public void beginTransaction() throws StorageManagerException {
+        bufferManager.beginTransaction();
+    }
+
+    @Override
+    public void commitTransaction() throws StorageManagerException {
+        bufferManager.commitTransaction();
+    }
+
+    @Override
+    public void rollbackTransaction() throws StorageManagerException {
+        bufferManager.rollbackTransaction();
+    }
+
+    @Override
+    public void beginTableChange() throws StorageManagerException {
+        bufferManager.beginTableChange();
+    }
+
+    @Override
+    public void beginStatement() throws StorageManagerException {
+        bufferManager.beginStatement();
+    }
+
+    @Override
+    public void commitStatement() throws StorageManagerException {
+        bufferManager.commitStatement();
+    }
+
+    @Override
+    public void rollbackStatement() throws StorageManagerException {
+        bufferManager.rollbackStatement();
+    }
+
     @Override
     public void dropTable(int table) throws StorageManagerException {
 
@@ -107,10 +175,17 @@ public class StorageManager extends AStorageManager {
     }
 
     public void addTable(int id, String[] dataTypes, Integer[] keyIndices) throws StorageManagerException{
+        addTable(id, dataTypes, keyIndices, PageCompression.NONE);
+    }
+
+    @Override
+    public void addTable(int id, String[] dataTypes, Integer[] keyIndices, PageCompression compression)
+            throws StorageManagerException {
+        bufferManager.beginTableCreate(id);
         if(!DataManager.createTableDirectory(id))
             throw new StorageManagerException(String.format(TABLE_EXISTS_EXCEPTION_FORMAT, id));
 
-        Table table = new Table(id, dataTypes, keyIndices, bufferManager.getPageSize());
+        Table table = new Table(id, dataTypes, keyIndices, bufferManager.getPageSize(), compression);
         DataManager.saveTable(table,id);
     }
 
@@ -119,6 +194,13 @@ public class StorageManager extends AStorageManager {
         return bufferManager.getTable(table).getDatatypes();
     }
 
+    /**
+     * @return counts of the page buffer's hits, misses, evictions and writes
+     */
+    public BufferStatistics getBufferStatistics() {
+        return bufferManager.getStatistics();
+    }
+
     @Override
     public void purgeBuffer() throws StorageManagerException {
         bufferManager.shutDown();
@@ -136,7 +218,11 @@ public class StorageManager extends AStorageManager {
             throw new StorageManagerException("Invalid database path, attempting to restart in a directory that does" +
                     "not exist!");
         }
-        // we don't need to do anything when our database restarts
+        // the superblock says whether the database was shut down cleanly, nothing else is read until it is used
+        DataManager.setDbmsPath(dbLoc);
+        Superblock superblock = DataManager.openSuperblock();
+        if (superblock != null && superblock.getFormatVersion() != Superblock.FORMAT_VERSION)
+            throw new StorageManagerException(String.format(UNSUPPORTED_FORMAT, superblock.getFormatVersion()));
     }
 
     @Override
@@ -2,17 +2,30 @@ package storagemanager.buffermanager;
 
 import storagemanager.StorageManager;
 import storagemanager.buffermanager.diskUtils.DataManager;
+import storagemanager.buffermanager.diskUtils.Superblock;
 import storagemanager.StorageManagerException;
 import storagemanager.buffermanager.page.Page;
 import storagemanager.buffermanager.page.PageTypes;
 import storagemanager.buffermanager.page.RecordPage;
+import storagemanager.buffermanager.pageManager.AccessType;
+import storagemanager.buffermanager.pageManager.BufferStatistics;
 import storagemanager.buffermanager.pageManager.PageBuffer;
+import storagemanager.buffermanager.page.PageFormat;
+import storagemanager.buffermanager.wal.Checkpoint;
+import storagemanager.buffermanager.wal.LogRecord;
+import storagemanager.buffermanager.wal.LogRecordType;
+import storagemanager.buffermanager.wal.WriteAheadLog;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.*;
 
 
 public class BufferManager {
+    // how much of the changes a transaction keeps to roll back may wait in memory before it is written out
+    private static final int MAX_PENDING_BYTES = 1 << 20;
+
     /**
      * manages two maps,
      * manage catalog
@@ -24,11 +37,51 @@ public class BufferManager {
     private PageBuffer pageBuffer;
     private final Map<Integer, Table> tableMap;
     private final int pageSize;
+    private final BufferOptions options;
+    // the write ahead log, opened by the first change when changes are logged, null otherwise
+    private WriteAheadLog log = null;
+    // the lsn of the last record appended to the log, pages changed after it carry it
+    private long lastLsn = 0;
+    // takes checkpoints while the log is open, null when there is no recovery target
+    private Checkpointer checkpointer = null;
+    // the end of the log when the last checkpoint was taken
+    private long checkpointedTo = 0;
+    // the running transaction, 0 if none is or changes are not logged
+    private long transaction = 0;
+    // a transaction was begun and runs until it is committed or rolled back, its statements do not commit alone
+    private boolean inTransaction = false;
+    // a statement was begun and runs until it is committed or rolled back, the operations it makes do not commit alone
+    private boolean inStatement = false;
+    // the lsns of the changes the running transaction made in the undo log, read back in reverse to roll it back
+    private long[] changes = new long[16];
+    private int changeCount = 0;
+    // where the changes of the running statement start among the transaction's
+    private int statementStart = 0;
+    // the tables created while the transaction runs, they are not part of it
+    private final Set<Integer> createdTables = new HashSet<>();
+    // the changes of a transaction when they are not logged, null until a transaction first needs it
+    private WriteAheadLog scratchLog = null;
+    // a change is being undone
+    private boolean undoing = false;
+    // the lsn of the change being undone, 0 while none is
+    private long compensating = 0;
 
     public BufferManager(int maxPages, int pageSize){
+        this(maxPages, pageSize, new BufferOptions());
+    }
+
+    /**
+     * The buffer manager is the lock for the page buffer, every public method holds it so the page buffer's
+     * background workers can run between operations.
+     * @param maxPages the max amount of pages in the page buffer
+     * @param pageSize the size of a page in bytes
+     * @param options the replacement policy, background writer, read ahead, off heap frame and warm up settings
+     */
+    public BufferManager(int maxPages, int pageSize, BufferOptions options){
         this.pageSize = pageSize;
+        this.options = options;
         tableMap = new HashMap<>();
-        pageBuffer = new PageBuffer(this, maxPages);
+        pageBuffer = new PageBuffer(this, maxPages, options);
     }
 
     /**
@@ -41,10 +94,20 @@ public class BufferManager {
      * inserts a record through insertion sort.
      */
     public void insertRecord(int tableId, Object[] record) throws StorageManagerException {
-        Table table = getTable(tableId);
+        awaitCommit(insert(tableId, record));
+    }
 
-        // in this case just create page and insert in empty page, it's our first entry
-        pageBuffer.insertRecord(table, record);
+    private synchronized long insert(int tableId, Object[] record) throws StorageManagerException {
+        Table table = getTable(tableId);
+        int start = beginOperation();
+        try {
+            // in this case just create page and insert in empty page, it's our first entry
+            pageBuffer.insertRecord(table, record);
+        } catch (StorageManagerException | RuntimeException e) {
+            rollbackOperation(start);
+            throw e;
+        }
+        return commitOperation();
     }
 
     /**
@@ -58,62 +121,107 @@ public class BufferManager {
      *
      *    returns the position of the record in the table
      */
-    public Object[] getRecord(int table, Object[] key) throws StorageManagerException {
+    public synchronized Object[] getRecord(int table, Object[] key) throws StorageManagerException {
 
         Table target_table = getTable(table);
         Object[] keyRecord = target_table.getRecordFromKey(key);
         //call getPages in dataManager
         //call searchPages in pageBuffer to get the record page
         RecordPage  record = pageBuffer.searchPages(target_table, keyRecord);
-        return record.getRecord(keyRecord);
+        return record == null ? null : record.getRecord(keyRecord);
     }
 
 
     public void updateRecord(int tableId, Object[] record) throws StorageManagerException{
+        awaitCommit(update(tableId, record));
+    }
+
+    private synchronized long update(int tableId, Object[] record) throws StorageManagerException {
         Table table = getTable(tableId);
-        pageBuffer.updateRecord(table, record);
+        int start = beginOperation();
+        try {
+            pageBuffer.updateRecord(table, record);
+        } catch (StorageManagerException | RuntimeException e) {
+            rollbackOperation(start);
+            throw e;
+        }
+        return commitOperation();
     }
 
     public void removeRecord(int tableId, Object[] keyValue) throws StorageManagerException {
+        awaitCommit(remove(tableId, keyValue));
+    }
+
+    private synchronized long remove(int tableId, Object[] keyValue) throws StorageManagerException {
         Table table = getTable(tableId);
-        pageBuffer.removeRecord(table, keyValue);
+        int start = beginOperation();
+        try {
+            pageBuffer.removeRecord(table, keyValue);
+        } catch (StorageManagerException | RuntimeException e) {
+            rollbackOperation(start);
+            throw e;
+        }
+        return commitOperation();
     }
 
-    public Object[][] getAllRecords(int tableID) throws StorageManagerException {
+    /**
+     * Reads every record of a table. The pages are read as a scan so the page buffer
+     * does not let them push out pages that are used more often.
+     * Pages that are not in the buffer are read a batch at a time, the reads of a batch are in flight together.
+     */
+    public synchronized Object[][] getAllRecords(int tableID) throws StorageManagerException {
         int entities = 0;
-        for (Integer pageID: getTable(tableID).getPages()) {
-            RecordPage recordPage = pageBuffer.getRecordPage(tableID, pageID);
+        List<RecordPage> pages = pageBuffer.getRecordPages(tableID, getTable(tableID).getPages(), AccessType.SCAN);
+        for (RecordPage recordPage: pages)
             entities += recordPage.getEntriesCount();
-        }
+        // pages keep their records encoded, each record is decoded once straight into the result
         Object[][] records = new Object[entities][];
         int current = 0;
-        for (Integer pageID: getTable(tableID).getPages()) {
-            RecordPage recordPage = pageBuffer.getRecordPage(tableID, pageID);
-            Object[][] pageRecords = recordPage.getRecords();
-            for (Object[] record: pageRecords) {
-                records[current++] = record;
-            }
+        for (RecordPage recordPage: pages) {
+            recordPage.copyRecords(records, current);
+            current += recordPage.getEntriesCount();
         }
         return records;
     }
 
-    public void clearTable(int table) throws StorageManagerException {
-        pageBuffer.emptyTablePool(getTable(table));
-        for(int pageID = 0; pageID <= getTable(table).getHighestPage(); pageID++) {
-            DataManager.deletePage(table, pageID, PageTypes.RECORD_PAGE);
-        }
-        getTable(table).resetPages();
+    public synchronized void clearTable(int tableId) throws StorageManagerException {
+        beginTableChange(tableId);
+        Table table = getTable(tableId);
+        logClear(table);
+        clearPages(table);
+        table.saveManifest();
     }
 
-    public void removeTable(int table) throws StorageManagerException {
+    /**
+     * Drop every page of a table, it leaves the table's order first so nothing about the pages is logged
+     */
+    void clearPages(Table table) throws StorageManagerException {
+        table.resetPages();
+        pageBuffer.emptyTablePool(table);
+        DataManager.deletePages(table.getId(), PageTypes.RECORD_PAGE);
+    }
+
+    public synchronized void removeTable(int table) throws StorageManagerException {
+        beginTableChange(table);
+        logClear(getTable(table));
         pageBuffer.forgetTablePool(getTable(table));
         tableMap.remove(table);
+        createdTables.remove(table);
+    }
+
+    /**
+     * The table's files are deleted right away, a restart must not bring back what was logged before
+     */
+    private void logClear(Table table) throws StorageManagerException {
+        if (log == null)
+            return;
+        flushLog(append(new LogRecord(LogRecordType.CLEAR, 0, 0, table.getId(), -1, null, null)));
     }
 
     /**
      * Updates a table after it has been modified in the table map
      */
-    public void updateTable(Table table){
+    public synchronized void updateTable(Table table){
         tableMap.put(table.getId(),table);
     }
 
@@ -129,18 +237,19 @@ public class BufferManager {
         } catch (IOException e) {
             throw new StorageManagerException(String.format(StorageManager.TABLE_DNE_FORMAT, id));
         }
+        table.setLogPosition(this::logPosition);
         tableMap.put(id,table);
         return table;
     }
 
-    public Table getTable(int id) throws StorageManagerException {
+    public synchronized Table getTable(int id) throws StorageManagerException {
         if(tableMap.get(id) == null) {
             return loadTable(id);
         }
         return tableMap.get(id);
     }
 
-    public Map<Integer, Table> getTableMap() {
+    public synchronized Map<Integer, Table> getTableMap() {
         return tableMap;
     }
 
@@ -148,15 +257,663 @@ public class BufferManager {
         return pageSize;
     }
 
+    public synchronized BufferStatistics getStatistics() {
+        return pageBuffer.getStatistics();
+    }
+
+    /**
+     * Load the pages that were hot at the last shut down back into the buffer in the background,
+     * operations can run while the buffer warms up
+     */
+    public synchronized void warmUp() {
+        pageBuffer.warmUp(DataManager.getHotPages());
+    }
+
+    /**
+     * Flag the database as not shut down cleanly, before the first change after it was opened or shut down.
+     * Until it is shut down again, a restart checks what was saved about the pages against the pages themselves
+     */
+    public synchronized void beginChanges() throws StorageManagerException {
+        if (options.isWriteAheadLog() && log == null)
+            openLog();
+        Superblock superblock = DataManager.getSuperblock();
+        if (superblock == null)
+            DataManager.saveSuperblock(new Superblock(pageSize, false, DataManager.catalogObjName));
+        else if (superblock.isClean())
+            DataManager.saveSuperblock(superblock.withClean(false));
+    }
+
+    /**
+     * Begin creating, changing or dropping a table. Tables are not part of a transaction, what is done to them
+     * could not be rolled back, so they can not be changed while one or a statement is running
+     */
+    public synchronized void beginTableChange() throws StorageManagerException {
+        if (inTransaction || inStatement)
+            throw new StorageManagerException(StorageManager.TABLE_CHANGE_IN_TRANSACTION);
+        beginChanges();
+    }
+
+    /**
+     * Begin clearing or dropping a table. A table created while the transaction runs, as a query makes to hold
+     * its results, is not part of it and may go, any other would take the transaction's changes with it
+     */
+    private void beginTableChange(int table) throws StorageManagerException {
+        if (!createdTables.contains(table))
+            beginTableChange();
+    }
+
+    /**
+     * Begin creating a table. One created while a transaction runs is not part of it, its changes are not kept
+     * to roll back
+     */
+    public synchronized void beginTableCreate(int table) throws StorageManagerException {
+        beginChanges();
+        if (inTransaction || inStatement)
+            createdTables.add(table);
+    }
+
+    /**
+     * Start a transaction that runs until it is committed or rolled back. One transaction runs at a time, every
+     * statement made while it runs is part of it
+     */
+    public synchronized void beginTransaction() throws StorageManagerException {
+        if (inTransaction)
+            throw new StorageManagerException(StorageManager.TRANSACTION_RUNNING);
+        if (inStatement)
+            throw new StorageManagerException(StorageManager.STATEMENT_RUNNING);
+        beginChanges();
+        changeCount = 0;
+        transaction = log == null ? 0 : log.nextLsn();
+        inTransaction = true;
+    }
+
+    /**
+     * Commit the running transaction, the log is forced once for all of its statements
+     */
+    public void commitTransaction() throws StorageManagerException {
+        awaitCommit(commit());
+    }
+
+    private synchronized long commit() throws StorageManagerException {
+        if (!inTransaction)
+            throw new StorageManagerException(StorageManager.NO_TRANSACTION);
+        if (inStatement)
+            throw new StorageManagerException(StorageManager.STATEMENT_RUNNING);
+        return endTransaction(LogRecordType.COMMIT, changeCount > 0);
+    }
+
+    /**
+     * Undo every change of the running transaction, newest first. A rollback that fails leaves the transaction
+     * running with the changes it could not undo
+     */
+    public synchronized void rollbackTransaction() throws StorageManagerException {
+        if (!inTransaction)
+            throw new StorageManagerException(StorageManager.NO_TRANSACTION);
+        boolean changed = changeCount > 0;
+        undoChanges(0);
+        endTransaction(LogRecordType.ABORT, changed);
+    }
+
+    /**
+     * Start a statement that makes several changes, they succeed or fail together. Outside a transaction the
+     * statement is a transaction of its own, inside one a statement that fails takes back only its own changes
+     */
+    public synchronized void beginStatement() throws StorageManagerException {
+        if (inStatement)
+            throw new StorageManagerException(StorageManager.STATEMENT_RUNNING);
+        beginChanges();
+        if (inTransaction) {
+            statementStart = changeCount;
+        } else {
+            changeCount = 0;
+            statementStart = 0;
+            transaction = log == null ? 0 : log.nextLsn();
+        }
+        inStatement = true;
+    }
+
+    /**
+     * Commit the running statement, outside a transaction its changes are durable once this returns
+     */
+    public void commitStatement() throws StorageManagerException {
+        awaitCommit(endStatement());
+    }
+
+    private synchronized long endStatement() throws StorageManagerException {
+        if (!inStatement)
+            return 0;
+        inStatement = false;
+        if (inTransaction)
+            return 0;
+        return endTransaction(LogRecordType.COMMIT, changeCount > 0);
+    }
+
+    /**
+     * Undo every change of the running statement, newest first
+     */
+    public synchronized void rollbackStatement() throws StorageManagerException {
+        if (!inStatement)
+            return;
+        inStatement = false;
+        boolean changed = changeCount > 0;
+        undoChanges(statementStart);
+        if (!inTransaction)
+            endTransaction(LogRecordType.ABORT, changed);
+    }
+
+    /**
+     * Start an operation on a record, outside a statement or transaction the changes it makes are one transaction
+     * of their own
+     * @return where the operation's changes start among the running transaction's
+     */
+    private int beginOperation() throws StorageManagerException {
+        beginChanges();
+        if (inTransaction || inStatement)
+            return changeCount;
+        changeCount = 0;
+        statementStart = 0;
+        transaction = log == null ? 0 : log.nextLsn();
+        return 0;
+    }
+
+    /**
+     * @return the lsn of the commit record the caller waits on once it lets go of the buffer, 0 if the operation
+     *         changed nothing or is part of a statement or transaction that commits later
+     */
+    private long commitOperation() throws StorageManagerException {
+        if (inTransaction || inStatement)
+            return 0;
+        return endTransaction(LogRecordType.COMMIT, changeCount > 0);
+    }
+
+    /**
+     * Undo what a failed operation changed, newest change first. Outside a statement or transaction the
+     * operation ends, inside one it carries on without the operation
+     * @param from where the operation's changes start
+     */
+    private void rollbackOperation(int from) throws StorageManagerException {
+        boolean changed = changeCount > 0;
+        undoChanges(from);
+        if (!inTransaction && !inStatement)
+            endTransaction(LogRecordType.ABORT, changed);
+    }
+
+    /**
+     * Undo the running transaction's changes from one on, newest first. They are read back from the undo log,
+     * only their lsns are kept in memory. If a change can not be undone the changes not undone yet stay with a
+     * transaction that runs until it is rolled back, nothing ends it as if it had been
+     */
+    private void undoChanges(int from) throws StorageManagerException {
+        if (changeCount <= from)
+            return;
+        try {
+            WriteAheadLog undoLog = undoLog();
+            undoLog.flush(changes[changeCount - 1]);
+            for (int i = changeCount - 1; i >= from; i--) {
+                LogRecord change = undoLog.read(changes[i]);
+                if (change == null)
+                    throw new StorageManagerException(StorageManager.CANNOT_LOAD_DATA);
+                undo(change);
+                changeCount = i;
+            }
+        } catch (IOException e) {
+            keepRunning();
+            throw new StorageManagerException(StorageManager.CANNOT_LOAD_DATA);
+        } catch (StorageManagerException | RuntimeException e) {
+            keepRunning();
+            throw e;
+        }
+    }
+
+    // a statement that failed to roll back is rolled back again by its caller, anything else becomes a transaction
+    private void keepRunning() {
+        if (!inStatement)
+            inTransaction = true;
+    }
+
+    /**
+     * Log the end of the running transaction
+     * @param changed the transaction changed something, one that did not has nothing logged to end
+     * @return the lsn of its end record, 0 if none was logged
+     */
+    private long endTransaction(LogRecordType type, boolean changed) throws StorageManagerException {
+        long lsn = 0;
+        try {
+            if (log != null && changed)
+                lsn = append(new LogRecord(type, transaction, 0, 0, -1, null, null));
+            // the changes kept aside are not needed any more
+            if (scratchLog != null && scratchLog.nextLsn() != scratchLog.firstLsn())
+                scratchLog.reset();
+        } catch (IOException e) {
+            throw new StorageManagerException(StorageManager.CANNOT_SAVE_DATA);
+        } finally {
+            changeCount = 0;
+            statementStart = 0;
+            transaction = 0;
+            inTransaction = false;
+            inStatement = false;
+            createdTables.clear();
+        }
+        return lsn;
+    }
+
+    /**
+     * @return the log the running transaction's changes are read back from, the write ahead log when changes are
+     *         logged and a scratch log kept beside the database otherwise
+     */
+    private WriteAheadLog undoLog() throws StorageManagerException {
+        if (log != null)
+            return log;
+        if (scratchLog == null) {
+            try {
+                scratchLog = WriteAheadLog.openScratch(DataManager.undoLogPath());
+            } catch (IOException e) {
+                throw new StorageManagerException(String.format(StorageManager.CANNOT_LOAD_FILE,
+                        DataManager.undoLogPath()));
+            }
+        }
+        return scratchLog;
+    }
+
+    /**
+     * Remember a change of the running transaction to roll it back. Once the records not yet written out take
+     * up too much memory they are written, a long transaction does not keep its changes in memory
+     */
+    private void keep(WriteAheadLog undoLog, long lsn) throws StorageManagerException {
+        if (changeCount == changes.length)
+            changes = Arrays.copyOf(changes, changeCount * 2);
+        changes[changeCount++] = lsn;
+        if (undoLog.pendingBytes() > MAX_PENDING_BYTES) {
+            try {
+                undoLog.flush(lsn);
+            } catch (IOException e) {
+                throw new StorageManagerException(StorageManager.CANNOT_SAVE_DATA);
+            }
+        }
+    }
+
+    /**
+     * Undo a logged change by its key, wherever the record is now. A record already as it was before the change is
+     * left alone, any other failure to put it back is thrown. The undo is logged as a change of the same
+     * transaction that refers to the one it undoes, a restart does not undo it again
+     */
+    void undo(LogRecord change) throws StorageManagerException {
+        Table table = tableMap.get(change.getTable());
+        if (table == null) {
+            try {
+                table = getTable(change.getTable());
+            } catch (StorageManagerException e) {
+                // the table is gone and what it held with it
+                return;
+            }
+        }
+        Object[][] before = records(table, change.getBefore());
+        Object[][] after = records(table, change.getAfter());
+        long running = transaction;
+        transaction = change.getTransaction();
+        undoing = true;
+        compensating = change.getLsn();
+        try {
+            switch (change.getType()) {
+                case INSERT:
+                    if (after.length > 0 && currentRecord(table, after[0]) != null)
+                        pageBuffer.removeRecord(table, table.recordToKey(after[0]));
+                    break;
+                case UPDATE:
+                    if (before.length > 0 && currentRecord(table, before[0]) != null)
+                        pageBuffer.updateRecord(table, before[0]);
+                    break;
+                case DELETE:
+                    if (before.length > 0 && currentRecord(table, before[0]) == null)
+                        pageBuffer.insertRecord(table, before[0]);
+                    break;
+                default:
+                    break;
+            }
+        } finally {
+            undoing = false;
+            compensating = 0;
+            transaction = running;
+        }
+    }
+
     /**
      * Functions to execute when the program is shut down
      */
-    public void shutDown() throws StorageManagerException {
+    public synchronized void shutDown() throws StorageManagerException {
+        // a statement or transaction that was not committed does not outlast the database. A rollback that fails
+        // stops the shut down, the database is left flagged as not shut down cleanly for a restart to recover
+        if (inStatement)
+            rollbackStatement();
+        if (inTransaction)
+            rollbackTransaction();
+        if (scratchLog != null) {
+            try {
+                scratchLog.close();
+                Files.deleteIfExists(DataManager.undoLogPath());
+            } catch (IOException e) {
+                // it is opened empty again
+            }
+            scratchLog = null;
+        }
+        if (checkpointer != null) {
+            checkpointer.stop();
+            checkpointer = null;
+        }
+        // remember what was hot so a restart can load it back
+        DataManager.saveHotPages(pageBuffer.hotPages());
         pageBuffer.purge();
         // need to write out our tables as well
         for(Table table: tableMap.values()){
+            table.saveManifest();
             DataManager.saveTable(table,table.getId());
         }
+        // the pages are forced before the superblock says they can be trusted and before the log that could redo
+        // them is emptied
+        try {
+            DataManager.forceSegments();
+        } catch (IOException e) {
+            throw new StorageManagerException(StorageManager.CANNOT_SAVE_DATA);
+        }
+        DataManager.closeSegments();
+        // everything is on disk, the next start can trust it
+        Superblock superblock = DataManager.getSuperblock();
+        DataManager.saveSuperblock(superblock == null
+                ? new Superblock(pageSize, true, DataManager.catalogObjName) : superblock.withClean(true));
+        // nothing in the log is needed once every page it describes is written
+        if (log != null) {
+            try {
+                log.reset();
+                log.close();
+            } catch (IOException e) {
+                throw new StorageManagerException(StorageManager.CANNOT_SAVE_DATA);
+            }
+            log = null;
+        }
+    }
+
+    /**
+     * Open the database's write ahead log. A database that stopped without shutting down and has a log is
+     * brought back to where the log left it first, whether or not changes are logged from now on
+     */
+    public synchronized void open() throws StorageManagerException {
+        try {
+            if (!DataManager.wasCleanShutdown() && Files.exists(DataManager.logPath()))
+                recover();
+            else if (!options.isWriteAheadLog())
+                // a log left by a clean shut down describes nothing, one kept while changes are not logged would
+                // be read by a restart as if it described them
+                Files.deleteIfExists(DataManager.logPath());
+        } catch (IOException e) {
+            throw new StorageManagerException(String.format(StorageManager.CANNOT_LOAD_FILE, DataManager.logPath()));
+        }
+        if (options.isWriteAheadLog() && log == null)
+            openLog();
+    }
+
+    /**
+     * Redo the log, undo the statements it holds that never ended, then write every page and table manifest out so
+     * the log can be emptied
+     */
+    private void recover() throws StorageManagerException {
+        try {
+            log = WriteAheadLog.open(DataManager.logPath(), options.getCommitDelayMicros());
+        } catch (IOException e) {
+            throw new StorageManagerException(String.format(StorageManager.CANNOT_LOAD_FILE, DataManager.logPath()));
+        }
+        lastLsn = checkpointedTo = log.nextLsn();
+        // manifests whose order is as of a record the log still has are trusted for the order
+        DataManager.setRecoveryStart(log.firstLsn());
+        try {
+            new RecoveryManager(this, pageBuffer, log).recover();
+            pageBuffer.purge();
+            for (Table table: tableMap.values())
+                table.saveManifest();
+            // tables that were in use without a change in the log are left with a manifest that is not clean
+            for (int tableId: DataManager.tableIds()) {
+                if (tableMap.containsKey(tableId) || PageManifest.savedCleanly(tableId))
+                    continue;
+                Table table;
+                try {
+                    table = getTable(tableId);
+                } catch (StorageManagerException e) {
+                    continue;
+                }
+                table.getPages();
+                table.saveManifest();
+            }
+            DataManager.forceSegments();
+            log.reset();
+            if (!options.isWriteAheadLog()) {
+                log.close();
+                log = null;
+                Files.deleteIfExists(DataManager.logPath());
+            }
+        } catch (IOException e) {
+            throw new StorageManagerException(StorageManager.CANNOT_SAVE_DATA);
+        }
+        DataManager.recovered();
+        Superblock superblock = DataManager.getSuperblock();
+        if (superblock != null)
+            DataManager.saveSuperblock(superblock.withClean(true));
+        if (log != null)
+            startCheckpointer();
+    }
+
+    private void openLog() throws StorageManagerException {
+        try {
+            log = WriteAheadLog.open(DataManager.logPath(), options.getCommitDelayMicros());
+            // a log left by a clean shut down describes nothing that is not already on disk
+            if (DataManager.wasCleanShutdown())
+                log.reset();
+        } catch (IOException e) {
+            throw new StorageManagerException(String.format(StorageManager.CANNOT_LOAD_FILE, DataManager.logPath()));
+        }
+        lastLsn = checkpointedTo = log.nextLsn();
+        startCheckpointer();
+    }
+
+    private void startCheckpointer() {
+        if (options.getRecoveryTargetMillis() > 0) {
+            checkpointer = new Checkpointer(this, Math.max(10, options.getRecoveryTargetMillis() / 20));
+            checkpointer.start();
+        }
+    }
+
+    /**
+     * Take a fuzzy checkpoint: log which pages are dirty and cut the log behind the oldest change a restart would
+     * still redo. No page is written and changes carry on as soon as the checkpoint record is on disk. The page
+     * manifests are saved first, the changes to the page order they hold are not redone
+     */
+    public synchronized void checkpoint() throws StorageManagerException {
+        if (log == null)
+            return;
+        // operations outside a statement or transaction commit before letting go of the buffer manager, only a
+        // statement or transaction that was begun can be running during a checkpoint
+        Map<Long, Long> transactions = new HashMap<>();
+        if ((inTransaction || inStatement) && changeCount > 0)
+            transactions.put(transaction, lastLsn);
+        Checkpoint checkpoint = new Checkpoint(pageBuffer.dirtyPageTable(), transactions);
+        long lsn = append(new LogRecord(LogRecordType.CHECKPOINT, 0, 0, 0, -1, null, checkpoint.toBytes()));
+        flushLog(lsn);
+        for (Table table: tableMap.values())
+            table.saveManifest();
+        try {
+            // pages written since the last checkpoint must be on disk before the log describing them is cut
+            DataManager.forceSegments();
+            log.truncate(checkpoint.oldestNeeded(lsn));
+        } catch (IOException e) {
+            throw new StorageManagerException(StorageManager.CANNOT_SAVE_DATA);
+        }
+        checkpointedTo = log.nextLsn();
+    }
+
+    /**
+     * One round of the checkpointer. The recovery target is turned into a length of log a restart may redo, pages
+     * whose oldest change is more than half of it behind are written, a few each round, or all at once if the log
+     * to redo is over the target. A checkpoint is taken every quarter of it
+     */
+    void checkpointRound() throws StorageManagerException {
+        if (log == null)
+            return;
+        long budget = options.getRecoveryTargetMillis() * options.getRedoBytesPerSecond() / 1000;
+        long end = log.nextLsn();
+        long redo = end;
+        for (long recLsn: pageBuffer.dirtyPageTable().values())
+            redo = Math.min(redo, recLsn);
+        if (end - redo > budget / 2) {
+            int maxPages = end - redo > budget ? Integer.MAX_VALUE : Math.max(1, options.getWriterPagesPerRound());
+            pageBuffer.writeOldest(end - budget / 2, maxPages);
+        }
+        if (end > checkpointedTo && end - checkpointedTo >= budget / 4)
+            checkpoint();
+    }
+
+    /**
+     * @return the lsn of the last record appended to the log, 0 if changes are not logged
+     */
+    public long getLastLsn() {
+        return lastLsn;
+    }
+
+    /**
+     * A restart is redoing the record at an lsn, the pages it changes carry it
+     */
+    void redoing(long lsn) {
+        lastLsn = lsn;
+    }
+
+    /**
+     * @return the lsn the next record appended to the log gets, 0 if changes are not logged
+     */
+    private synchronized long logPosition() {
+        return log == null ? 0 : log.nextLsn();
+    }
+
+    /**
+     * Make sure the log is on disk up to a record, a page is written only after the changes it holds are
+     * @param lsn the record's lsn, 0 for none
+     */
+    public void flushLog(long lsn) throws StorageManagerException {
+        if (log == null || lsn == 0)
+            return;
+        try {
+            log.flush(lsn);
+        } catch (IOException e) {
+            throw new StorageManagerException(StorageManager.CANNOT_SAVE_DATA);
+        }
+    }
+
+    /**
+     * Log records being moved off a page or onto one by a split. They are not part of a transaction, redoing the
+     * move off a page takes them off it and redoing the move onto a page puts them on it
+     * @param before the records moved off the page, null if they are moved onto it
+     * @param after the records moved onto the page, null if they are moved off it
+     */
+    public void logMove(RecordPage page, byte[] before, byte[] after) throws StorageManagerException {
+        if (log == null || (before == null ? after : before).length == 0)
+            return;
+        append(new LogRecord(LogRecordType.MOVE, 0, 0, page.getTable().getId(), page.getPageID(), before, after));
+    }
+
+    /**
+     * Log a change to a page before it is made. Changes are part of the running transaction, except records moved
+     * from a page that is going away, which are only redone. A transaction that was begun keeps its changes to roll
+     * them back even when changes are not logged
+     * @param before the record before the change encoded as the page keeps it, null if there was none
+     * @param after the record after the change encoded as the page keeps it, null if there is none
+     */
+    public void logChange(LogRecordType type, RecordPage page, byte[] before, byte[] after)
+            throws StorageManagerException {
+        boolean moved = type == LogRecordType.MOVE;
+        Table table = page.getTable();
+        // a table created while the transaction runs is not part of it
+        boolean outside = moved || createdTables.contains(table.getId());
+        boolean kept = !outside && !undoing && (transaction != 0 || inTransaction || inStatement);
+        if (log == null && !kept)
+            return;
+        LogRecord change = new LogRecord(type, outside ? 0 : transaction, !moved && undoing ? compensating : 0,
+                table.getId(), page.getPageID(), before, after);
+        if (log != null) {
+            long lsn = append(change);
+            if (kept)
+                keep(log, lsn);
+        } else {
+            WriteAheadLog undoLog = undoLog();
+            try {
+                keep(undoLog, undoLog.append(change));
+            } catch (IOException e) {
+                throw new StorageManagerException(StorageManager.CANNOT_SAVE_DATA);
+            }
+        }
+    }
+
+    /**
+     * Log a page joining a table's order after the page it follows
+     */
+    public void logPageAdded(Table table, int previousPageId, int pageId) throws StorageManagerException {
+        if (log == null)
+            return;
+        byte[] previous = ByteBuffer.allocate(Integer.BYTES).putInt(0, previousPageId).array();
+        append(new LogRecord(LogRecordType.PAGE_ADDED, 0, 0, table.getId(), pageId, null, previous));
+    }
+
+    /**
+     * Log a page leaving a table's order, its slot is cleared only once the record is on disk
+     */
+    public void logPageRemoved(Table table, int pageId) throws StorageManagerException {
+        if (log == null)
+            return;
+        append(new LogRecord(LogRecordType.PAGE_REMOVED, 0, 0, table.getId(), pageId, null, null));
+    }
+
+    private long append(LogRecord record) throws StorageManagerException {
+        try {
+            lastLsn = log.append(record);
+        } catch (IOException e) {
+            throw new StorageManagerException(StorageManager.CANNOT_SAVE_DATA);
+        }
+        return lastLsn;
+    }
+
+    /**
+     * Wait for a commit to be on disk. Called without holding the buffer so other operations, and the commits
+     * they make, run while the log is forced
+     */
+    private void awaitCommit(long lsn) throws StorageManagerException {
+        if (lsn == 0)
+            return;
+        WriteAheadLog committing;
+        synchronized (this) {
+            committing = log;
+        }
+        // a shut down since the commit was logged forced and emptied the log
+        if (committing == null)
+            return;
+        try {
+            committing.commit(lsn);
+        } catch (IOException e) {
+            throw new StorageManagerException(StorageManager.CANNOT_SAVE_DATA);
+        }
+    }
+
+    /**
+     * @return the record as it is in the table, null if it is not there
+     */
+    private Object[] currentRecord(Table table, Object[] recordOrKey) throws StorageManagerException {
+        RecordPage page = pageBuffer.searchPages(table, table.getRecordFromKey(recordOrKey));
+        return page == null ? null : page.getRecord(recordOrKey);
+    }
+
+    /**
+     * @return the records of an image, none if it is empty
+     */
+    static Object[][] records(Table table, byte[] image) {
+        int recordLength = PageFormat.recordLength(table);
+        Object[][] records = new Object[image.length / recordLength][];
+        for (int i = 0; i < records.length; i++)
+            records[i] = PageFormat.readRecord(image, i * recordLength, table);
+        return records;
     }
 
 }
@@ -0,0 +1,182 @@
+package storagemanager.buffermanager;
+
+import storagemanager.buffermanager.pageManager.ReplacementPolicies;
+
+/**
+ * Tunables for the buffer manager, the defaults are used when none are given
+ */
+public class BufferOptions {
+
+    private ReplacementPolicies replacementPolicy = ReplacementPolicies.CLOCK;
+
+    // the most pages the background writer may write each round, 0 turns the writer off
+    private int writerPagesPerRound = 16;
+    private long writerRoundMillis = 10;
+
+    // how many pages are read ahead of a sequential pass over a table, 0 turns read ahead off
+    private int readAheadPages = 8;
+
+    // how many page reads a batch of misses keeps in flight, 1 reads them one after another
+    private int readsInFlight = 1;
+
+    // read and write pages through frames allocated off the heap
+    private boolean offHeapFrames = false;
+
+    // read pages straight out of memory mappings of the table files
+    private boolean mappedReads = false;
+
+    // load the pages that were hot at the last shut down when the database restarts
+    private boolean warmUpOnRestart = true;
+
+    // log every change before it reaches a page, so committed changes survive a crash
+    private boolean writeAheadLog = false;
+    // how long a group commit waits for more commits to share its force of the log
+    private long commitDelayMicros = 0;
+
+    // the longest a restart should spend redoing the log, 0 takes no checkpoints
+    private long recoveryTargetMillis = 0;
+    // how much log a restart is expected to redo each second, turns the recovery target into a length of log
+    private long redoBytesPerSecond = 16L * 1024 * 1024;
+
+    public ReplacementPolicies getReplacementPolicy() {
+        return replacementPolicy;
+    }
+
+    /**
+     * @param replacementPolicy how the page buffer picks pages to push out when it is full
+     */
+    public void setReplacementPolicy(ReplacementPolicies replacementPolicy) {
+        this.replacementPolicy = replacementPolicy;
+    }
+
+    public int getWriterPagesPerRound() {
+        return writerPagesPerRound;
+    }
+
+    /**
+     * @param writerPagesPerRound the I/O budget of the background page writer, 0 to write pages only on eviction
+     */
+    public void setWriterPagesPerRound(int writerPagesPerRound) {
+        this.writerPagesPerRound = writerPagesPerRound;
+    }
+
+    public long getWriterRoundMillis() {
+        return writerRoundMillis;
+    }
+
+    /**
+     * @param writerRoundMillis how long the background page writer rests between rounds
+     */
+    public void setWriterRoundMillis(long writerRoundMillis) {
+        this.writerRoundMillis = writerRoundMillis;
+    }
+
+    public int getReadAheadPages() {
+        return readAheadPages;
+    }
+
+    /**
+     * @param readAheadPages how many pages to read in the background ahead of a scan, 0 to read pages only
+     *                       when they are needed
+     */
+    public void setReadAheadPages(int readAheadPages) {
+        this.readAheadPages = readAheadPages;
+    }
+
+    public int getReadsInFlight() {
+        return readsInFlight;
+    }
+
+    /**
+     * @param readsInFlight how many asynchronous page reads to keep in flight when several pages are missed at
+     *                      once, for storage that serves parallel reads faster than one at a time. 1 to read
+     *                      pages one after another on the calling thread
+     */
+    public void setReadsInFlight(int readsInFlight) {
+        this.readsInFlight = readsInFlight;
+    }
+
+    public boolean isOffHeapFrames() {
+        return offHeapFrames;
+    }
+
+    /**
+     * @param offHeapFrames true to do page I/O through a few page sized frames allocated off the heap up front,
+     *                      about two for each read in flight. Pages keep their records on the heap either way
+     */
+    public void setOffHeapFrames(boolean offHeapFrames) {
+        this.offHeapFrames = offHeapFrames;
+    }
+
+    public boolean isWarmUpOnRestart() {
+        return warmUpOnRestart;
+    }
+
+    /**
+     * @param warmUpOnRestart true to load the pages that were hot at the last shut down in the background after a
+     *                        restart, false to start with an empty buffer
+     */
+    public void setWarmUpOnRestart(boolean warmUpOnRestart) {
+        this.warmUpOnRestart = warmUpOnRestart;
+    }
+
+    public boolean isMappedReads() {
+        return mappedReads;
+    }
+
+    /**
+     * @param mappedReads true to read pages by decoding them from memory mappings of the table files, for tables
+     *                    that are mostly read and fit in the operating system's file cache
+     */
+    public void setMappedReads(boolean mappedReads) {
+        this.mappedReads = mappedReads;
+    }
+
+    public boolean isWriteAheadLog() {
+        return writeAheadLog;
+    }
+
+    /**
+     * @param writeAheadLog true to append every insert, update and remove to a log that is forced when it commits,
+     *                      false to only have changes on disk once their pages are written
+     */
+    public void setWriteAheadLog(boolean writeAheadLog) {
+        this.writeAheadLog = writeAheadLog;
+    }
+
+    public long getCommitDelayMicros() {
+        return commitDelayMicros;
+    }
+
+    /**
+     * @param commitDelayMicros how long the first commit of a group waits for others before forcing the log, longer
+     *                          delays share a force among more commits at the cost of each one's latency
+     */
+    public void setCommitDelayMicros(long commitDelayMicros) {
+        this.commitDelayMicros = commitDelayMicros;
+    }
+
+    public long getRecoveryTargetMillis() {
+        return recoveryTargetMillis;
+    }
+
+    /**
+     * @param recoveryTargetMillis how long a restart after a crash may spend redoing the log. Checkpoints are taken
+     *                             and the oldest dirty pages written in the background to keep the log a restart
+     *                             reads within it. 0 to take no checkpoints, only used with the write ahead log
+     */
+    public void setRecoveryTargetMillis(long recoveryTargetMillis) {
+        this.recoveryTargetMillis = recoveryTargetMillis;
+    }
+
+    public long getRedoBytesPerSecond() {
+        return redoBytesPerSecond;
+    }
+
+    /**
+     * @param redoBytesPerSecond how fast a restart redoes the log, lower it for disks that read pages slowly
+     */
+    public void setRedoBytesPerSecond(long redoBytesPerSecond) {
+        this.redoBytesPerSecond = redoBytesPerSecond;
+    }
+}
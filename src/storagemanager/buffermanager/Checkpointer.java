@@ -0,0 +1,62 @@
+package storagemanager.buffermanager;
+
+import storagemanager.StorageManagerException;
+
+/**
+ * Takes fuzzy checkpoints in the background while changes go on. A checkpoint only logs which pages are dirty, the
+ * pages themselves are trickled out oldest change first so the log a restart has to redo stays within the
+ * recovery target, and the log is cut behind the oldest change a restart still needs.
+ *
+ * Each round holds the buffer manager's lock, so a foreground operation waits for at most one round.
+ */
+class Checkpointer implements Runnable {
+
+    private final BufferManager bufferManager;
+    private final long roundMillis;
+
+    private volatile Thread thread = null;
+
+    /**
+     * @param bufferManager the buffer manager to checkpoint, it is also the lock
+     * @param roundMillis the rest between rounds
+     */
+    Checkpointer(BufferManager bufferManager, long roundMillis) {
+        this.bufferManager = bufferManager;
+        this.roundMillis = roundMillis;
+    }
+
+    synchronized void start() {
+        if (thread != null) return;
+        thread = new Thread(this, "checkpointer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop taking checkpoints. Does not wait, a round in progress holds the buffer manager's lock
+     */
+    synchronized void stop() {
+        if (thread == null) return;
+        thread.interrupt();
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        while (thread == Thread.currentThread()) {
+            try {
+                Thread.sleep(roundMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            synchronized (bufferManager) {
+                if (thread != Thread.currentThread()) return;
+                try {
+                    bufferManager.checkpointRound();
+                } catch (StorageManagerException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package storagemanager.buffermanager;
+
+import java.io.Serializable;
+import java.util.BitSet;
+
+/**
+ * Tracks the page slots freed in a table's segment file.
+ *
+ * A new page takes the lowest freed slot before the file is grown. Records are kept in key order, so a record goes
+ * to the page its key falls in and the room left in other pages is of no use to it, only whole slots are reused.
+ */
+public class FreeSpaceMap implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // slots in the segment file that no page uses
+    private final BitSet freePages = new BitSet();
+    // slots of pages that left the table and are not cleared yet, no new page takes them
+    private final BitSet held = new BitSet();
+
+    /**
+     * Take a slot for a new page, a freed one if there is one
+     * @param newPageId the slot past the end of the table, used when no slot is free
+     * @return the id of the new page
+     */
+    public int allocate(int newPageId) {
+        int pageId = freePages.nextSetBit(0);
+        if (pageId < 0 || pageId >= newPageId)
+            pageId = held.nextClearBit(newPageId);
+        freePages.clear(pageId);
+        return pageId;
+    }
+
+    /**
+     * Take a given slot, the slots between the end of the table and it are free
+     * @param newPageId the slot past the end of the table
+     */
+    public void take(int pageId, int newPageId) {
+        for (int slot = newPageId; slot < pageId; slot++)
+            free(slot);
+        freePages.clear(pageId);
+    }
+
+    /**
+     * A page was dropped, its slot can be used by a new page
+     */
+    public void free(int pageId) {
+        freePages.set(pageId);
+    }
+
+    /**
+     * A page left the table, its slot is not taken by a new page until it is released
+     */
+    public void hold(int pageId) {
+        held.set(pageId);
+    }
+
+    /**
+     * The slot of a page that left the table was cleared
+     * @param newPageId the slot past the end of the table, a slot at or past it is the file's end and not free
+     */
+    public void release(int pageId, int newPageId) {
+        if (!held.get(pageId)) return;
+        held.clear(pageId);
+        if (pageId < newPageId)
+            free(pageId);
+    }
+
+    public boolean isFree(int pageId) {
+        return freePages.get(pageId);
+    }
+
+    public int freePageCount() {
+        return freePages.cardinality();
+    }
+
+    public void clear() {
+        freePages.clear();
+        held.clear();
+    }
+}
@@ -0,0 +1,399 @@
+package storagemanager.buffermanager;
+
+import storagemanager.StorageManager;
+import storagemanager.StorageManagerException;
+import storagemanager.buffermanager.datatypes.Datatype;
+import storagemanager.buffermanager.diskUtils.DataManager;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What a table knows about each of its record pages without reading them, kept in the table's manifest file so the
+ * first use of a table does not have to read every page's header.
+ *
+ * <pre>
+ * header | magic (4) | version (1) | clean (1) | reserved (2) | key size (4) | slots (4) | first (4) | last (4) |
+ *        | lsn (8) |
+ * slots  | one entry per page slot of the segment file |
+ * entry  | flags (1) | entries (4) | previous (4) | next (4) | lowest key (key size) | highest key (key size) |
+ * </pre>
+ *
+ * An entry holds the page's links in the page order, the amount of records in the page and its lowest and highest
+ * keys, all as of the page's last write. A page that is not in the buffer is what was last written, so its keys
+ * tell whether a record can be in it without reading it.
+ *
+ * Entries are marked as they change, with each page allocation, free and write, and only marked entries are written
+ * when the manifest is saved. The manifest is flagged as not clean while the table is in use and clean once it is
+ * saved, one that was not saved cleanly is checked against the segment file's page headers. The flag is also cleared
+ * before any of the table's pages is written, so a manifest flagged clean always describes the pages on disk.
+ *
+ * The lsn is where the write ahead log was when the manifest was saved, pages added to and removed from the order
+ * after it are logged from there on. A restart that reads the log from at or before it trusts the order of a
+ * manifest that was not saved cleanly and replays the rest of the changes to the order.
+ */
+public class PageManifest {
+
+    private static final int MAGIC = 0x504D414E;
+    private static final byte VERSION = 2;
+    static final int HEADER_SIZE = 32;
+    private static final int CLEAN_OFFSET = 5;
+    private static final int KEY_SIZE_OFFSET = 8;
+    private static final int SLOTS_OFFSET = 12;
+    private static final int FIRST_OFFSET = 16;
+    private static final int LAST_OFFSET = 20;
+    private static final int LSN_OFFSET = 24;
+
+    private static final int ENTRIES_OFFSET = 1;
+    private static final int PREVIOUS_OFFSET = 5;
+    private static final int NEXT_OFFSET = 9;
+    private static final int KEYS_OFFSET = 13;
+
+    private static final byte IN_ORDER = 1;
+    private static final byte FREE = 2;
+    private static final byte HAS_KEYS = 4;
+
+    private final Table table;
+    private final int keySize;
+    private final int entrySize;
+
+    // indexed by page id
+    private int[] entries = new int[0];
+    private Object[][] lowKeys = new Object[0][];
+    private Object[][] highKeys = new Object[0][];
+    // the manifest as it was read, the keys of pages not written since are decoded from it the first time they are
+    // asked for
+    private ByteBuffer loaded;
+    private final BitSet loadedKeys = new BitSet();
+
+    // entries that changed since the manifest was saved
+    private final BitSet changed = new BitSet();
+    // write every entry on the next save, the manifest on disk is missing or can not be trusted
+    private boolean rewrite = true;
+    // the manifest was saved cleanly and agrees with the segment file
+    private boolean trusted = false;
+    // the manifest on disk is flagged clean
+    private boolean cleanOnDisk = false;
+    // the lsn the page order is as of, 0 if it is not known
+    private long lsn = 0;
+
+    PageManifest(Table table) {
+        this.table = table;
+        int size = 0;
+        for (int keyIndex: table.getKeyIndices())
+            size += table.getDatatypes().get(keyIndex).getSize();
+        this.keySize = size;
+        this.entrySize = KEYS_OFFSET + 2 * keySize;
+    }
+
+    /**
+     * Read a table's manifest file, filling in the page order and free space map
+     * @param order an empty page order to fill in
+     * @param freeSpace an empty free space map to fill in
+     * @return the manifest, null if there is none or it does not belong to the table. It was saved cleanly if
+     *         {@link #isClean()}, otherwise the order and free slots are only a starting point
+     */
+    static PageManifest load(Table table, PageOrder order, FreeSpaceMap freeSpace) {
+        ByteBuffer file = DataManager.readManifest(table.getId());
+        if (file == null && !DataManager.hasManifest(table.getId())
+                && DataManager.getRecoveryStart() != Long.MAX_VALUE) {
+            // a table's manifest is first saved by the checkpoint or shut down after it is used, a restart finding
+            // none reads a log holding every page the table was given and starts the order from no pages
+            PageManifest manifest = new PageManifest(table);
+            manifest.trusted = true;
+            manifest.lsn = DataManager.getRecoveryStart();
+            return manifest;
+        }
+        if (file == null) return null;
+        PageManifest manifest = new PageManifest(table);
+        if (file.limit() < HEADER_SIZE || file.getInt(0) != MAGIC || file.get(4) != VERSION
+                || file.getInt(KEY_SIZE_OFFSET) != manifest.keySize)
+            return null;
+        int slots = file.getInt(SLOTS_OFFSET);
+        if (slots < 0 || (long) HEADER_SIZE + (long) slots * manifest.entrySize > file.limit())
+            return null;
+
+        // walk the links from the first page, a broken chain means the order can not be trusted
+        boolean linked = true;
+        int pageId = file.getInt(FIRST_OFFSET);
+        for (int walked = 0; pageId != PageOrder.NO_PAGE; walked++) {
+            if (pageId < 0 || pageId >= slots || walked >= slots || order.contains(pageId)
+                    || (file.get(manifest.entryStart(pageId)) & IN_ORDER) == 0) {
+                linked = false;
+                break;
+            }
+            order.append(pageId);
+            pageId = file.getInt(manifest.entryStart(pageId) + NEXT_OFFSET);
+        }
+        if (!linked || order.last() != file.getInt(LAST_OFFSET)) {
+            linked = false;
+            order.clear();
+        }
+        manifest.cleanOnDisk = file.get(CLEAN_OFFSET) != 0;
+        manifest.lsn = file.getLong(LSN_OFFSET);
+        manifest.trusted = linked && manifest.cleanOnDisk;
+        // pages may have been written since the manifest was saved, so only the order and free slots are kept and
+        // the changes to the order since are redone from the log
+        boolean orderOnly = !manifest.trusted && linked && manifest.lsn != 0
+                && manifest.lsn >= DataManager.getRecoveryStart();
+
+        for (pageId = 0; pageId < slots; pageId++) {
+            int start = manifest.entryStart(pageId);
+            byte flags = file.get(start);
+            if (order.contains(pageId)) {
+                int count = file.getInt(start + ENTRIES_OFFSET);
+                manifest.ensureCapacity(pageId);
+                manifest.entries[pageId] = count;
+                if ((flags & HAS_KEYS) != 0 && !orderOnly)
+                    manifest.loadedKeys.set(pageId);
+            } else if ((flags & FREE) != 0 && pageId < order.newPageId()) {
+                freeSpace.free(pageId);
+            }
+        }
+        if (!manifest.loadedKeys.isEmpty())
+            manifest.loaded = file;
+        if (orderOnly)
+            manifest.trusted = true;
+        else if (!manifest.trusted)
+            manifest.lsn = 0;
+        manifest.rewrite = !manifest.trusted || orderOnly;
+        return manifest;
+    }
+
+    /**
+     * @return true if a table's manifest on disk is flagged clean, only its header is read
+     */
+    static boolean savedCleanly(int tableId) {
+        ByteBuffer header = DataManager.readManifestHeader(tableId, HEADER_SIZE);
+        return header != null && header.getInt(0) == MAGIC && header.get(4) == VERSION
+                && header.get(CLEAN_OFFSET) != 0;
+    }
+
+    /**
+     * @return true if the manifest was saved cleanly and agrees with the segment file, or its order is as of a point
+     *         the restart reads the log from
+     */
+    boolean isClean() {
+        return trusted;
+    }
+
+    /**
+     * @return the lsn the page order is as of, 0 if it is not known
+     */
+    long getLsn() {
+        return lsn;
+    }
+
+    /**
+     * Trust nothing but the page order, the amount of records in every page is set again and no keys are known
+     * @param entriesOnDisk the amount of records in each page, by page id
+     */
+    void reset(PageOrder order, Map<Integer, Integer> entriesOnDisk) {
+        entries = new int[0];
+        lowKeys = new Object[0][];
+        highKeys = new Object[0][];
+        loaded = null;
+        loadedKeys.clear();
+        for (int pageId: order) {
+            ensureCapacity(pageId);
+            entries[pageId] = entriesOnDisk.getOrDefault(pageId, 0);
+        }
+        rewrite = true;
+        lsn = 0;
+    }
+
+    /**
+     * Flag the manifest on disk as not clean while the table is in use or once it changes after being saved, if the
+     * database stops before the manifest is saved again the next use of the table does not trust it. The order on
+     * disk is the order as of where the log is now, a restart redoes the changes to it logged from there on. The
+     * lsn it was saved at may be behind the log's first record by now
+     */
+    void opened() {
+        if (!cleanOnDisk) return;
+        cleanOnDisk = false;
+        // 0 if changes to the order are not logged, a restart can not redo them
+        lsn = table.logPosition();
+        DataManager.writeManifest(table.getId(), -1, List.of((long) CLEAN_OFFSET, (long) LSN_OFFSET),
+                List.of(ByteBuffer.wrap(new byte[]{0}), ByteBuffer.allocate(Long.BYTES).putLong(0, lsn)));
+    }
+
+    /**
+     * A page's links or free slot changed
+     */
+    void changed(int pageId) {
+        if (pageId < 0) return;
+        opened();
+        changed.set(pageId);
+    }
+
+    /**
+     * A page was written
+     * @param lowRecord the first record of the page, null if the page is empty
+     * @param highRecord the last record of the page, null if the page is empty
+     */
+    void pageWritten(int pageId, int count, Object[] lowRecord, Object[] highRecord) {
+        ensureCapacity(pageId);
+        entries[pageId] = count;
+        lowKeys[pageId] = count == 0 ? null : key(lowRecord);
+        highKeys[pageId] = count == 0 ? null : key(highRecord);
+        dropLoadedKeys(pageId);
+        changed(pageId);
+    }
+
+    /**
+     * A page left the table
+     */
+    void forget(int pageId) {
+        if (pageId < entries.length) {
+            entries[pageId] = 0;
+            lowKeys[pageId] = null;
+            highKeys[pageId] = null;
+        }
+        dropLoadedKeys(pageId);
+        changed(pageId);
+    }
+
+    public int getEntries(int pageId) {
+        return pageId >= 0 && pageId < entries.length ? entries[pageId] : 0;
+    }
+
+    /**
+     * @return the lowest key in a page as of its last write, in key order, null if it is not known
+     */
+    public Object[] getLowKey(int pageId) {
+        if (pageId < 0 || pageId >= lowKeys.length) return null;
+        if (lowKeys[pageId] == null && loadedKeys.get(pageId))
+            lowKeys[pageId] = decodeKey(loaded, entryStart(pageId) + KEYS_OFFSET);
+        return lowKeys[pageId];
+    }
+
+    /**
+     * @return the highest key in a page as of its last write, in key order, null if it is not known
+     */
+    public Object[] getHighKey(int pageId) {
+        if (pageId < 0 || pageId >= highKeys.length) return null;
+        if (highKeys[pageId] == null && loadedKeys.get(pageId))
+            highKeys[pageId] = decodeKey(loaded, entryStart(pageId) + KEYS_OFFSET + keySize);
+        return highKeys[pageId];
+    }
+
+    /**
+     * The keys of a page read with the manifest are out of date, the manifest as it was read is let go once none
+     * of its keys are left to decode
+     */
+    private void dropLoadedKeys(int pageId) {
+        if (!loadedKeys.get(pageId)) return;
+        loadedKeys.clear(pageId);
+        if (loadedKeys.isEmpty())
+            loaded = null;
+    }
+
+    /**
+     * Write the entries that changed since the last save and flag the manifest clean
+     */
+    void save(PageOrder order, FreeSpaceMap freeSpace) throws StorageManagerException {
+        int slots = order.newPageId();
+        List<Long> positions = new ArrayList<>();
+        List<ByteBuffer> pieces = new ArrayList<>();
+        // entries are written in runs so neighbouring changes go out together
+        int pageId = rewrite ? 0 : changed.nextSetBit(0);
+        while (pageId >= 0 && pageId < slots) {
+            int end = rewrite ? slots : Math.min(slots, changed.nextClearBit(pageId));
+            ByteBuffer run = ByteBuffer.allocate((end - pageId) * entrySize);
+            for (int i = pageId; i < end; i++)
+                writeEntry(run, (i - pageId) * entrySize, i, order, freeSpace);
+            positions.add((long) entryStart(pageId));
+            pieces.add(run);
+            pageId = rewrite ? -1 : changed.nextSetBit(end);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.put(4, VERSION);
+        header.put(CLEAN_OFFSET, (byte) 1);
+        header.putInt(KEY_SIZE_OFFSET, keySize);
+        header.putInt(SLOTS_OFFSET, slots);
+        header.putInt(FIRST_OFFSET, order.first());
+        header.putInt(LAST_OFFSET, order.last());
+        header.putLong(LSN_OFFSET, table.logPosition());
+        // the header goes last, the manifest is only flagged clean once every entry is written
+        positions.add(0L);
+        pieces.add(header);
+        if (!DataManager.writeManifest(table.getId(), entryStart(slots), positions, pieces))
+            throw new StorageManagerException(StorageManager.CANNOT_SAVE_DATA);
+        changed.clear();
+        rewrite = false;
+        trusted = true;
+        cleanOnDisk = true;
+        lsn = table.logPosition();
+    }
+
+    private void writeEntry(ByteBuffer run, int start, int pageId, PageOrder order, FreeSpaceMap freeSpace) {
+        byte flags = 0;
+        if (order.contains(pageId)) flags |= IN_ORDER;
+        if (freeSpace.isFree(pageId)) flags |= FREE;
+        Object[] low = getLowKey(pageId);
+        Object[] high = getHighKey(pageId);
+        boolean hasKeys = order.contains(pageId) && low != null && high != null;
+        if (hasKeys) flags |= HAS_KEYS;
+        run.put(start, flags);
+        run.putInt(start + ENTRIES_OFFSET, order.contains(pageId) ? getEntries(pageId) : 0);
+        run.putInt(start + PREVIOUS_OFFSET, order.previous(pageId));
+        run.putInt(start + NEXT_OFFSET, order.next(pageId));
+        if (hasKeys) {
+            encodeKey(low, run, start + KEYS_OFFSET);
+            encodeKey(high, run, start + KEYS_OFFSET + keySize);
+        }
+    }
+
+    private int entryStart(int pageId) {
+        return HEADER_SIZE + pageId * entrySize;
+    }
+
+    /**
+     * @return the key of a record, null if part of it is null and it can not be stored
+     */
+    private Object[] key(Object[] record) {
+        if (record == null) return null;
+        Object[] key = table.recordToKey(record);
+        for (Object value: key)
+            if (value == null) return null;
+        return key;
+    }
+
+    private void encodeKey(Object[] key, ByteBuffer buffer, int start) {
+        int at = start;
+        Integer[] keyIndices = table.getKeyIndices();
+        for (int i = 0; i < keyIndices.length; i++) {
+            Datatype<?> datatype = table.getDatatypes().get(keyIndices[i]);
+            byte[] bytes = datatype.encode(key[i]);
+            buffer.put(at, bytes);
+            at += datatype.getSize();
+        }
+    }
+
+    private Object[] decodeKey(ByteBuffer buffer, int start) {
+        byte[] bytes = new byte[keySize];
+        buffer.get(start, bytes);
+        Integer[] keyIndices = table.getKeyIndices();
+        Object[] key = new Object[keyIndices.length];
+        int at = 0;
+        for (int i = 0; i < keyIndices.length; i++) {
+            Datatype<?> datatype = table.getDatatypes().get(keyIndices[i]);
+            key[i] = datatype.toObject(bytes, at);
+            at += datatype.getSize();
+        }
+        return key;
+    }
+
+    private void ensureCapacity(int pageId) {
+        if (pageId < entries.length) return;
+        int capacity = Math.max(pageId + 1, entries.length * 2);
+        entries = Arrays.copyOf(entries, capacity);
+        lowKeys = Arrays.copyOf(lowKeys, capacity);
+        highKeys = Arrays.copyOf(highKeys, capacity);
+    }
+}
@@ -0,0 +1,180 @@
+package storagemanager.buffermanager;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The order of a table's record pages, a doubly linked list of page ids saved with the table.
+ *
+ * Pages are in the order of the keys of their records. A page's id is only where the page is kept in the
+ * table's segment file, so a new page can take any free id and be linked in next to the page it split from
+ * without any other page moving.
+ */
+public class PageOrder implements Serializable, Iterable<Integer> {
+    private static final long serialVersionUID = 1L;
+
+    public static final int NO_PAGE = -1;
+
+    // the ids in the order
+    private final BitSet pages = new BitSet();
+    // indexed by page id, only meaningful for ids in the order
+    private int[] next = new int[0];
+    private int[] previous = new int[0];
+    private int first = NO_PAGE;
+    private int last = NO_PAGE;
+    private int size = 0;
+
+    public int first() {
+        return first;
+    }
+
+    public int last() {
+        return last;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int pageId) {
+        return pageId >= 0 && pages.get(pageId);
+    }
+
+    /**
+     * @return the page after a page, NO_PAGE if it is the last page or not in the order
+     */
+    public int next(int pageId) {
+        return contains(pageId) ? next[pageId] : NO_PAGE;
+    }
+
+    /**
+     * @return the page before a page, NO_PAGE if it is the first page or not in the order
+     */
+    public int previous(int pageId) {
+        return contains(pageId) ? previous[pageId] : NO_PAGE;
+    }
+
+    /**
+     * @return the highest page id in use, -1 if there are no pages
+     */
+    public int highest() {
+        return pages.length() - 1;
+    }
+
+    /**
+     * @return an id no page has
+     */
+    public int newPageId() {
+        return pages.length();
+    }
+
+    /**
+     * Add a page after the last page
+     */
+    public void append(int pageId) {
+        insertAfter(last, pageId);
+    }
+
+    /**
+     * Add a page right after another
+     * @param after the page to add it after, NO_PAGE to add it before the first page
+     */
+    public void insertAfter(int after, int pageId) {
+        if (contains(pageId))
+            throw new IllegalStateException("Page " + pageId + " is already in the table");
+        if (after != NO_PAGE && !contains(after))
+            throw new IllegalStateException("Page " + after + " is not in the table");
+        ensureCapacity(pageId);
+        int following = after == NO_PAGE ? first : next[after];
+        previous[pageId] = after;
+        next[pageId] = following;
+        if (after == NO_PAGE) first = pageId;
+        else next[after] = pageId;
+        if (following == NO_PAGE) last = pageId;
+        else previous[following] = pageId;
+        pages.set(pageId);
+        size++;
+    }
+
+    /**
+     * Take a page out of the order, its neighbours are linked to each other
+     */
+    public void remove(int pageId) {
+        if (!contains(pageId)) return;
+        int before = previous[pageId];
+        int after = next[pageId];
+        if (before == NO_PAGE) first = after;
+        else next[before] = after;
+        if (after == NO_PAGE) last = before;
+        else previous[after] = before;
+        pages.clear(pageId);
+        size--;
+    }
+
+    public void clear() {
+        pages.clear();
+        next = new int[0];
+        previous = new int[0];
+        first = last = NO_PAGE;
+        size = 0;
+    }
+
+    /**
+     * @return the page ids in order
+     */
+    public List<Integer> toList() {
+        List<Integer> pageIds = new ArrayList<>(size);
+        for (int pageId = first; pageId != NO_PAGE; pageId = next[pageId])
+            pageIds.add(pageId);
+        return pageIds;
+    }
+
+    /**
+     * @return the pages after a page, in order, nothing if the page is not in the order
+     */
+    public Iterable<Integer> after(int pageId) {
+        return () -> new PageIterator(next(pageId));
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new PageIterator(first);
+    }
+
+    private void ensureCapacity(int pageId) {
+        if (pageId < next.length) return;
+        int capacity = Math.max(pageId + 1, next.length * 2);
+        next = Arrays.copyOf(next, capacity);
+        previous = Arrays.copyOf(previous, capacity);
+    }
+
+    private class PageIterator implements Iterator<Integer> {
+        private int current;
+
+        PageIterator(int start) {
+            this.current = start;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return current != NO_PAGE;
+        }
+
+        @Override
+        public Integer next() {
+            if (current == NO_PAGE) throw new NoSuchElementException();
+            int pageId = current;
+            current = PageOrder.this.next[pageId];
+            return pageId;
+        }
+    }
+}
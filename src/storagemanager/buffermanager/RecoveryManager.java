@@ -0,0 +1,247 @@
+package storagemanager.buffermanager;
+
+import storagemanager.StorageManager;
+import storagemanager.StorageManagerException;
+import storagemanager.buffermanager.page.Page;
+import storagemanager.buffermanager.page.PageTypes;
+import storagemanager.buffermanager.page.RecordPage;
+import storagemanager.buffermanager.pageManager.PageBuffer;
+import storagemanager.buffermanager.diskUtils.DataManager;
+import storagemanager.buffermanager.wal.Checkpoint;
+import storagemanager.buffermanager.wal.LogRecord;
+import storagemanager.buffermanager.wal.LogRecordType;
+import storagemanager.buffermanager.wal.WriteAheadLog;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Brings the tables back to where the write ahead log left them after the database stopped without shutting down,
+ * in three passes over the log.
+ *
+ * Analysis finds the pages that may hold changes that never reached the disk, starting from the dirty pages of the
+ * last checkpoint, and the statements that never committed or rolled back. Redo replays every change on the page it
+ * was logged for, only if the lsn in the page's header is older than the change, so pages written before the stop
+ * are not changed twice. Pages added to and removed from a table's order after its manifest was saved are replayed
+ * the same way onto the order the manifest holds, against the lsn that order is as of, each page added is linked
+ * after the page it was logged after. Undo then takes back the changes of the statements
+ * that never ended by their keys, newest first, and logs that they ended.
+ *
+ * A restart reads the log from its first record, so it takes about as long as the log is. Checkpoints keep the log
+ * short.
+ */
+class RecoveryManager {
+
+    // about how much of the log is read at once
+    private static final int BLOCK_BYTES = 1 << 20;
+
+    private final BufferManager bufferManager;
+    private final PageBuffer pageBuffer;
+    private final WriteAheadLog log;
+    // the log is read up to here, what undo appends is not read again
+    private final long end;
+
+    // the lsn of the oldest change of each page that may not be on disk, keyed as a checkpoint keys its pages
+    private final Map<Long, Long> dirtyPages = new HashMap<>();
+    // the changes of each transaction that never ended, by the transaction
+    private final Map<Long, List<Long>> losers = new HashMap<>();
+    // changes already undone by a logged undo
+    private final Set<Long> compensated = new HashSet<>();
+    // the lsn each table was last cleared at, nothing before it is redone or undone
+    private final Map<Integer, Long> cleared = new HashMap<>();
+    // tables that are gone, along with everything logged about them
+    private final Set<Integer> missingTables = new HashSet<>();
+
+    RecoveryManager(BufferManager bufferManager, PageBuffer pageBuffer, WriteAheadLog log) {
+        this.bufferManager = bufferManager;
+        this.pageBuffer = pageBuffer;
+        this.log = log;
+        this.end = log.nextLsn();
+    }
+
+    void recover() throws StorageManagerException {
+        scan(this::analyze);
+        // a page emptied by a change may be filled again by a later one
+        pageBuffer.setKeepEmptyPages(true);
+        try {
+            scan(this::redo);
+        } finally {
+            pageBuffer.setKeepEmptyPages(false);
+        }
+        undo();
+    }
+
+    private void analyze(LogRecord record) {
+        switch (record.getType()) {
+            case CHECKPOINT:
+                dirtyPages.clear();
+                dirtyPages.putAll(Checkpoint.fromBytes(record.getAfter()).getDirtyPages());
+                break;
+            case INSERT:
+            case UPDATE:
+            case DELETE:
+            case MOVE:
+                dirtyPages.putIfAbsent(Checkpoint.pageKey(record.getTable(), record.getPage()), record.getLsn());
+                if (record.getTransaction() == 0)
+                    break;
+                if (record.getReference() != 0)
+                    compensated.add(record.getReference());
+                else
+                    losers.computeIfAbsent(record.getTransaction(), transaction -> new ArrayList<>())
+                            .add(record.getLsn());
+                break;
+            case COMMIT:
+            case ABORT:
+                losers.remove(record.getTransaction());
+                break;
+            case CLEAR:
+                cleared.put(record.getTable(), record.getLsn());
+                dirtyPages.keySet().removeIf(page -> (int) (page >>> 32) == record.getTable());
+                break;
+            case PAGE_ADDED:
+            case PAGE_REMOVED:
+                // the page starts over, only changes logged after it are replayed on it
+                dirtyPages.remove(Checkpoint.pageKey(record.getTable(), record.getPage()));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void redo(LogRecord record) throws StorageManagerException {
+        if (record.getType() == LogRecordType.CHECKPOINT || record.getType() == LogRecordType.COMMIT
+                || record.getType() == LogRecordType.ABORT)
+            return;
+        Table table = table(record.getTable());
+        if (table == null || record.getLsn() < cleared.getOrDefault(record.getTable(), 0L))
+            return;
+        int pageId = record.getPage();
+        switch (record.getType()) {
+            case PAGE_ADDED:
+                if (record.getLsn() >= table.getOrderLsn())
+                    table.restorePage(ByteBuffer.wrap(record.getAfter()).getInt(), pageId);
+                return;
+            case PAGE_REMOVED:
+                if (record.getLsn() >= table.getOrderLsn() && table.hasPage(pageId)) {
+                    pageBuffer.discardPage(table.getId(), pageId);
+                    table.removePage(pageId);
+                    if (diskLsn(table, pageId) < record.getLsn())
+                        DataManager.deletePage(table.getId(), pageId, PageTypes.RECORD_PAGE);
+                }
+                return;
+            case CLEAR:
+                if (table.getOrderLsn() != 0 && record.getLsn() >= table.getOrderLsn())
+                    bufferManager.clearPages(table);
+                return;
+            default:
+                break;
+        }
+        Long recLsn = dirtyPages.get(Checkpoint.pageKey(table.getId(), pageId));
+        if (recLsn == null || recLsn > record.getLsn() || !table.hasPage(pageId))
+            return;
+        RecordPage page = pageBuffer.getRecordPage(table.getId(), pageId);
+        if (page.getLsn() >= record.getLsn())
+            return;
+        bufferManager.redoing(record.getLsn());
+        Object[][] after = BufferManager.records(table, record.getAfter());
+        if (after.length == 0) {
+            for (Object[] before: BufferManager.records(table, record.getBefore()))
+                page.discardRecord(before);
+            return;
+        }
+        for (Object[] changed: after) {
+            if (page.applyRecord(changed))
+                continue;
+            // the page filled up differently than before the stop, the record goes wherever it fits now
+            try {
+                pageBuffer.insertRecord(table, changed);
+            } catch (StorageManagerException e) {
+                // it is already in the table
+            }
+        }
+    }
+
+    /**
+     * Undo the changes of every transaction that never ended, newest first, then log that each ended
+     */
+    private void undo() throws StorageManagerException {
+        List<Long> changes = new ArrayList<>();
+        for (List<Long> transaction: losers.values())
+            changes.addAll(transaction);
+        changes.sort(null);
+        try {
+            for (int i = changes.size() - 1; i >= 0; i--) {
+                long lsn = changes.get(i);
+                if (compensated.contains(lsn))
+                    continue;
+                LogRecord change = log.read(lsn);
+                if (change == null || lsn < cleared.getOrDefault(change.getTable(), 0L))
+                    continue;
+                bufferManager.undo(change);
+            }
+            for (long transaction: losers.keySet())
+                log.append(new LogRecord(LogRecordType.ABORT, transaction, 0, 0, -1, null, null));
+        } catch (IOException e) {
+            throw new StorageManagerException(StorageManager.CANNOT_LOAD_DATA);
+        }
+    }
+
+    /**
+     * @return the lsn in the header of a page on disk, 0 if the slot holds none
+     */
+    private long diskLsn(Table table, int pageId) {
+        try {
+            Page<?> page = pageBuffer.readPage(table, PageTypes.RECORD_PAGE, pageId);
+            return page == null ? 0 : page.getLsn();
+        } catch (FileNotFoundException e) {
+            return 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private Table table(int tableId) {
+        if (missingTables.contains(tableId))
+            return null;
+        try {
+            return bufferManager.getTable(tableId);
+        } catch (StorageManagerException e) {
+            missingTables.add(tableId);
+            return null;
+        }
+    }
+
+    private interface Pass {
+        void visit(LogRecord record) throws StorageManagerException;
+    }
+
+    /**
+     * Read the log from its first record to where it ended when the restart began, a block at a time
+     */
+    private void scan(Pass pass) throws StorageManagerException {
+        long lsn = log.firstLsn();
+        try {
+            while (lsn < end) {
+                List<LogRecord> block = log.read(lsn, BLOCK_BYTES);
+                if (block.isEmpty())
+                    return;
+                for (LogRecord record: block) {
+                    if (record.getLsn() >= end)
+                        return;
+                    pass.visit(record);
+                }
+                LogRecord last = block.get(block.size() - 1);
+                lsn = last.getLsn() + last.size();
+            }
+        } catch (IOException e) {
+            throw new StorageManagerException(StorageManager.CANNOT_LOAD_DATA);
+        }
+    }
+}
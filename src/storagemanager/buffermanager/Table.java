@@ -1,20 +1,30 @@
 package storagemanager.buffermanager;
 
+import storagemanager.buffermanager.datatypes.CharData;
 import storagemanager.buffermanager.datatypes.Datatype;
 import storagemanager.buffermanager.datatypes.ValidDataTypes;
 import storagemanager.StorageManagerException;
 import storagemanager.buffermanager.diskUtils.DataManager;
+import storagemanager.buffermanager.page.PageCompression;
+import storagemanager.buffermanager.page.PageFormat;
+import storagemanager.buffermanager.page.PageTypes;
 import storagemanager.buffermanager.page.RecordPage;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.TreeSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
 
 public class Table implements Serializable {
     // specific UID to make several runs compatiable when loading in/saving objects
     private static final long serialVersionUID = 1L;
+    private static final int FORMAT_VERSION = 1;
 
     private final int id;
 
@@ -24,14 +34,29 @@ public class Table implements Serializable {
 
     private ArrayList<Datatype> datatypes = new ArrayList<>();
 
-    // int that tells us the current highest page
-    private transient TreeSet<Integer> highestPage;
+    // the record pages in the order of their records, kept in the table's page manifest
+    private transient PageOrder pageOrder;
+    // the slots no page uses
+    private transient FreeSpaceMap freeSpace;
+    // what is known about each record page without reading it, null until the table is first used
+    private transient PageManifest manifest;
+    // the lsn the next record appended to the write ahead log gets, null if the table is not in a buffer manager
+    private transient LongSupplier logPosition;
 
     // this is the max amount of records which can be stored inside of a table
     private int maxRecords;
 
+    // how the table's pages are compressed on disk, null for a table saved before pages could be compressed
+    private PageCompression compression;
+
     public Table(int id, String[] dataTypes, Integer[] keyIndices, int pageSize) throws StorageManagerException {
+        this(id, dataTypes, keyIndices, pageSize, PageCompression.NONE);
+    }
+
+    public Table(int id, String[] dataTypes, Integer[] keyIndices, int pageSize, PageCompression compression)
+            throws StorageManagerException {
         this.id = id;
+        this.compression = compression;
 
         // calculates recordSize
         for(String dataType: dataTypes){
@@ -46,51 +71,320 @@ public class Table implements Serializable {
         this.keyIndices = keyIndices;
         this.byteKeyIndices = new Integer[keyIndices.length];
         Integer[] indices = this.keyIndices;
+        // the attributes of an encoded record start after its null bitmap
+        int bitmap = PageFormat.bitmapSize(this.datatypes.size());
         for (int i = 0; i < indices.length; i++) {
             Integer keyIndex = indices[i];
-            byteKeyIndices[i] = this.datatypes.get(keyIndex).getIndex();
+            byteKeyIndices[i] = bitmap + this.datatypes.get(keyIndex).getIndex();
+        }
+        this.maxRecords = PageFormat.maxRecords(pageSize, recordSize, this.datatypes.size());
+    }
+
+    /**
+     * Write the table's description, its pages are described by its page manifest
+     *
+     * version (4) | id (4) | compression (1) | attributes: count (4), then per attribute its type (1) and size in
+     * chars (4) | key: count (4), then attribute indices (4 each)
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(id);
+        out.writeByte(getCompression().ordinal());
+        out.writeInt(datatypes.size());
+        for (Datatype datatype: datatypes) {
+            out.writeByte(datatype.getType().ordinal());
+            out.writeInt(datatype instanceof CharData ? ((CharData) datatype).getMaxChars() : 0);
+        }
+        out.writeInt(keyIndices.length);
+        for (int keyIndex: keyIndices)
+            out.writeInt(keyIndex);
+    }
+
+    /**
+     * Read a table written by {@link #write}
+     * @param pageSize the size of the database's pages
+     * @throws IOException the table is damaged or was written by another version
+     */
+    public static Table read(DataInputStream in, int pageSize) throws IOException {
+        if (in.readInt() != FORMAT_VERSION)
+            throw new IOException("Unknown table format");
+        int id = in.readInt();
+        PageCompression compression = PageCompression.values()[in.readByte()];
+        String[] dataTypes = new String[in.readInt()];
+        for (int i = 0; i < dataTypes.length; i++) {
+            ValidDataTypes type = ValidDataTypes.values()[in.readByte()];
+            int chars = in.readInt();
+            dataTypes[i] = type == ValidDataTypes.CHAR || type == ValidDataTypes.VARCHAR
+                    ? type.name().toLowerCase() + "(" + chars + ")" : type.name().toLowerCase();
+        }
+        Integer[] keyIndices = new Integer[in.readInt()];
+        for (int i = 0; i < keyIndices.length; i++)
+            keyIndices[i] = in.readInt();
+        try {
+            return new Table(id, dataTypes, keyIndices, pageSize, compression);
+        } catch (StorageManagerException e) {
+            throw new IOException(e.getMessage());
         }
-        this.maxRecords = Math.floorDiv(pageSize, recordSize);
     }
 
     public int getMaxRecords() {
         return maxRecords;
     }
 
-    public int getNewHighestPage() {
-        if (this.highestPage == null)
-            this.highestPage = DataManager.getPages(id);
-        this.highestPage.add(this.getHighestPage() + 1);
-        return this.highestPage.last();
+    public PageCompression getCompression() {
+        return compression == null ? PageCompression.NONE : compression;
+    }
+
+    /**
+     * The record pages in order, read from the table's page manifest the first time it is used. A manifest that was
+     * not saved cleanly is made to agree with the pages in the table's segment file
+     */
+    private PageOrder pages() {
+        if (pageOrder == null) {
+            pageOrder = new PageOrder();
+            freeSpace = new FreeSpaceMap();
+            manifest = PageManifest.load(this, pageOrder, freeSpace);
+            if (manifest == null || !manifest.isClean())
+                checkPages();
+            manifest.opened();
+        }
+        return pageOrder;
+    }
+
+    /**
+     * Read every page header in the segment file, then every page's first and last record. The order saved last
+     * may be missing pages split off since, the records say where every page goes. Only a table whose order no
+     * write ahead log brings up to date is checked this way, a restart redoes the changes to the order onto the
+     * order its manifest was saved or flagged in use with
+     */
+    private void checkPages() {
+        TreeMap<Integer, Integer> onDisk = DataManager.getPages(id);
+        for (int pageId: pageOrder.toList())
+            if (!onDisk.containsKey(pageId)) pageOrder.remove(pageId);
+        for (int pageId: onDisk.keySet())
+            if (!pageOrder.contains(pageId)) pageOrder.append(pageId);
+        Map<Integer, Object[][]> bounds = new HashMap<>();
+        if (pageOrder.size() > 1) {
+            for (int pageId: pageOrder) {
+                try {
+                    RecordPage page = (RecordPage) DataManager.getPage(this, PageTypes.RECORD_PAGE, pageId, null);
+                    int entries = page.getEntriesCount();
+                    if (entries > 0)
+                        bounds.put(pageId, new Object[][]{page.recordAt(0), page.recordAt(entries - 1)});
+                } catch (IOException e) {
+                    // an unreadable page keeps its place
+                }
+            }
+            // pages are in the order of their first records, pages without records keep their places at the end
+            List<Integer> ordered = pageOrder.toList();
+            ordered.sort((first, second) -> {
+                Object[][] firstBounds = bounds.get(first);
+                Object[][] secondBounds = bounds.get(second);
+                if (firstBounds == null || secondBounds == null)
+                    return Boolean.compare(firstBounds == null, secondBounds == null);
+                return compareToKey(firstBounds[0], recordToKey(secondBounds[0]));
+            });
+            pageOrder.clear();
+            for (int pageId: ordered)
+                pageOrder.append(pageId);
+        }
+        // the headers just read say which slots are free
+        freeSpace.clear();
+        for (int pageId = 0; pageId <= pageOrder.highest(); pageId++) {
+            if (!onDisk.containsKey(pageId)) freeSpace.free(pageId);
+        }
+        if (manifest == null)
+            manifest = new PageManifest(this);
+        manifest.reset(pageOrder, onDisk);
+        for (Map.Entry<Integer, Object[][]> entry: bounds.entrySet())
+            manifest.pageWritten(entry.getKey(), onDisk.get(entry.getKey()), entry.getValue()[0], entry.getValue()[1]);
+    }
+
+    /**
+     * Add a page after the last page
+     * @return the id of the new page
+     */
+    public int addLastPage() {
+        return addPageAfter(pages().last());
+    }
+
+    /**
+     * Add a page right after another, no other page is moved. The page takes a freed slot if there is one
+     * @param pageId the page to add the new page after
+     * @return the id of the new page
+     */
+    public int addPageAfter(int pageId) {
+        int newPageId = getFreeSpaceMap().allocate(pageOrder.newPageId());
+        pageOrder.insertAfter(pageId, newPageId);
+        // the new page's neighbours now link to it
+        manifest.forget(newPageId);
+        manifest.changed(pageOrder.previous(newPageId));
+        manifest.changed(pageOrder.next(newPageId));
+        return newPageId;
+    }
+
+    /**
+     * Record how full a page is and the keys it holds, when it is written
+     * @param lowRecord the page's first record, null if it is empty
+     * @param highRecord the page's last record, null if it is empty
+     */
+    public void pageWritten(int pageId, int entries, Object[] lowRecord, Object[] highRecord) {
+        pages();
+        manifest.pageWritten(pageId, entries, lowRecord, highRecord);
+    }
+
+    public FreeSpaceMap getFreeSpaceMap() {
+        pages();
+        return freeSpace;
     }
 
     public int getHighestPage() {
-        if (highestPage == null)
-            highestPage = DataManager.getPages(id);
-        if (highestPage.isEmpty())
-            return -1;
-        return highestPage.last();
+        return pages().highest();
     }
 
+    /**
+     * The table's record pages and its manifest were deleted, the table has no pages
+     */
     public void resetPages() {
-        highestPage = null;
+        pageOrder = new PageOrder();
+        freeSpace = new FreeSpaceMap();
+        manifest = new PageManifest(this);
     }
 
+    /**
+     * Put a page back in the order where a restart found it was added, with the id it had. A page already in the
+     * order, as one rebuilt from the segment file may have it, is moved there
+     * @param previousPageId the page it comes after, NO_PAGE to put it first
+     */
+    public void restorePage(int previousPageId, int pageId) {
+        if (pages().contains(pageId))
+            leaveOrder(pageId);
+        getFreeSpaceMap().take(pageId, pageOrder.newPageId());
+        if (previousPageId != PageOrder.NO_PAGE && !pageOrder.contains(previousPageId))
+            previousPageId = pageOrder.last();
+        pageOrder.insertAfter(previousPageId, pageId);
+        manifest.forget(pageId);
+        manifest.changed(pageOrder.previous(pageId));
+        manifest.changed(pageOrder.next(pageId));
+    }
+
+    /**
+     * Take a page out of the order, its slot is held until {@link #releasePage} once the page is cleared from it
+     */
     public void removePage(RecordPage page) {
-        this.highestPage.remove(page.getPageID());
+        leaveOrder(page.getPageID());
+        freeSpace.hold(page.getPageID());
+    }
+
+    /**
+     * The slot of a page taken out of the order was cleared, a new page can take it
+     */
+    public void releasePage(int pageId) {
+        getFreeSpaceMap().release(pageId, pageOrder.newPageId());
+    }
+
+    /**
+     * Take a page out of the order, its slot is free
+     */
+    public void removePage(int pageId) {
+        leaveOrder(pageId);
+        // a slot past the last page is not free, the file's end is
+        if (pageId < pageOrder.newPageId())
+            freeSpace.free(pageId);
+    }
+
+    private void leaveOrder(int pageId) {
+        int before = pages().previous(pageId);
+        int after = pageOrder.next(pageId);
+        pageOrder.remove(pageId);
+        manifest.forget(pageId);
+        manifest.changed(before);
+        manifest.changed(after);
+    }
+
+    /**
+     * Record pages of the table are about to be written, the manifest on disk stops being flagged clean first so a
+     * manifest flagged clean always describes the pages on disk
+     */
+    public void writingPages() {
+        pages();
+        manifest.opened();
     }
-    public void setPages(TreeSet<Integer> pages) {
-        this.highestPage = pages;
+
+    /**
+     * @return the lsn the table's page order is as of, changes to the order logged from there on are not in it.
+     *         0 if it is not known and every change to the order in the log is replayed
+     */
+    public long getOrderLsn() {
+        pages();
+        return manifest.getLsn();
+    }
+
+    public void setLogPosition(LongSupplier logPosition) {
+        this.logPosition = logPosition;
     }
 
     /**
-     * Simply returns all the pages associated with this table, in this case it's a range from 0 to the
-     * highest page
+     * @return the lsn the next record appended to the log gets, 0 if changes are not logged
+     */
+    long logPosition() {
+        return logPosition == null ? 0 : logPosition.getAsLong();
+    }
+
+    /**
+     * Write the changes to the page manifest, nothing is written if the table was not used
+     */
+    public void saveManifest() throws StorageManagerException {
+        if (manifest != null)
+            manifest.save(pageOrder, freeSpace);
+    }
+
+    /**
+     * @return what is known about each record page without reading it
+     */
+    public PageManifest getManifest() {
+        pages();
+        return manifest;
+    }
+
+    /**
+     * Simply returns all the pages associated with this table, in the order of their records
      * @return
      */
-    public TreeSet<Integer> getPages(){
-        getHighestPage();
-        return new TreeSet<>(highestPage);
+    public List<Integer> getPages(){
+        return pages().toList();
+    }
+
+    /**
+     * @return the first page, PageOrder.NO_PAGE if there are none
+     */
+    public int getFirstPage() {
+        return pages().first();
+    }
+
+    /**
+     * @return the last page, PageOrder.NO_PAGE if there are none
+     */
+    public int getLastPage() {
+        return pages().last();
+    }
+
+    /**
+     * @return the page after a page, PageOrder.NO_PAGE if there is none
+     */
+    public int getNextPage(int pageId) {
+        return pages().next(pageId);
+    }
+
+    /**
+     * @return the pages after a page, in order
+     */
+    public Iterable<Integer> getPagesAfter(int pageId) {
+        return pages().after(pageId);
+    }
+
+    public boolean hasPage(int pageId) {
+        return pages().contains(pageId);
     }
 
     public int getId() {
@@ -132,6 +426,9 @@ public class Table implements Serializable {
         return  keyRecord;
     }
 
+    /**
+     * @return where each key attribute starts in a record encoded by {@link PageFormat}, in key order
+     */
     public Integer[] getByteKeyIndices() {
         return byteKeyIndices;
     }
@@ -153,31 +450,36 @@ public class Table implements Serializable {
         return datatypes.get(index).compareObjects(obj1, obj2);
     }
 
-    public int compareArrayRecords(int key, byte[] first, byte[] second) {
-        Datatype datatype = this.datatypes.get(key);
-        int fromIndex = datatype.getIndex();
-        int toIndex = datatype.nextIndex();
-        return Arrays.compare(first, fromIndex, toIndex, second, fromIndex, toIndex);
-    }
-
-    public byte[] resolveRecordAsBytes(Object[] record) {
-        ByteBuffer buffer = ByteBuffer.allocate(recordSize);
-        for (int i = 0; i < record.length; i++) {
-            Object obj = record[i];
-            Datatype datatype = this.datatypes.get(i);
-
-            buffer.put(datatype.toByteArray(obj));
+    /**
+     * Compare the key of a record to a key
+     * @param recordOrKey a record or the key of one
+     * @param key the values of the key attributes, in key order
+     * @return 1 if the record is greater, -1 if it is less, 0 if they are equal
+     */
+    public int compareToKey(Object[] recordOrKey, Object[] key) {
+        Object[] record = getRecordFromKey(recordOrKey);
+        for (int i = 0; i < keyIndices.length; i++) {
+            int ret = compareDataTypes(keyIndices[i], record[keyIndices[i]], key[i]);
+            if (ret != 0)
+                return ret > 0 ? 1 : -1;
         }
-        return buffer.array();
+        return 0;
     }
 
-    public Object[] resolveBytesAsObject(byte[] record) {
-        Object[] Orecord = new Object[datatypes.size()];
-        for (int i = 0; i < datatypes.size(); i++) {
-            Datatype datatype = datatypes.get(i);
-            Orecord[i] = datatype.toObject(record, datatype.getIndex());
+    /**
+     * Compare the keys of two records encoded by {@link PageFormat}, without decoding either
+     * @param first the bytes holding the first record, or its key encoded by {@link PageFormat#encodeKey}
+     * @param second the bytes holding the second record
+     * @return 1 if the first record is greater, -1 if it is less, 0 if they are equal
+     */
+    public int compareEncodedKeys(byte[] first, int firstStart, byte[] second, int secondStart) {
+        for (int i = 0; i < keyIndices.length; i++) {
+            int offset = byteKeyIndices[i];
+            int ret = datatypes.get(keyIndices[i]).compareBytes(first, firstStart + offset, second, secondStart + offset);
+            if (ret != 0)
+                return ret > 0 ? 1 : -1;
         }
-        return Orecord;
+        return 0;
     }
 
     @Override
@@ -19,6 +19,10 @@ public class BooleanData extends StaticData<Boolean> {
         return attributes[start] == 1;
     }
 
+    @Override
+    public int compareBytes(byte[] first, int firstStart, byte[] second, int secondStart) {
+        return Boolean.compare(first[firstStart] == 1, second[secondStart] == 1);
+    }
 
     public Object parseData(String data) throws DataTypeException {
         data = data.toLowerCase().trim();
@@ -8,7 +8,8 @@ import java.nio.ByteBuffer;
 public class CharData extends Datatype<String>{
 
     int maxChars;
-    char padding = ' ';
+    // fills the bytes after the last char, removed again when the bytes are read
+    char padding = '\0';
 
     /**
      * @param maxChars The amount of chars this attr can hold
@@ -64,10 +65,41 @@ public class CharData extends Datatype<String>{
     public String toObject(byte[] attributes, int start) {
         ByteBuffer b = ByteBuffer.wrap(attributes, start, getSize());
         char[] chars = new char[maxChars];
+        int length = 0;
         for (int i = 0; i < maxChars; i++) {
             chars[i] = b.getChar();
+            if (chars[i] != padding) length = i + 1;
         }
-        return String.valueOf(chars);
+        return String.valueOf(chars, 0, length);
+    }
+
+    /**
+     * Chars are compared ignoring case one at a time. The padding after the last char sorts before any char, so a
+     * value sorts before the longer values it starts. A value with a char outside ASCII is decoded and compared
+     * as a string, its upper case may differ in length
+     */
+    @Override
+    public int compareBytes(byte[] first, int firstStart, byte[] second, int secondStart) {
+        for (int i = 0; i < maxChars; i++) {
+            char a = readChar(first, firstStart + i * type.sizeInBytes);
+            char b = readChar(second, secondStart + i * type.sizeInBytes);
+            if (a >= 0x80 || b >= 0x80)
+                return super.compareBytes(first, firstStart, second, secondStart);
+            if (a == b)
+                continue;
+            int ret = upperCase(a) - upperCase(b);
+            if (ret != 0)
+                return ret;
+        }
+        return 0;
+    }
+
+    private static char readChar(byte[] bytes, int start) {
+        return (char) (((bytes[start] & 0xFF) << 8) | (bytes[start + 1] & 0xFF));
+    }
+
+    private static char upperCase(char c) {
+        return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
     }
 
     @Override
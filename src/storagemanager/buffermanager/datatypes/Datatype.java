@@ -47,6 +47,14 @@ public abstract class Datatype<E> implements Serializable {
 
     public abstract byte[] toByteArray(E attribute);
 
+    /**
+     * {@link #toByteArray} for a value that is not known to be of this type's class, such as an attribute of a record
+     */
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Object attribute) {
+        return toByteArray((E) attribute);
+    }
+
     public abstract E toObject(byte[] attributes, int start);
 
     public abstract boolean matches(Object obj);
@@ -59,6 +67,25 @@ public abstract class Datatype<E> implements Serializable {
         return type.comparator.compare(obj1, obj2);
     }
 
+    /**
+     * Compare two values where they are encoded, the same way {@link #compareObjects} compares them decoded
+     * @param first the bytes holding the first value
+     * @param firstStart where the first value starts
+     * @param second the bytes holding the second value
+     * @param secondStart where the second value starts
+     */
+    public int compareBytes(byte[] first, int firstStart, byte[] second, int secondStart) {
+        return compareObjects(toObject(first, firstStart), toObject(second, secondStart));
+    }
+
+    /**
+     * @return the big endian int starting at start
+     */
+    static int readInt(byte[] bytes, int start) {
+        return (bytes[start] << 24) | ((bytes[start + 1] & 0xFF) << 16) | ((bytes[start + 2] & 0xFF) << 8)
+                | (bytes[start + 3] & 0xFF);
+    }
+
     @Override
     public String toString() {
         return type.toString();
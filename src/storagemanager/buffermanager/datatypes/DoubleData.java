@@ -17,10 +17,21 @@ public class DoubleData extends StaticData<Double> {
 
     @Override
     public Double toObject(byte[] attributes, int start) {
-        ByteBuffer b = ByteBuffer.wrap(attributes, start, nextIndex());
+        ByteBuffer b = ByteBuffer.wrap(attributes, start, type.sizeInBytes);
         return b.getDouble();
     }
 
+    @Override
+    public int compareBytes(byte[] first, int firstStart, byte[] second, int secondStart) {
+        return Double.compare(readDouble(first, firstStart), readDouble(second, secondStart));
+    }
+
+    private static double readDouble(byte[] bytes, int start) {
+        long high = readInt(bytes, start);
+        long low = readInt(bytes, start + Integer.BYTES) & 0xFFFFFFFFL;
+        return Double.longBitsToDouble((high << 32) | low);
+    }
+
     @Override
     public Object parseData(String data) throws DataTypeException {
         try {
@@ -16,10 +16,15 @@ public class IntegerData extends StaticData<Integer> {
 
     @Override
     public Integer toObject(byte[] attributes, int start) {
-        ByteBuffer b = ByteBuffer.wrap(attributes, start, nextIndex());
+        ByteBuffer b = ByteBuffer.wrap(attributes, start, type.sizeInBytes);
         return b.getInt();
     }
 
+    @Override
+    public int compareBytes(byte[] first, int firstStart, byte[] second, int secondStart) {
+        return Integer.compare(readInt(first, firstStart), readInt(second, secondStart));
+    }
+
     @Override
     public Object parseData(String data) throws DataTypeException {
         try {
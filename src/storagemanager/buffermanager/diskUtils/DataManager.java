@@ -1,16 +1,41 @@
 package storagemanager.buffermanager.diskUtils;
 
-import ddl.catalog.Catalog;
 import storagemanager.StorageManager;
 import storagemanager.StorageManagerException;
 import storagemanager.buffermanager.page.Page;
 import storagemanager.buffermanager.Table;
+import storagemanager.buffermanager.page.PageCompression;
+import storagemanager.buffermanager.page.PageFormat;
 import storagemanager.buffermanager.page.PageTypes;
 
+import storagemanager.buffermanager.pageManager.HotPage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.TreeSet;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 public abstract class DataManager {
 
@@ -23,16 +48,46 @@ public abstract class DataManager {
     private static final String extraPath = "db" + File.separator;
     private static String dbmsPath = "";
     private static int pageSize = 4096;
+    // decode pages from memory mappings of the segment files instead of reading them into a buffer
+    private static boolean mappedReads = false;
     public static final String tableObjName = "tabledata";
     public static final String catalogObjName = "catalog";
+    public static final String hotPagesName = "hotpages";
+    public static final String segmentExtension = ".seg";
+    public static final String manifestName = "manifest";
+    public static final String superblockName = "superblock";
+    public static final String logName = "wal";
+    public static final String undoLogName = "undo";
+    private static final int HOT_PAGES_VERSION = 1;
+
+    // open segment files by path
+    private static final ConcurrentHashMap<String, SegmentFile> segments = new ConcurrentHashMap<>();
+
+    // pages of tables with compression are compressed into and read from these, one per thread
+    private static final ThreadLocal<ByteBuffer> compressionBuffers = new ThreadLocal<>();
+
+    // the superblock of the open database, null if it has none yet
+    private static Superblock superblock;
+    // the database was shut down cleanly before it was opened, what was saved about its pages can be trusted
+    private static boolean cleanShutdown = true;
+    // the lsn a restart reads the write ahead log from, none while no restart is running
+    private static long recoveryStart = Long.MAX_VALUE;
+
+    // bumped whenever a page of a table is written, moved or deleted
+    private static final ConcurrentHashMap<Integer, Long> pageVersions = new ConcurrentHashMap<>();
 
     public static void setDbmsPath(String dbmsPath) {
+        closeSegments();
         resolveDBPath(dbmsPath);
         new File(DataManager.dbmsPath).mkdirs();
     }
 
     public static void deleteDb (String dbmsPath) throws StorageManagerException {
+        closeSegments();
         resolveDBPath(dbmsPath);
+        superblock = null;
+        cleanShutdown = true;
+        recoveryStart = Long.MAX_VALUE;
         try {
             File path = new File(dbmsPath);
             if (path.exists())
@@ -62,97 +117,580 @@ public abstract class DataManager {
         DataManager.pageSize = pageSize;
     }
 
+    public static void setMappedReads(boolean mappedReads) {
+        DataManager.mappedReads = mappedReads;
+    }
+
     public static int getPageSize() {
         return pageSize;
     }
 
-    public static Catalog getCatalog() throws IOException {
-        return (Catalog) ObjectSaver.load(dbmsPath + catalogObjName);
+    /**
+     * Read the superblock of the database, it is kept until the database is deleted or another is opened
+     * @return the superblock, null if the database has none. A database without one is treated as one that was not
+     *         shut down cleanly
+     */
+    public static Superblock openSuperblock() {
+        superblock = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(dbmsPath + superblockName)))) {
+            superblock = Superblock.read(in);
+        } catch (IOException e) {
+            // a missing or damaged superblock only means the database's files are checked as they are used
+        }
+        cleanShutdown = superblock != null && superblock.isClean();
+        recoveryStart = Long.MAX_VALUE;
+        return superblock;
+    }
+
+    public static Superblock getSuperblock() {
+        return superblock;
+    }
+
+    /**
+     * Replace the superblock, the new one is written beside the old one and moved over it once it is complete.
+     * It is on disk when this returns, the move included
+     */
+    public static void saveSuperblock(Superblock superblock) throws StorageManagerException {
+        Path path = Paths.get(dbmsPath + superblockName);
+        Path written = Paths.get(dbmsPath + superblockName + ".new");
+        try {
+            FileOutputStream file = new FileOutputStream(written.toFile());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+                superblock.write(out);
+                out.flush();
+                file.getFD().sync();
+            }
+            Files.move(written, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            // the move is only durable once the directory holding it is
+            try (FileChannel directory = FileChannel.open(Paths.get(dbmsPath), StandardOpenOption.READ)) {
+                directory.force(true);
+            }
+        } catch (IOException e) {
+            throw new StorageManagerException(StorageManager.CANNOT_SAVE_DATA);
+        }
+        DataManager.superblock = superblock;
+    }
+
+    /**
+     * @return true if the database was shut down cleanly before it was opened
+     */
+    public static boolean wasCleanShutdown() {
+        return cleanShutdown;
+    }
+
+    /**
+     * A restart brought every table back to where the write ahead log left it, what is saved about the pages can
+     * be trusted again
+     */
+    public static void recovered() {
+        cleanShutdown = true;
+        recoveryStart = Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the lsn the restart that is running reads the write ahead log from, Long.MAX_VALUE if none is
+     */
+    public static long getRecoveryStart() {
+        return recoveryStart;
+    }
+
+    public static void setRecoveryStart(long recoveryStart) {
+        DataManager.recoveryStart = recoveryStart;
+    }
+
+    /**
+     * @return the write ahead log of the database
+     */
+    public static Path logPath() {
+        return Paths.get(dbmsPath + logName);
+    }
+
+    /**
+     * @return the log a transaction keeps its changes in to roll them back when they are not logged
+     */
+    public static Path undoLogPath() {
+        return Paths.get(dbmsPath + undoLogName);
     }
 
-    public static void saveCatalog(Catalog catalog) throws IOException {
-        ObjectSaver.save(catalog, dbmsPath + catalogObjName, false);
+    private static String catalogPath() {
+        return dbmsPath + (superblock == null ? catalogObjName : superblock.getCatalogLocation());
+    }
+
+    /**
+     * Read part of the catalog
+     * @throws IOException there is no catalog or it is shorter than asked for
+     */
+    public static ByteBuffer readCatalog(long position, int length) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(catalogPath()), StandardOpenOption.READ)) {
+            ByteBuffer bytes = ByteBuffer.allocate(length);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, position + bytes.position()) < 0)
+                    throw new EOFException(catalogObjName);
+            }
+            return bytes.flip();
+        }
+    }
+
+    /**
+     * Replace the catalog, the new catalog is written beside the old one and moved over it once it is complete
+     * @param pieces the catalog, in order
+     */
+    public static void saveCatalog(List<ByteBuffer> pieces) throws IOException {
+        Path path = Paths.get(catalogPath());
+        Path written = Paths.get(catalogPath() + ".new");
+        try (FileChannel channel = FileChannel.open(written, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer piece: pieces) {
+                ByteBuffer bytes = piece.duplicate();
+                while (bytes.hasRemaining())
+                    channel.write(bytes);
+            }
+        }
+        Files.move(written, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Write the manifest of the pages that are hot in the buffer, replacing the last one
+     * @return false if the manifest could not be written, the next restart starts cold
+     */
+    public static boolean saveHotPages(List<HotPage> hotPages) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(dbmsPath + hotPagesName)))) {
+            out.writeInt(HOT_PAGES_VERSION);
+            out.writeInt(hotPages.size());
+            for (HotPage hotPage: hotPages) {
+                out.writeInt(hotPage.getTableId());
+                out.writeByte(hotPage.getPageType().ordinal());
+                out.writeInt(hotPage.getPageId());
+                out.writeInt(hotPage.getHeat());
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the pages that were hot when the database last shut down, empty if there is no readable manifest
+     */
+    public static List<HotPage> getHotPages() {
+        List<HotPage> hotPages = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(dbmsPath + hotPagesName)))) {
+            if (in.readInt() != HOT_PAGES_VERSION) return hotPages;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int tableId = in.readInt();
+                PageTypes pageType = PageTypes.values()[in.readByte()];
+                int pageId = in.readInt();
+                hotPages.add(new HotPage(tableId, pageType, pageId, in.readInt()));
+            }
+        } catch (IOException | ArrayIndexOutOfBoundsException e) {
+            // a missing or damaged manifest only means a cold start
+            hotPages.clear();
+        }
+        return hotPages;
     }
 
     public static Table getTable(int table) throws IOException {
-        return (Table)ObjectSaver.load(dbmsPath + table + File.separator + tableObjName);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(dbmsPath + table + File.separator + tableObjName)))) {
+            return Table.read(in, pageSize);
+        }
     }
 
     public static boolean dropTable(int tableID) throws StorageManagerException {
         try {
+            closeSegments(tableID);
             File path = new File(dbmsPath + tableID + File.separator);
             if (path.exists())
                 delete(path);
             else return false;
+            pageFilesChanged(tableID);
         } catch (SecurityException | IOException e) {
             throw new StorageManagerException(String.format(StorageManager.TABLE_DNE_FORMAT, tableID));
         }
         return true;
     }
 
-    public static Page getPage(int table, PageTypes pageTypes, int page) throws IOException {
-        return (Page)ObjectSaver.load(dbmsPath + table + File.separator + pageTypes.relLoc + File.separator + page);
+    /**
+     * @return the id of every table with a directory in the database
+     */
+    public static List<Integer> tableIds() {
+        List<Integer> ids = new ArrayList<>();
+        File[] files = new File(dbmsPath).listFiles(File::isDirectory);
+        if (files == null) return ids;
+        for (File file: files) {
+            try {
+                ids.add(Integer.parseInt(file.getName()));
+            } catch (NumberFormatException e) {
+                // not a table
+            }
+        }
+        Collections.sort(ids);
+        return ids;
     }
 
-    public static void saveTable(Table table, int tableId) throws StorageManagerException {
+    private static String segmentPath(int table, PageTypes pageType) {
+        return dbmsPath + table + File.separator + pageType.relLoc + segmentExtension;
+    }
+
+    /**
+     * @param create true to create the segment file if the table has none yet
+     * @return the open segment file holding a type of page of a table, null if there is none and create is false
+     */
+    private static SegmentFile segment(int table, PageTypes pageType, boolean create) throws IOException {
+        String path = segmentPath(table, pageType);
+        SegmentFile segment = segments.get(path);
+        if (segment != null && segment.isOpen()) return segment;
+        synchronized (segments) {
+            segment = segments.get(path);
+            if (segment != null && !segment.isOpen()) {
+                segment = reopen(path, segment);
+                segments.put(path, segment);
+            }
+            if (segment == null) {
+                if (!create && !new File(path).exists()) return null;
+                segment = new SegmentFile(Paths.get(path), pageSize);
+                segments.put(path, segment);
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * Open a segment file again after its channel was closed by a thread interrupted while reading it, the pages
+     * written through the closed channel are in the file
+     */
+    private static SegmentFile reopen(String path, SegmentFile closed) throws IOException {
+        closed.close();
+        return new SegmentFile(Paths.get(path), pageSize);
+    }
+
+    /**
+     * Close the segment files of a table, or of every table when the table is null
+     */
+    private static void closeSegments(Integer table) {
+        synchronized (segments) {
+            segments.entrySet().removeIf(entry -> {
+                if (table != null && !entry.getKey().startsWith(dbmsPath + table + File.separator))
+                    return false;
+                try {
+                    entry.getValue().close();
+                } catch (IOException e) {
+                    // nothing is lost, every write already went through the channel
+                }
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Force every page written to an open segment file onto the disk
+     */
+    public static void forceSegments() throws IOException {
+        synchronized (segments) {
+            for (Map.Entry<String, SegmentFile> entry: segments.entrySet()) {
+                if (!entry.getValue().isOpen())
+                    entry.setValue(reopen(entry.getKey(), entry.getValue()));
+                entry.getValue().force();
+            }
+        }
+    }
+
+    /**
+     * Close every open segment file, they are opened again when a page is next read or written
+     */
+    public static void closeSegments() {
+        closeSegments(null);
+    }
+
+    /**
+     * Read a page from its table's segment file, with mapped reads on the page is decoded from the file's mapping
+     * @param table the table the page belongs to
+     * @param frame the frame to read the page into, null to read it on the heap. Mapped reads only use it to
+     *              decompress a page into
+     * @throws FileNotFoundException if the table has no such page
+     */
+    public static Page<?> getPage(Table table, PageTypes pageTypes, int page, ByteBuffer frame) throws IOException {
+        SegmentFile segment = segment(table.getId(), pageTypes, false);
+        if (mappedReads && segment != null) {
+            Page<?> mapped = segment.readMapped(page, buffer ->
+                    PageFormat.isPageFormat(buffer) ? decode(buffer, table, page, frame) : null);
+            if (mapped == null)
+                throw new FileNotFoundException(segmentPath(table.getId(), pageTypes) + " page " + page);
+            return mapped;
+        }
+        // a compressed page is read aside and decompressed into the frame
+        ByteBuffer buffer = table.getCompression() != PageCompression.NONE ? compressionBuffer()
+                : frame != null ? frame : ByteBuffer.allocate(pageSize);
+        if (segment == null || !segment.read(page, buffer) || !PageFormat.isPageFormat(buffer))
+            throw new FileNotFoundException(segmentPath(table.getId(), pageTypes) + " page " + page);
+        return decode(buffer, table, page, frame);
+    }
+
+    /**
+     * Start reading a page from its table's segment file, the calling thread does not wait for the read.
+     * With mapped reads on the page is decoded from the file's mapping before this returns
+     * @param table the table the page belongs to
+     * @param frame the frame to read the page into, null to read it on the heap. It must not be used by anything
+     *              else until the read completes
+     * @return completes with the page, or exceptionally with a FileNotFoundException if the table has no such page
+     */
+    public static CompletableFuture<Page<?>> getPageAsync(Table table, PageTypes pageTypes, int page, ByteBuffer frame) {
         try {
-            ObjectSaver.save(table, dbmsPath + tableId + File.separator + tableObjName, true);
+            SegmentFile segment = segment(table.getId(), pageTypes, false);
+            if (segment == null)
+                throw new FileNotFoundException(segmentPath(table.getId(), pageTypes) + " page " + page);
+            if (mappedReads)
+                return CompletableFuture.completedFuture(getPage(table, pageTypes, page, frame));
+            // a compressed page is read aside, every read in flight needs its own buffer
+            ByteBuffer buffer = table.getCompression() != PageCompression.NONE || frame == null
+                    ? ByteBuffer.allocate(pageSize) : frame;
+            return segment.readAsync(page, buffer).thenApply(read -> {
+                if (!read || !PageFormat.isPageFormat(buffer))
+                    throw new CompletionException(new FileNotFoundException(
+                            segmentPath(table.getId(), pageTypes) + " page " + page));
+                return decode(buffer, table, page, frame);
+            });
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Decode a stored page, decompressing it first if it is compressed
+     * @param frame the frame to decompress the page into, null to decompress it on the heap
+     */
+    private static Page<?> decode(ByteBuffer stored, Table table, int page, ByteBuffer frame) {
+        if (!PageFormat.isCompressed(stored))
+            return PageFormat.read(stored, table, page);
+        ByteBuffer buffer = frame != null ? frame : ByteBuffer.allocate(pageSize);
+        PageFormat.decompress(stored, buffer, pageSize);
+        return PageFormat.read(buffer, table, page);
+    }
+
+    /**
+     * @return this thread's page sized buffer for compressed pages
+     */
+    private static ByteBuffer compressionBuffer() {
+        ByteBuffer buffer = compressionBuffers.get();
+        if (buffer == null || buffer.capacity() < pageSize) {
+            buffer = ByteBuffer.allocate(pageSize);
+            compressionBuffers.set(buffer);
+        }
+        return buffer.clear();
+    }
+
+    public static void saveTable(Table table, int tableId) throws StorageManagerException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(dbmsPath + tableId + File.separator + tableObjName)))) {
+            table.write(out);
         } catch (IOException e) {
             throw new StorageManagerException(StorageManager.CANNOT_SAVE_DATA);
         }
     }
 
+    /**
+     * @return true if a table has a page manifest, whether or not it can be read
+     */
+    public static boolean hasManifest(int table) {
+        return Files.exists(Paths.get(dbmsPath + table, manifestName));
+    }
+
+    /**
+     * @return the whole of a table's page manifest, null if the table has none or it can not be read
+     */
+    public static ByteBuffer readManifest(int table) {
+        Path path = Paths.get(dbmsPath + table, manifestName);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) return null;
+            ByteBuffer manifest = ByteBuffer.allocate((int) channel.size());
+            while (manifest.hasRemaining() && channel.read(manifest, manifest.position()) > 0);
+            return manifest.flip();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the start of a table's page manifest, null if the table has none or it is shorter than the length
+     */
+    public static ByteBuffer readManifestHeader(int table, int length) {
+        Path path = Paths.get(dbmsPath + table, manifestName);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(length);
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0);
+            return header.hasRemaining() ? null : header.flip();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write pieces of a table's page manifest in place, in the order given, and force them to disk
+     * @param length the length to cut the manifest to once it is written, -1 to leave it
+     * @param positions where in the manifest each piece goes
+     * @return false if the manifest could not be written, the next use of the table reads the page headers instead
+     */
+    public static boolean writeManifest(int table, long length, List<Long> positions, List<ByteBuffer> pieces) {
+        Path path = Paths.get(dbmsPath + table, manifestName);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            for (int i = 0; i < pieces.size(); i++) {
+                ByteBuffer piece = pieces.get(i).duplicate();
+                long position = positions.get(i);
+                while (piece.hasRemaining())
+                    position += channel.write(piece, position);
+            }
+            if (length >= 0 && channel.size() > length)
+                channel.truncate(length);
+            channel.force(false);
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
     public static boolean createTableDirectory(int tableID) {
         return new File(dbmsPath + tableID).mkdir();
     }
 
-    public static void savePage(Page page, int table) throws StorageManagerException {
-        String superPath = dbmsPath + table + File.separator;
-        new File(superPath + page.getPageType().relLoc).mkdir();
+    public static void savePage(Page<?> page, int table) throws StorageManagerException {
+        savePage(page, table, null);
+    }
+
+    /**
+     * Write a page in the binary page format to its slot in the table's segment file, compressed if its table
+     * compresses pages and that makes it smaller. Only the compressed bytes of a compressed page are written
+     * @param frame the frame to encode the page in, null to encode it on the heap
+     */
+    public static void savePage(Page<?> page, int table, ByteBuffer frame) throws StorageManagerException {
+        ByteBuffer buffer = encode(page, frame, compressionBuffer());
         try {
-            ObjectSaver.save(page,superPath + page.getPageType().relLoc + File.separator + page.getPageID(), true);
+            segment(table, page.getPageType(), true).write(page.getPageID(), buffer);
         } catch (IOException e) {
             throw new StorageManagerException(StorageManager.CANNOT_SAVE_DATA);
+        } finally {
+            pageFilesChanged(table);
+        }
+    }
+
+    /**
+     * Write pages of one type of a table, pages in neighbouring slots are written with a single gathering write.
+     * Pages on their own are written asynchronously, all in flight at once, this returns once every write is done
+     * @param pages the pages to write, in page id order
+     * @param frames the frame to encode each page in, a null frame encodes its page on the heap
+     */
+    public static void savePages(int table, PageTypes pageType, List<? extends Page<?>> pages, List<ByteBuffer> frames)
+            throws StorageManagerException {
+        ByteBuffer[] encoded = new ByteBuffer[pages.size()];
+        for (int i = 0; i < pages.size(); i++) {
+            Page<?> page = pages.get(i);
+            // every page is still waiting to be written when the next is compressed, they can not share a buffer
+            ByteBuffer compressed = page.getTable().getCompression() != PageCompression.NONE
+                    ? ByteBuffer.allocate(pageSize) : null;
+            encoded[i] = encode(page, frames.get(i), compressed);
+        }
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        try {
+            SegmentFile segment = segment(table, pageType, true);
+            int start = 0;
+            while (start < encoded.length) {
+                int end = start + 1;
+                while (end < encoded.length && pages.get(end).getPageID() == pages.get(end - 1).getPageID() + 1)
+                    end++;
+                if (end - start == 1)
+                    writes.add(segment.writeAsync(pages.get(start).getPageID(), encoded[start]));
+                else
+                    segment.write(pages.get(start).getPageID(), Arrays.copyOfRange(encoded, start, end));
+                start = end;
+            }
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).join();
+        } catch (IOException | CompletionException e) {
+            // nothing may reuse a frame while a write from it is still in flight
+            for (CompletableFuture<Void> write: writes)
+                write.exceptionally(failed -> null).join();
+            throw new StorageManagerException(StorageManager.CANNOT_SAVE_DATA);
+        } finally {
+            pageFilesChanged(table);
         }
     }
 
-    public static void incrementPage(int table, PageTypes pageType, int page) {
-        File file = new File(dbmsPath + table + File.separator + pageType.relLoc + File.separator + page);
-        file.renameTo(new File(dbmsPath + table + File.separator + pageType.relLoc + File.separator + (page + 1)));
+    /**
+     * Encode a page into a buffer ready to write, compressing it if its table compresses pages
+     * @param frame the frame to encode the page in, null to encode it on the heap
+     * @param compressed the buffer to compress the page into
+     */
+    private static ByteBuffer encode(Page<?> page, ByteBuffer frame, ByteBuffer compressed) {
+        ByteBuffer buffer = frame != null ? frame : ByteBuffer.allocate(pageSize);
+        buffer.clear();
+        PageFormat.write(page, buffer);
+        buffer.flip();
+        PageCompression compression = page.getTable().getCompression();
+        if (compression != PageCompression.NONE && PageFormat.compress(buffer, compression, compressed))
+            return compressed;
+        return buffer;
     }
 
-    public static boolean deletePage(Page page) {
+    public static boolean deletePage(Page<?> page) {
         return deletePage(page.getTableID(), page.getPageID(), page.getPageType());
     }
 
     public static boolean deletePage(int tableID, int pageID, PageTypes pageType) {
-        return new File(dbmsPath + tableID + File.separator + pageType.relLoc + File.separator +  pageID).delete();
+        try {
+            SegmentFile segment = segment(tableID, pageType, false);
+            return segment != null && segment.clear(pageID);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            pageFilesChanged(tableID);
+        }
     }
 
     /**
-     * Function gets all the files given a specified tableId
-     * @param id: THe table id
-     * @return a list of strings containing all the pages associated with a table
-     */
-    public static TreeSet<Integer> getPages(int id){
-        File file = new File(dbmsPath + String.valueOf(id) + File.separator + PageTypes.RECORD_PAGE.relLoc);
-        File[] pageList = file.listFiles();
-
-        TreeSet<Integer> pageNames = new TreeSet<>();
-        if(pageList != null){
-            for(File pageFile: pageList){
-                // TODO: we can get rid of this check if we just add a prefix or sufix
-                // TODO: or some sort of identifier to a page.
-                    try{
-                    pageNames.add(Integer.parseInt( pageFile.getName() ));
-                }
-                catch (Exception e){
-                    // todo: handle exception extra file which is not a integer based file name inside
-                    // todo: the folder.
-                }
+     * Delete every page of a type of a table
+     */
+    public static void deletePages(int tableID, PageTypes pageType) {
+        try {
+            SegmentFile segment = segment(tableID, pageType, false);
+            if (segment != null)
+                segment.truncate();
+            // the manifest describes the record pages, it goes with them
+            if (pageType == PageTypes.RECORD_PAGE)
+                Files.deleteIfExists(Paths.get(dbmsPath + tableID, manifestName));
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            pageFilesChanged(tableID);
+        }
+    }
 
-            }
+    private static void pageFilesChanged(int tableID) {
+        pageVersions.merge(tableID, 1L, Long::sum);
+    }
+
+    /**
+     * A page read while the version stays the same is still what is on disk
+     * @return the version of a table's pages, it changes whenever a page is written, moved or deleted
+     */
+    public static long getPageVersion(int tableID) {
+        return pageVersions.getOrDefault(tableID, 0L);
+    }
+
+    /**
+     * Function gets all the pages given a specified tableId
+     * @param id: THe table id
+     * @return the amount of records in each record page of a table, by page id
+     */
+    public static TreeMap<Integer, Integer> getPages(int id){
+        try {
+            SegmentFile segment = segment(id, PageTypes.RECORD_PAGE, false);
+            if (segment != null)
+                return segment.pages();
+        } catch (IOException e) {
+            // an unreadable segment holds no pages
         }
-        return pageNames;
+        return new TreeMap<>();
     }
 }
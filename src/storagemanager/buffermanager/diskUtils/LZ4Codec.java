@@ -0,0 +1,180 @@
+package storagemanager.buffermanager.diskUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A pure Java compressor for the LZ4 block format.
+ *
+ * A block is a run of sequences. A sequence is a token, whose high nibble is the amount of literals and low nibble
+ * the match length less four, the literals, then the match as a two byte little endian offset back into the output.
+ * A nibble of 15 is continued by bytes that are added to it until one is not 255. The last sequence is only
+ * literals, and the last five bytes of a block are always literals.
+ *
+ * Matches are found through a hash table of the last position each four byte sequence was seen at, with no chains,
+ * so compressing is a single pass. Runs of bytes without a match are stepped over faster the longer they get.
+ */
+public final class LZ4Codec {
+
+    private static final int MIN_MATCH = 4;
+    private static final int HASH_LOG = 12;
+    private static final int LAST_LITERALS = 5;
+    // a match can not start in the last bytes of a block
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int MAX_OFFSET = 0xFFFF;
+    private static final int RUN_MASK = 0xF;
+    // misses before the search starts skipping bytes
+    private static final int SKIP_TRIGGER = 6;
+
+    // the hash tables are reused by each thread so compressing a page allocates nothing
+    private static final ThreadLocal<int[]> hashTables = ThreadLocal.withInitial(() -> new int[1 << HASH_LOG]);
+
+    private LZ4Codec() {}
+
+    /**
+     * Compress the bytes of a buffer into another buffer
+     * @param src the buffer to compress from its position to its limit, neither is changed
+     * @param dst the buffer to compress into from its position to its limit, neither is changed
+     * @return the length of the compressed block, -1 if it does not fit in the room given
+     */
+    public static int compress(ByteBuffer src, ByteBuffer dst) {
+        int[] hashTable = hashTables.get();
+        Arrays.fill(hashTable, -1);
+
+        int srcEnd = src.limit();
+        int dstStart = dst.position();
+        int dstEnd = dst.limit();
+        int anchor = src.position();
+        int in = anchor;
+        int out = dstStart;
+        int matchLimit = srcEnd - LAST_LITERALS;
+        int findLimit = srcEnd - MATCH_FIND_LIMIT;
+
+        while (in < findLimit) {
+            int sequence = src.getInt(in);
+            int hash = hash(sequence);
+            int ref = hashTable[hash];
+            hashTable[hash] = in;
+            if (ref < 0 || in - ref > MAX_OFFSET || src.getInt(ref) != sequence) {
+                in += 1 + ((in - anchor) >>> SKIP_TRIGGER);
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (in + matchLength < matchLimit && src.get(ref + matchLength) == src.get(in + matchLength))
+                matchLength++;
+
+            out = writeSequence(src, anchor, in - anchor, in - ref, matchLength, dst, out, dstEnd);
+            if (out < 0) return -1;
+            in += matchLength;
+            anchor = in;
+        }
+        out = writeSequence(src, anchor, srcEnd - anchor, 0, 0, dst, out, dstEnd);
+        return out < 0 ? -1 : out - dstStart;
+    }
+
+    /**
+     * Decompress a block into a buffer
+     * @param src the block, from the buffer's position to its limit, neither is changed
+     * @param dst the buffer to decompress into from its position to its limit, neither is changed
+     * @return the amount of bytes decompressed
+     * @throws IllegalStateException the block is damaged or does not fit in the room given
+     */
+    public static int decompress(ByteBuffer src, ByteBuffer dst) {
+        int in = src.position();
+        int srcEnd = src.limit();
+        int dstStart = dst.position();
+        int dstEnd = dst.limit();
+        int out = dstStart;
+
+        while (in < srcEnd) {
+            int token = src.get(in++) & 0xFF;
+            int literals = token >>> 4;
+            if (literals == RUN_MASK) {
+                int next;
+                do {
+                    if (in >= srcEnd) throw damaged();
+                    next = src.get(in++) & 0xFF;
+                    literals += next;
+                } while (next == 0xFF);
+            }
+            if (in + literals > srcEnd || out + literals > dstEnd) throw damaged();
+            dst.put(out, src, in, literals);
+            in += literals;
+            out += literals;
+            // the last sequence has no match
+            if (in == srcEnd) break;
+
+            if (in + 2 > srcEnd) throw damaged();
+            int offset = (src.get(in) & 0xFF) | (src.get(in + 1) & 0xFF) << 8;
+            in += 2;
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int next;
+                do {
+                    if (in >= srcEnd) throw damaged();
+                    next = src.get(in++) & 0xFF;
+                    matchLength += next;
+                } while (next == 0xFF);
+            }
+            matchLength += MIN_MATCH;
+            int ref = out - offset;
+            if (offset == 0 || ref < dstStart || out + matchLength > dstEnd) throw damaged();
+            // the match may overlap the bytes it is copying to, copy a byte at a time
+            for (int i = 0; i < matchLength; i++)
+                dst.put(out + i, dst.get(ref + i));
+            out += matchLength;
+        }
+        return out - dstStart;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static IllegalStateException damaged() {
+        return new IllegalStateException("Damaged LZ4 block");
+    }
+
+    /**
+     * Write a sequence, a match length of 0 writes the literals of the last sequence
+     * @return the position after the sequence, -1 if it does not fit
+     */
+    private static int writeSequence(ByteBuffer src, int literalStart, int literals, int offset, int matchLength,
+                                     ByteBuffer dst, int out, int dstEnd) {
+        int extraMatch = matchLength == 0 ? 0 : matchLength - MIN_MATCH;
+        int needed = 1 + literals + lengthBytes(literals) + (matchLength == 0 ? 0 : 2 + lengthBytes(extraMatch));
+        if (out + needed > dstEnd) return -1;
+
+        int tokenAt = out++;
+        int token = Math.min(literals, RUN_MASK) << 4;
+        out = writeLength(dst, out, literals);
+        dst.put(out, src, literalStart, literals);
+        out += literals;
+        if (matchLength != 0) {
+            token |= Math.min(extraMatch, RUN_MASK);
+            dst.put(out++, (byte) offset);
+            dst.put(out++, (byte) (offset >>> 8));
+            out = writeLength(dst, out, extraMatch);
+        }
+        dst.put(tokenAt, (byte) token);
+        return out;
+    }
+
+    /**
+     * @return the amount of bytes that continue a length past its nibble
+     */
+    private static int lengthBytes(int length) {
+        return length < RUN_MASK ? 0 : (length - RUN_MASK) / 0xFF + 1;
+    }
+
+    private static int writeLength(ByteBuffer dst, int out, int length) {
+        if (length < RUN_MASK) return out;
+        length -= RUN_MASK;
+        while (length >= 0xFF) {
+            dst.put(out++, (byte) 0xFF);
+            length -= 0xFF;
+        }
+        dst.put(out++, (byte) length);
+        return out;
+    }
+}
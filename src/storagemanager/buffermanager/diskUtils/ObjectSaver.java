@@ -38,4 +38,4 @@ public abstract class ObjectSaver {
         }
         return obj;
     }
-}
\ No newline at end of file
+}
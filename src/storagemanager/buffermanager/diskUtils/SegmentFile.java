@@ -0,0 +1,348 @@
+package storagemanager.buffermanager.diskUtils;
+
+import storagemanager.buffermanager.page.PageFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * All the pages of one type of a table in a single file, page n lives at n * pageSize.
+ *
+ * Pages are read and written with positional I/O on a channel that stays open, so a page access is a single read
+ * or write. The file grows a zeroed extent at a time rather than a page at a time. A slot whose first byte is zero
+ * does not hold a page, every page format version is non zero.
+ *
+ * Pages can also be read and written asynchronously, through an asynchronous channel opened the first time it is
+ * needed. Many such reads can be in flight at once.
+ *
+ * Pages can also be read through read only memory mappings of the file, a region at a time. A region is mapped
+ * again once the file has grown past the end of its mapping. Writes go through the channel, the mappings see them
+ * through the operating system's file cache.
+ */
+public class SegmentFile {
+
+    // pages added to the file each time it grows
+    static final int EXTENT_PAGES = 16;
+    // the most bytes mapped by one mapping, a region always holds whole pages
+    private static final int MAX_REGION_BYTES = 1 << 26;
+
+    private final Path path;
+    private final FileChannel channel;
+    // opened by the first asynchronous read or write
+    private AsynchronousFileChannel asyncChannel;
+    private final int pageSize;
+    // amount of page slots in the file, written or not
+    private long slots;
+
+    private final int regionBytes;
+    private MappedByteBuffer[] regions = new MappedByteBuffer[0];
+    // reads through the mappings hold the read lock, the write lock is held to map or drop them
+    private final ReentrantReadWriteLock mappingLock = new ReentrantReadWriteLock();
+
+    // pads a page shorter than its slot in a gathering write, only duplicates of it are read
+    private final ByteBuffer zeroes;
+    // a gathering write moves the channel's position, held while one is in progress
+    private final Object gatherLock = new Object();
+
+    SegmentFile(Path path, int pageSize) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.pageSize = pageSize;
+        this.slots = channel.size() / pageSize;
+        this.regionBytes = Math.max(1, MAX_REGION_BYTES / pageSize) * pageSize;
+        this.zeroes = ByteBuffer.allocate(pageSize);
+    }
+
+    private long offset(int pageId) {
+        return (long) pageId * pageSize;
+    }
+
+    /**
+     * Read a page into a buffer, the buffer is flipped and ready to read
+     * @return false if there is no page in the slot
+     */
+    public boolean read(int pageId, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        buffer.limit(pageSize);
+        if (pageId < 0 || pageId >= slotCount()) return false;
+        long position = offset(pageId);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) break;
+        }
+        buffer.flip();
+        return buffer.limit() > 0 && buffer.get(0) != 0;
+    }
+
+    /**
+     * Start reading a page into a buffer, the buffer is flipped and ready to read once the read completes
+     * @return completes with false if there is no page in the slot
+     */
+    public CompletableFuture<Boolean> readAsync(int pageId, ByteBuffer buffer) throws IOException {
+        CompletableFuture<Boolean> read = new CompletableFuture<>();
+        buffer.clear();
+        buffer.limit(pageSize);
+        if (pageId < 0 || pageId >= slotCount()) {
+            read.complete(false);
+            return read;
+        }
+        AsynchronousFileChannel async = asyncChannel();
+        long position = offset(pageId);
+        async.read(buffer, position, buffer, new CompletionHandler<Integer, ByteBuffer>() {
+            @Override
+            public void completed(Integer bytes, ByteBuffer page) {
+                // a read can come back short, read the rest of the page
+                if (bytes >= 0 && page.hasRemaining()) {
+                    async.read(page, position + page.position(), page, this);
+                    return;
+                }
+                page.flip();
+                read.complete(page.limit() > 0 && page.get(0) != 0);
+            }
+
+            @Override
+            public void failed(Throwable exc, ByteBuffer page) {
+                read.completeExceptionally(exc);
+            }
+        });
+        return read;
+    }
+
+    /**
+     * Start writing a page from a buffer's position to its limit, growing the file if the slot is past its end.
+     * The buffer must not be changed until the write completes
+     */
+    public CompletableFuture<Void> writeAsync(int pageId, ByteBuffer buffer) throws IOException {
+        ensureSlots(pageId + 1);
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        AsynchronousFileChannel async = asyncChannel();
+        long position = offset(pageId);
+        int start = buffer.position();
+        async.write(buffer, position, buffer, new CompletionHandler<Integer, ByteBuffer>() {
+            @Override
+            public void completed(Integer bytes, ByteBuffer page) {
+                if (page.hasRemaining()) {
+                    async.write(page, position + page.position() - start, page, this);
+                    return;
+                }
+                written.complete(null);
+            }
+
+            @Override
+            public void failed(Throwable exc, ByteBuffer page) {
+                written.completeExceptionally(exc);
+            }
+        });
+        return written;
+    }
+
+    private synchronized AsynchronousFileChannel asyncChannel() throws IOException {
+        if (asyncChannel == null)
+            asyncChannel = AsynchronousFileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return asyncChannel;
+    }
+
+    /**
+     * Decode a page straight out of the file's memory mapping, the page is not copied
+     * @param decode turns the page, from the buffer's position to its limit, into what is returned. The buffer is
+     *               only valid while decode runs
+     * @return what decode returned, null if there is no page in the slot
+     */
+    public <T> T readMapped(int pageId, Function<ByteBuffer, T> decode) throws IOException {
+        if (pageId < 0 || pageId >= slotCount()) return null;
+        long offset = offset(pageId);
+        int region = (int) (offset / regionBytes);
+        int start = (int) (offset % regionBytes);
+        mappingLock.readLock().lock();
+        try {
+            MappedByteBuffer mapping = region < regions.length ? regions[region] : null;
+            if (mapping == null || mapping.capacity() < start + pageSize) {
+                // a lock can not be upgraded, map the region under the write lock and read under the read lock again
+                mappingLock.readLock().unlock();
+                try {
+                    map(region);
+                } finally {
+                    mappingLock.readLock().lock();
+                }
+                mapping = region < regions.length ? regions[region] : null;
+                if (mapping == null || mapping.capacity() < start + pageSize) return null;
+            }
+            if (mapping.get(start) == 0) return null;
+            ByteBuffer page = mapping.duplicate();
+            page.limit(start + pageSize).position(start);
+            return decode.apply(page.slice());
+        } finally {
+            mappingLock.readLock().unlock();
+        }
+    }
+
+    private void map(int region) throws IOException {
+        mappingLock.writeLock().lock();
+        try {
+            long start = (long) region * regionBytes;
+            long size = Math.min(regionBytes, slotCount() * pageSize - start);
+            if (size <= 0) return;
+            if (region >= regions.length)
+                regions = Arrays.copyOf(regions, region + 1);
+            if (regions[region] == null || regions[region].capacity() < size)
+                regions[region] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        } finally {
+            mappingLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drop the mappings, they are mapped again by the next mapped read
+     */
+    private void unmap() {
+        mappingLock.writeLock().lock();
+        try {
+            regions = new MappedByteBuffer[0];
+        } finally {
+            mappingLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write a page from a buffer's position to its limit, growing the file if the slot is past its end
+     */
+    public void write(int pageId, ByteBuffer buffer) throws IOException {
+        ensureSlots(pageId + 1);
+        long position = offset(pageId);
+        int start = buffer.position();
+        while (buffer.hasRemaining())
+            channel.write(buffer, position + buffer.position() - start);
+    }
+
+    /**
+     * Write pages to neighbouring slots with one gathering write, growing the file if they are past its end
+     * @param firstPageId the slot of the first page, the rest of the pages go in the slots after it
+     * @param pages each page from its position to its limit. A page shorter than its slot is followed by zeroes
+     *              up to the next slot
+     */
+    public void write(int firstPageId, ByteBuffer[] pages) throws IOException {
+        if (pages.length == 1) {
+            write(firstPageId, pages[0]);
+            return;
+        }
+        ensureSlots(firstPageId + pages.length);
+        ArrayList<ByteBuffer> gather = new ArrayList<>(pages.length * 2);
+        long length = 0;
+        for (int i = 0; i < pages.length; i++) {
+            gather.add(pages[i]);
+            length += pages[i].remaining();
+            int padding = pageSize - pages[i].remaining();
+            if (padding > 0 && i < pages.length - 1) {
+                gather.add(zeroes.duplicate().limit(padding));
+                length += padding;
+            }
+        }
+        ByteBuffer[] buffers = gather.toArray(new ByteBuffer[0]);
+        synchronized (gatherLock) {
+            channel.position(offset(firstPageId));
+            while (length > 0)
+                length -= channel.write(buffers);
+        }
+    }
+
+    /**
+     * Mark a slot as not holding a page
+     * @return false if the slot is past the end of the file
+     */
+    public boolean clear(int pageId) throws IOException {
+        if (pageId < 0 || pageId >= slotCount()) return false;
+        channel.write(ByteBuffer.allocate(1), offset(pageId));
+        return true;
+    }
+
+    /**
+     * Drop every page, the file is emptied
+     */
+    public void truncate() throws IOException {
+        // reading a mapping past the end of the file crashes, no read may be using one while the file shrinks
+        mappingLock.writeLock().lock();
+        try {
+            unmap();
+            synchronized (this) {
+                channel.truncate(0);
+                slots = 0;
+            }
+        } finally {
+            mappingLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Read the header of every slot holding a page
+     * @return the amount of records in each page, by page id
+     */
+    public TreeMap<Integer, Integer> pages() throws IOException {
+        TreeMap<Integer, Integer> pages = new TreeMap<>();
+        ByteBuffer header = ByteBuffer.allocate(PageFormat.HEADER_SIZE);
+        long count = slotCount();
+        for (int pageId = 0; pageId < count; pageId++) {
+            header.clear();
+            while (header.hasRemaining() && channel.read(header, offset(pageId) + header.position()) > 0);
+            if (header.position() == PageFormat.HEADER_SIZE && header.get(0) != 0) {
+                header.flip();
+                pages.put(pageId, PageFormat.entries(header));
+            }
+        }
+        return pages;
+    }
+
+    private synchronized long slotCount() {
+        return slots;
+    }
+
+    /**
+     * Grow the file by whole zeroed extents until it has at least the given amount of slots
+     */
+    private synchronized void ensureSlots(long needed) throws IOException {
+        if (needed <= slots) return;
+        long target = (needed + EXTENT_PAGES - 1) / EXTENT_PAGES * EXTENT_PAGES;
+        ByteBuffer zeroes = ByteBuffer.allocate(pageSize);
+        for (long slot = slots; slot < target; slot++) {
+            zeroes.clear();
+            while (zeroes.hasRemaining())
+                channel.write(zeroes, slot * pageSize + zeroes.position());
+        }
+        slots = target;
+    }
+
+    /**
+     * Force every page written to the file onto the disk
+     */
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * @return false once the file is closed, or its channel was closed by a thread interrupted while using it
+     */
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    public void close() throws IOException {
+        unmap();
+        synchronized (this) {
+            if (asyncChannel != null) asyncChannel.close();
+            asyncChannel = null;
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,84 @@
+package storagemanager.buffermanager.diskUtils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The first thing read when a database is opened, it says how the database on disk is laid out and whether it was
+ * shut down cleanly.
+ *
+ * <pre>
+ * | magic (4) | format version (4) | page size (4) | clean (1) | catalog location (utf) |
+ * </pre>
+ *
+ * A database that was shut down cleanly is opened without reading anything else, tables and their pages are read
+ * when they are first used. The clean flag is cleared before the first change after the database is opened, so a
+ * database that stopped without shutting down is checked against its files as its tables are used.
+ */
+public final class Superblock {
+
+    private static final int MAGIC = 0x53424C4B;
+    // the layout of the files of a database this version reads, 2 added the lsn to the page and manifest headers
+    public static final int FORMAT_VERSION = 2;
+
+    private final int formatVersion;
+    private final int pageSize;
+    private final boolean clean;
+    // the catalog's file, relative to the database's directory
+    private final String catalogLocation;
+
+    public Superblock(int pageSize, boolean clean, String catalogLocation) {
+        this(FORMAT_VERSION, pageSize, clean, catalogLocation);
+    }
+
+    private Superblock(int formatVersion, int pageSize, boolean clean, String catalogLocation) {
+        this.formatVersion = formatVersion;
+        this.pageSize = pageSize;
+        this.clean = clean;
+        this.catalogLocation = catalogLocation;
+    }
+
+    public int getFormatVersion() {
+        return formatVersion;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public boolean isClean() {
+        return clean;
+    }
+
+    public String getCatalogLocation() {
+        return catalogLocation;
+    }
+
+    /**
+     * @return the same superblock with the clean flag set or cleared
+     */
+    public Superblock withClean(boolean clean) {
+        return new Superblock(formatVersion, pageSize, clean, catalogLocation);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(formatVersion);
+        out.writeInt(pageSize);
+        out.writeBoolean(clean);
+        out.writeUTF(catalogLocation);
+    }
+
+    /**
+     * @throws IOException the file is not a superblock
+     */
+    static Superblock read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a superblock");
+        int formatVersion = in.readInt();
+        int pageSize = in.readInt();
+        boolean clean = in.readBoolean();
+        return new Superblock(formatVersion, pageSize, clean, in.readUTF());
+    }
+}
@@ -2,7 +2,8 @@ package storagemanager.buffermanager.page;
 
 import storagemanager.buffermanager.BufferManager;
 import storagemanager.buffermanager.diskUtils.DataManager;
-import storagemanager.buffermanager.pageManager.AgeTracker;
+import storagemanager.buffermanager.pageManager.AccessType;
+import storagemanager.buffermanager.pageManager.Frame;
 import storagemanager.buffermanager.pageManager.PageBuffer;
 import storagemanager.buffermanager.Table;
 import storagemanager.StorageManagerException;
@@ -12,20 +13,35 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.Objects;
-import java.util.TreeSet;
 
-public abstract class Page<E> implements Serializable, Comparable<Page> {
+public abstract class Page<E> implements Serializable, Comparable<Page<?>> {
 
     transient int pageID;
     transient Table table;
     transient BufferManager bufferManager;
     transient PageBuffer pageBuffer;
-    private transient AgeTracker<Page> pageAgeTracker;
+    private transient Frame<Page<?>> pageFrame;
 
     private final PageTypes pageType;
 
     int entries = 0;
 
+    /**
+     * Set when the page in memory differs from the page on disk, only dirty pages need to be written out
+     */
+    private transient boolean dirty = false;
+
+    /**
+     * The lsn of the last logged change made to the page, the log is flushed up to it before the page is written
+     */
+    private transient long lsn = 0;
+
+    /**
+     * The lsn of the oldest logged change made to the page since it was last written, a restart redoes changes to
+     * the page from there
+     */
+    private transient long recLsn = 0;
+
     /**
      * The minimum amount of records a page is allowed to have before it is deleted and its records rebalanced
      * This property only comes into effect if this is not the first or last page in the table
@@ -39,68 +55,69 @@ public abstract class Page<E> implements Serializable, Comparable<Page> {
         this.minRecords = minRecords;
     }
 
-    public static Page loadPageFromDisk(Table table, PageTypes pageType, int pageID,
-                                        BufferManager bufferManager, PageBuffer pageBuffer) throws IOException {
-        Page loadedPage = DataManager.getPage(table.getId(), pageType, pageID);
+    public static Page<?> loadPageFromDisk(Table table, PageTypes pageType, int pageID,
+                                        BufferManager bufferManager, PageBuffer pageBuffer, AccessType access)
+            throws IOException, StorageManagerException {
+        Page<?> loadedPage = pageBuffer.readPage(table, pageType, pageID);
+        return attachPage(loadedPage, table, pageID, bufferManager, pageBuffer, access);
+    }
+
+    /**
+     * Put a page that was read from disk in the page buffer
+     * @param loadedPage the page as read from its file
+     */
+    public static Page<?> attachPage(Page<?> loadedPage, Table table, int pageID,
+                                  BufferManager bufferManager, PageBuffer pageBuffer, AccessType access)
+            throws StorageManagerException {
         loadedPage.pageID = pageID;
         loadedPage.setBufferManager(bufferManager);
         loadedPage.setTable(table);
         loadedPage.setPageBuffer(pageBuffer);
-        loadedPage.setPageAgeTracker(pageBuffer.addPageToPool(loadedPage));
+        loadedPage.setPageFrame(pageBuffer.addPageToPool(loadedPage, access));
 
         return loadedPage;
     }
 
-    public static Page createPage(Table table, PageTypes pageType,
-                                  BufferManager bufferManager, PageBuffer pageBuffer) {
-        Page newPage;
-        if (pageType.pageClass == RecordPage.class) {
-            newPage = createRecordPage(table, table.getNewHighestPage());
-        } else {
-            newPage = createIndexPage(table, table.getNewHighestPage());
-        }
+    public static Page<?> createPage(Table table, PageTypes pageType,
+                                  BufferManager bufferManager, PageBuffer pageBuffer) throws StorageManagerException {
+        return createPageAfter(table, table.getLastPage(), pageType, bufferManager, pageBuffer);
+    }
 
-        newPage.setPageBuffer(pageBuffer);
-        newPage.setBufferManager(bufferManager);
-        newPage.bufferManager.updateTable(table);
-        newPage.setPageAgeTracker(pageBuffer.addPageToPool(newPage));
+    /**
+     * Create a page that comes right after another page in the table, it takes a free id so no page is moved
+     * @param previousPageId the page the new page comes after
+     */
+    public static Page<?> createPageAfter(Table table, int previousPageId, PageTypes pageType,
+                                       BufferManager bufferManager, PageBuffer pageBuffer)
+            throws StorageManagerException {
+        int pageID = table.addPageAfter(previousPageId);
+        bufferManager.logPageAdded(table, previousPageId, pageID);
+        return addPage(table, pageID, pageType, bufferManager, pageBuffer);
+    }
 
-        return newPage;
+    /**
+     * Put an empty page in the buffer for a page of the table's order that has nothing on disk, it was added and
+     * not written before the database stopped. A restart redoes the changes made to it
+     */
+    public static Page<?> emptyPage(Table table, int pageID, BufferManager bufferManager, PageBuffer pageBuffer)
+            throws StorageManagerException {
+        return attachPage(createRecordPage(table, pageID), table, pageID, bufferManager, pageBuffer, AccessType.NORMAL);
     }
 
-    public static Page createPage(Table table, int pageIDOverride, PageTypes pageType,
-                                  BufferManager bufferManager, PageBuffer pageBuffer) {
-        Page newPage;
+    private static Page<?> addPage(Table table, int pageID, PageTypes pageType,
+                                BufferManager bufferManager, PageBuffer pageBuffer) throws StorageManagerException {
+        Page<?> newPage;
         if (pageType.pageClass == RecordPage.class) {
-            newPage = createRecordPage(table, pageIDOverride);
+            newPage = createRecordPage(table, pageID);
         } else {
-            newPage = createIndexPage(table, pageIDOverride);
-        }
-
-        for (Integer pageIDS: table.getPages().descendingSet()) {
-            if (pageIDS + 1 == pageIDOverride) break;
-            DataManager.incrementPage(table.getId(), pageType, pageIDS);
-            Page loadedPage = pageBuffer.isPageLoaded(table.getId(), PageTypes.RECORD_PAGE, pageIDS);
-            if (loadedPage != null) {
-                loadedPage.pageID ++;
-            }
+            newPage = createIndexPage(table, pageID);
         }
 
-        TreeSet<Integer> pageIDs = new TreeSet<>();
-        table.getPages().forEach(integer -> {
-            if (integer + 1 <= pageIDOverride)
-                pageIDs.add(integer);
-            else
-                pageIDs.add(integer + 1);
-        });
-        pageIDs.add(pageIDOverride);
-
-        table.setPages(pageIDs);
-
         newPage.setPageBuffer(pageBuffer);
         newPage.setBufferManager(bufferManager);
         newPage.bufferManager.updateTable(table);
-        newPage.setPageAgeTracker(pageBuffer.addPageToPool(newPage));
+        newPage.markDirty();
+        newPage.setPageFrame(pageBuffer.addPageToPool(newPage, AccessType.NORMAL));
 
         return newPage;
     }
@@ -122,19 +139,33 @@ public abstract class Page<E> implements Serializable, Comparable<Page> {
     private void setPageBuffer(PageBuffer pageBuffer) {
         this.pageBuffer = pageBuffer;
     }
-    private void setPageAgeTracker(AgeTracker<Page> pageAgeTracker) {
-        this.pageAgeTracker = pageAgeTracker;
+    private void setPageFrame(Frame<Page<?>> pageFrame) {
+        this.pageFrame = pageFrame;
     }
 
     /**
-     * Increases the pages 'age' value,
-     * a pages age determines if it should be removed from the page pool
-     * in accordance to LRU-DB principle the page with the lowest age is the least used
-     * and should be removed when the pool is full
+     * Records a reference to the page with the page pool's replacement policy,
+     * the policy decides which page is removed when the pool is full
      */
-    public void increaseAge() {
-        Objects.requireNonNull(pageAgeTracker,"An age tracker is needed to increase object age");
-        pageAgeTracker.ageIncrement();
+    public void touch() {
+        touch(AccessType.NORMAL);
+    }
+
+    public void touch(AccessType access) {
+        Objects.requireNonNull(pageFrame,"A frame is needed to reference a page");
+        pageFrame.touch(access);
+    }
+
+    /**
+     * Keep the page in the buffer while an operation is using it, must be matched by an {@link #unpin()}
+     */
+    public void pin() {
+        Objects.requireNonNull(pageFrame,"A frame is needed to pin a page");
+        pageFrame.pin();
+    }
+
+    public void unpin() {
+        pageFrame.unpin();
     }
 
     public Table getTable() {
@@ -151,6 +182,42 @@ public abstract class Page<E> implements Serializable, Comparable<Page> {
 
     public boolean isEmpty() {return this.entries == 0;}
 
+    /**
+     * Flag the page as modified since it was last read or written
+     */
+    void markDirty() {
+        if (bufferManager != null) {
+            lsn = bufferManager.getLastLsn();
+            if (!dirty)
+                recLsn = lsn;
+        }
+        this.dirty = true;
+    }
+
+    /**
+     * Flag the page as matching the copy on disk
+     */
+    void markClean() {
+        this.dirty = false;
+        this.recLsn = 0;
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    public long getLsn() {
+        return lsn;
+    }
+
+    void setLsn(long lsn) {
+        this.lsn = lsn;
+    }
+
+    public long getRecLsn() {
+        return recLsn;
+    }
+
     public PageTypes getPageType() {
         return pageType;
     }
@@ -168,19 +235,39 @@ public abstract class Page<E> implements Serializable, Comparable<Page> {
      */
     public abstract void save() throws StorageManagerException;
 
-    public void delete() {
-        if (this instanceof RecordPage)
-            table.removePage((RecordPage) this);
+    /**
+     * Called once the page has been written out along with other pages, the page matches the copy on disk
+     */
+    public void written() {
+        markClean();
+    }
+
+    /**
+     * Take the page out of its table's order, a restart takes it out too
+     */
+    public void leaveTable() throws StorageManagerException {
+        if (!(this instanceof RecordPage) || !table.hasPage(pageID))
+            return;
+        table.removePage((RecordPage) this);
+        bufferManager.logPageRemoved(table, pageID);
+    }
+
+    public void delete() throws StorageManagerException {
+        leaveTable();
+        // the slot is cleared once the log says the page is gone
+        bufferManager.flushLog(bufferManager.getLastLsn());
         DataManager.deletePage(this);
-        pageBuffer.removeFromPool(this, pageAgeTracker);
+        if (this instanceof RecordPage)
+            table.releasePage(pageID);
+        pageBuffer.removeFromPool(this, pageFrame);
     }
 
     public void forget() {
-        pageBuffer.removeTracker(pageAgeTracker);
+        pageBuffer.removeFrame(pageFrame);
     }
 
     @Override
-    public int compareTo(Page page) {
+    public int compareTo(Page<?> page) {
         return pageID - page.pageID;
     }
 
@@ -0,0 +1,20 @@
+package storagemanager.buffermanager.page;
+
+/**
+ * How the pages of a table are compressed on disk, chosen when the table is created.
+ * Pages in the buffer are never compressed.
+ */
+public enum PageCompression {
+    // pages are stored as they are laid out in memory
+    NONE,
+    // pages are compressed with a fast LZ4 style compressor when it makes them smaller
+    LZ4;
+
+    /**
+     * @param name the name of a compression, in any case
+     * @throws IllegalArgumentException there is no compression by that name
+     */
+    public static PageCompression resolve(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+}
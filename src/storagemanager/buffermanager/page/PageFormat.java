@@ -0,0 +1,276 @@
+package storagemanager.buffermanager.page;
+
+import storagemanager.buffermanager.Table;
+import storagemanager.buffermanager.datatypes.Datatype;
+import storagemanager.buffermanager.diskUtils.LZ4Codec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The binary layout of a page on disk, every page is exactly one page size long.
+ *
+ * <pre>
+ * header     | version (1) | page type (1) | flags (2) | entries (4) | lsn (8) |
+ * slots      | one unsigned short per entry, in key order, the index of the entry's record |
+ * free space |
+ * records    | fixed size records stacked from the end of the page, record 0 is last |
+ * </pre>
+ *
+ * The lsn is that of the last logged change the page holds, a restart redoes a change to the page only if it is newer.
+ *
+ * A record is a null bitmap, one bit per attribute, followed by the attributes encoded by their datatypes at the
+ * table's byte offsets. A null attribute is left as zeroes. A record page keeps its records in memory encoded the
+ * same way, so a page is read and written by copying its records.
+ *
+ * A page of a table with compression is stored compressed when that makes it smaller. The header stays as it is,
+ * with the compressed flag set, so the page can still be told apart from an empty slot and its entries counted
+ * without decompressing it.
+ *
+ * <pre>
+ * header     | version (1) | page type (1) | flags (2) | entries (4) | lsn (8) |
+ * length     | the compressed length (4) |
+ * compressed | the rest of the page, compressed |
+ * </pre>
+ */
+public final class PageFormat {
+
+    public static final byte VERSION = 2;
+    public static final int HEADER_SIZE = 16;
+    public static final int SLOT_SIZE = Short.BYTES;
+    // slots hold unsigned shorts
+    private static final int MAX_RECORDS = 0xFFFF;
+
+    private static final int VERSION_OFFSET = 0;
+    private static final int TYPE_OFFSET = 1;
+    private static final int FLAGS_OFFSET = 2;
+    private static final int ENTRIES_OFFSET = 4;
+    private static final int LSN_OFFSET = 8;
+    private static final int LENGTH_OFFSET = HEADER_SIZE;
+    private static final int COMPRESSED_START = LENGTH_OFFSET + Integer.BYTES;
+
+    private static final short COMPRESSED = 1;
+
+    private PageFormat() {}
+
+    /**
+     * @return true if the buffer holds a page in this format, rather than a page written before the format existed
+     */
+    public static boolean isPageFormat(ByteBuffer page) {
+        return page.limit() >= HEADER_SIZE && page.get(VERSION_OFFSET) == VERSION;
+    }
+
+    /**
+     * @return the amount of records in the page whose header starts at the buffer's position
+     */
+    public static int entries(ByteBuffer header) {
+        return header.getInt(header.position() + ENTRIES_OFFSET);
+    }
+
+    /**
+     * @return true if the page whose header starts at the buffer's position is stored compressed
+     */
+    public static boolean isCompressed(ByteBuffer header) {
+        return (header.getShort(header.position() + FLAGS_OFFSET) & COMPRESSED) != 0;
+    }
+
+    /**
+     * Compress an encoded page
+     * @param page the page, from its position to its limit, neither is changed
+     * @param compression how to compress the page
+     * @param out the buffer to compress the page into, with at least one page size remaining
+     * @return true if the page was compressed into out, ready to write. False if compressing would not make it
+     *         smaller, out is left as it was
+     */
+    public static boolean compress(ByteBuffer page, PageCompression compression, ByteBuffer out) {
+        if (compression != PageCompression.LZ4 || page.remaining() <= COMPRESSED_START) return false;
+        int start = page.position();
+        int outStart = out.position();
+        ByteBuffer body = page.duplicate().position(start + HEADER_SIZE);
+        // only worth it if the page comes out shorter than it went in
+        ByteBuffer room = out.duplicate().position(outStart + COMPRESSED_START)
+                .limit(outStart + page.remaining() - 1);
+        int length = LZ4Codec.compress(body, room);
+        if (length < 0) return false;
+
+        out.put(outStart, page, start, HEADER_SIZE);
+        out.putShort(outStart + FLAGS_OFFSET, (short) (page.getShort(start + FLAGS_OFFSET) | COMPRESSED));
+        out.putInt(outStart + LENGTH_OFFSET, length);
+        out.limit(outStart + COMPRESSED_START + length);
+        return true;
+    }
+
+    /**
+     * Decompress a stored page
+     * @param stored the compressed page, from its position to its limit, neither is changed
+     * @param page the buffer to decompress the page into, it is cleared and left flipped holding one page
+     * @param pageSize the size of a page
+     * @throws IllegalStateException the page is damaged
+     */
+    public static void decompress(ByteBuffer stored, ByteBuffer page, int pageSize) {
+        int start = stored.position();
+        int length = stored.getInt(start + LENGTH_OFFSET);
+        if (length < 0 || COMPRESSED_START + length > stored.remaining())
+            throw new IllegalStateException("Compressed page is longer than its slot");
+        page.clear();
+        page.limit(pageSize);
+        page.put(0, stored, start, HEADER_SIZE);
+        page.putShort(FLAGS_OFFSET, (short) (stored.getShort(start + FLAGS_OFFSET) & ~COMPRESSED));
+        ByteBuffer compressed = stored.duplicate().position(start + COMPRESSED_START)
+                .limit(start + COMPRESSED_START + length);
+        if (LZ4Codec.decompress(compressed, page.duplicate().position(HEADER_SIZE)) != pageSize - HEADER_SIZE)
+            throw new IllegalStateException("Compressed page does not fill a page");
+    }
+
+    /**
+     * @return the most records of the given size that fit in a page
+     */
+    public static int maxRecords(int pageSize, int recordSize, int attributes) {
+        int perRecord = SLOT_SIZE + bitmapSize(attributes) + recordSize;
+        return Math.min(MAX_RECORDS, Math.max(0, pageSize - HEADER_SIZE) / perRecord);
+    }
+
+    /**
+     * @return the bytes the null bitmap at the start of a record takes
+     */
+    public static int bitmapSize(int attributes) {
+        return (attributes + 7) / 8;
+    }
+
+    /**
+     * Encode a page into a buffer, the buffer's position is left at its limit
+     * @param page the page to encode
+     * @param buffer a buffer with exactly one page size remaining
+     */
+    public static void write(Page<?> page, ByteBuffer buffer) {
+        int start = buffer.position();
+        int pageSize = buffer.remaining();
+        buffer.put(start + VERSION_OFFSET, VERSION);
+        buffer.put(start + TYPE_OFFSET, (byte) page.getPageType().ordinal());
+        buffer.putShort(start + FLAGS_OFFSET, (short) 0);
+        buffer.putInt(start + ENTRIES_OFFSET, page.getEntriesCount());
+        buffer.putLong(start + LSN_OFFSET, page.getLsn());
+
+        int entries = 0;
+        int recordLength = 0;
+        if (page instanceof RecordPage && page.getEntriesCount() > 0) {
+            // the page already holds its records encoded, they are copied as they are
+            byte[] records = ((RecordPage) page).data();
+            entries = page.getEntriesCount();
+            recordLength = recordLength(page.getTable());
+            if (HEADER_SIZE + entries * (SLOT_SIZE + recordLength) > pageSize)
+                throw new IllegalStateException("Page " + page.getPageID() + " does not fit in " + pageSize + " bytes");
+
+            for (int i = 0; i < entries; i++) {
+                buffer.putShort(start + HEADER_SIZE + i * SLOT_SIZE, (short) i);
+                buffer.put(start + pageSize - (i + 1) * recordLength, records, i * recordLength, recordLength);
+            }
+        }
+        // zero the free space between the slots and the records
+        int freeEnd = start + pageSize - entries * recordLength;
+        for (int i = start + HEADER_SIZE + entries * SLOT_SIZE; i < freeEnd; i++)
+            buffer.put(i, (byte) 0);
+        buffer.position(start + pageSize);
+    }
+
+    /**
+     * @return the bytes a record of the table takes, its null bitmap followed by its attributes
+     */
+    public static int recordLength(Table table) {
+        return bitmapSize(table.getDatatypes().size()) + table.getRecordSize();
+    }
+
+    /**
+     * @return the record encoded the way it is kept in a page
+     */
+    public static byte[] encode(Object[] record, Table table) {
+        byte[] bytes = new byte[recordLength(table)];
+        writeRecord(record, table, bytes, 0);
+        return bytes;
+    }
+
+    /**
+     * Encode a record the way it is kept in a page
+     * @param recordStart where in the bytes the record goes, it takes {@link #recordLength} bytes
+     */
+    public static void writeRecord(Object[] record, Table table, byte[] bytes, int recordStart) {
+        int attributes = table.getDatatypes().size();
+        int bitmap = bitmapSize(attributes);
+        Arrays.fill(bytes, recordStart, recordStart + bitmap + table.getRecordSize(), (byte) 0);
+        for (int i = 0; i < attributes; i++) {
+            if (record[i] == null) {
+                bytes[recordStart + i / 8] |= (byte) (1 << (i % 8));
+                continue;
+            }
+            Datatype<?> datatype = table.getDatatypes().get(i);
+            byte[] value = datatype.encode(record[i]);
+            System.arraycopy(value, 0, bytes, recordStart + bitmap + datatype.getIndex(), value.length);
+        }
+    }
+
+    /**
+     * Encode only the key attributes of a record, enough to compare it to records with
+     * {@link Table#compareEncodedKeys}. The rest of the record is left as zeroes
+     * @param recordOrKey a record or the values of its key attributes, in key order
+     * @return the encoded key, null if a key value is not one a record of the table can hold
+     */
+    public static byte[] encodeKey(Object[] recordOrKey, Table table) {
+        int attributes = table.getDatatypes().size();
+        Integer[] keyIndices = table.getKeyIndices();
+        boolean isKey = recordOrKey.length < attributes;
+        int bitmap = bitmapSize(attributes);
+        byte[] bytes = new byte[bitmap + table.getRecordSize()];
+        for (int i = 0; i < keyIndices.length; i++) {
+            Datatype<?> datatype = table.getDatatypes().get(keyIndices[i]);
+            Object value = isKey ? recordOrKey[i] : recordOrKey[keyIndices[i]];
+            if (value == null || !datatype.matches(value))
+                return null;
+            byte[] encoded = datatype.encode(value);
+            System.arraycopy(encoded, 0, bytes, bitmap + datatype.getIndex(), encoded.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * Decode a page from a buffer holding one page
+     * @param buffer the page, from its position to its limit
+     * @param table the table the page belongs to
+     * @param pageID the id of the page
+     */
+    public static Page<?> read(ByteBuffer buffer, Table table, int pageID) {
+        int start = buffer.position();
+        int pageSize = buffer.remaining();
+        PageTypes pageType = PageTypes.values()[buffer.get(start + TYPE_OFFSET)];
+        if (pageType == PageTypes.INDEX_PAGE)
+            return new IndexPage(table, pageID);
+
+        RecordPage page = new RecordPage(table, pageID);
+        page.setLsn(buffer.getLong(start + LSN_OFFSET));
+        int entries = buffer.getInt(start + ENTRIES_OFFSET);
+        int recordLength = recordLength(table);
+        // records are copied as they are, they are only decoded when they are asked for
+        byte[] records = page.data();
+        for (int i = 0; i < entries; i++) {
+            int index = buffer.getShort(start + HEADER_SIZE + i * SLOT_SIZE) & 0xFFFF;
+            buffer.get(start + pageSize - (index + 1) * recordLength, records, i * recordLength, recordLength);
+        }
+        page.entries = entries;
+        buffer.position(start + pageSize);
+        return page;
+    }
+
+    /**
+     * Decode a record written by {@link #writeRecord}
+     * @param recordStart where in the bytes the record starts
+     */
+    public static Object[] readRecord(byte[] bytes, int recordStart, Table table) {
+        Object[] values = new Object[table.getDatatypes().size()];
+        int attributes = recordStart + bitmapSize(values.length);
+        for (int a = 0; a < values.length; a++) {
+            if ((bytes[recordStart + a / 8] & (1 << (a % 8))) != 0) continue;
+            Datatype<?> datatype = table.getDatatypes().get(a);
+            values[a] = datatype.toObject(bytes, attributes + datatype.getIndex());
+        }
+        return values;
+    }
+}
@@ -4,7 +4,7 @@ import storagemanager.StorageManager;
 import storagemanager.buffermanager.datatypes.Datatype;
 import storagemanager.buffermanager.Table;
 import storagemanager.StorageManagerException;
-import storagemanager.buffermanager.diskUtils.DataManager;
+import storagemanager.buffermanager.wal.LogRecordType;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -18,84 +18,67 @@ public class RecordPage extends Page<Object[]> {
      * it represents upon construction.
      */
 
-    private static final long serialVersionUID = 2L;
+    private static final long serialVersionUID = 3L;
 
-    private Object[][] records;
+    // the records in key order, each encoded as PageFormat encodes it, record i starts at i * recordLength
+    private final byte[] data;
+    private final int recordLength;
 
     RecordPage(Table table, int pageID){
         super(table, pageID, PageTypes.RECORD_PAGE, 2);
-        this.records = new Object[table.getMaxRecords()][];
+        this.recordLength = PageFormat.recordLength(table);
+        this.data = new byte[table.getMaxRecords() * recordLength];
+    }
+
+    /**
+     * The encoded records of the page, for encoding and decoding the page
+     */
+    byte[] data() {
+        return data;
     }
 
     public void updateRecord(Object[] record) throws StorageManagerException {
 
-        int index = findRecord(record);
+        byte[] encoded = PageFormat.encode(record, table);
+        int index = findRecord(encoded);
 
         if(index < 0)
             throw new StorageManagerException(StorageManager.UPDATE_RECORD_NOT_FOUND);
 
         // otherwise we just update it
-        records[index] = record;
+        bufferManager.logChange(LogRecordType.UPDATE, this, recordBytes(index), encoded);
+        System.arraycopy(encoded, 0, data, index * recordLength, recordLength);
+        markDirty();
 
     }
 
     @Override
     public boolean insertRecord(Object[] record) throws StorageManagerException {
+        return insertRecord(record, false);
+    }
+
+    /**
+     * @param moved the record is being moved here from a page that is going away, it is not a new record
+     */
+    public boolean insertRecord(Object[] record, boolean moved) throws StorageManagerException {
         // we split if we are full.
         if(!hasSpace()){
             splitPage();
-            bufferManager.insertRecord(table.getId(), record);
+            if (moved) pageBuffer.moveRecord(table, record);
+            else pageBuffer.insertRecord(table, record);
             return true;
         }
 
+        byte[] encoded = PageFormat.encode(record, table);
+        int at = insertionPoint(encoded);
 
-        // iterative binary
-        int l = 0,r=entries, m=0;
-        while (l <= r) {
-            m = l + (r - l) / 2;
-
-            // retrieve record at m
-            // Check if record is present at mid
-            if(records[m] == null) {
-                break;
-            }
-
-            int res = compareRecord(record, m);
-
-            // in this case the record already exists in the page
-            if(res == 0)
-                throw new StorageManagerException(String.format(StorageManager.INSERT_RECORD_EXISTS_FORMAT, recordToString(record)));
-
-            // If record greater, ignore left half
-            if (res == 1)
-                l = m + 1;
-                // If record is smaller, ignore right half
-            else
-                r = m - 1;
-        }
-        // we need to compare our value to the value we are inserting on
-        //m = l;
-        // if we are greater than the record we are inserting over, and it is not null we are inbetewen two values
-        // and we are greater than the record we are inserting over, so we want to insert +1 more than where we are inserting
-        if(records[m] != null) {
-            int res = compareRecord(record, m);
-            if(res == 1)
-                m += 1;
-        }
+        // in this case the record already exists in the page
+        if (at < entries && compareRecord(encoded, at) == 0)
+            throw new StorageManagerException(String.format(StorageManager.INSERT_RECORD_EXISTS_FORMAT, recordToString(record)));
 
-        // if we reach here, then element was
-        // not present
-
-        // this gives us all the entries above m
-        int aboveIndex = entries-(m+1);
-        for(int i=aboveIndex; i>=0; i--){
-            int currentIndex = m+i;
-            int newIndex = m+i+1;
-            records[newIndex] = records[currentIndex];
-        }
-
-        records[m] = record;
-        entries++;
+        bufferManager.logChange(moved ? LogRecordType.MOVE : LogRecordType.INSERT, this, null, encoded);
+        putRecord(encoded, at);
+        markDirty();
         return true;
     }
 
@@ -107,17 +90,11 @@ public class RecordPage extends Page<Object[]> {
             throw new StorageManagerException(StorageManager.REMOVE_RECORD_NOT_FOUND);
 
         // otherwise we remove it
-        records[index] = null;
-        for (int i = index; i < entries; i++) {
-            if (i + 1 == table.getMaxRecords()) {
-                records[i] = null;
-                break;
-            }
-            records[i] = records[i+1];
-        }
-        entries--;
+        bufferManager.logChange(LogRecordType.DELETE, this, recordBytes(index), null);
+        takeRecord(index);
+        markDirty();
 
-        if (entries < minRecords && !(table.getPages().last() == pageID) && !(table.getPages().first() == pageID)) {
+        if (entries < minRecords && table.getLastPage() != pageID && table.getFirstPage() != pageID) {
             mergePage();
         }
 
@@ -126,10 +103,14 @@ public class RecordPage extends Page<Object[]> {
 
     @Override
     public void mergePage() throws StorageManagerException {
-        delete();
-        for (Object[] record: getRecords()) {
-            bufferManager.insertRecord(table.getId(), record);
+        Object[][] remaining = getRecords();
+        // the page leaves the order first so its records go to the pages around it, its slot is cleared once
+        // they are logged there
+        leaveTable();
+        for (Object[] record: remaining) {
+            pageBuffer.moveRecord(table, record);
         }
+        delete();
     }
 
     @Override
@@ -142,58 +123,119 @@ public class RecordPage extends Page<Object[]> {
      *
      */
     public Page<Object[]> splitPage() throws StorageManagerException {
-        RecordPage other = (RecordPage) Page.createPage(table, pageID + 1, PageTypes.RECORD_PAGE, bufferManager, pageBuffer);
+        RecordPage other = (RecordPage) Page.createPageAfter(table, pageID, PageTypes.RECORD_PAGE, bufferManager, pageBuffer);
+
+        // split at n/2, the upper half moves to the new page
+        int startOffset = entries - Math.floorDiv(entries, 2);
+        int moved = entries - startOffset;
+        byte[] image = Arrays.copyOfRange(data, startOffset * recordLength, entries * recordLength);
+        // each page is dirty from the record that first changes it, a restart redoes the move off this page
+        bufferManager.logMove(this, image, null);
+        this.markDirty();
+        bufferManager.logMove(other, null, image);
+
+        System.arraycopy(image, 0, other.data, 0, image.length);
+        other.entries = moved;
+        this.entries = startOffset;
+        other.markDirty();
+        this.markDirty();
+        return other;
+    }
 
-        // split at n/2
-        int splitPoint = Math.floorDiv(entries, 2);
-        int j=0;
+    @Override
+    public boolean hasSpace() {
+        return table.getMaxRecords() > entries;
+    }
 
-        int startOffset = splitPoint;
+    @Override
+    public void save() throws StorageManagerException {
+        bufferManager.flushLog(getLsn());
+        table.writingPages();
+        pageBuffer.writePage(this);
+        written();
+    }
 
-        // if we don't have a equal split we increment the start offset up one
-        if(entries-splitPoint != splitPoint){
-            startOffset+=1;
-        }
+    @Override
+    public void written() {
+        table.pageWritten(pageID, entries, entries == 0 ? null : recordAt(0),
+                entries == 0 ? null : recordAt(entries - 1));
+        markClean();
+    }
 
-        for(int i=startOffset; i<entries; i++){
-            other.setRecord(this.records[i].clone(), j);
-            this.records[i] = null;
-            j++;
+    /**
+     * Put a record in the page in key order, replacing the record with its key. Redoes a logged change the page
+     * does not hold yet, nothing is split or logged
+     * @return false if the record is new and the page has no room for it
+     */
+    public boolean applyRecord(Object[] record) {
+        byte[] encoded = PageFormat.encode(record, table);
+        int index = findRecord(encoded);
+        if (index >= 0) {
+            System.arraycopy(encoded, 0, data, index * recordLength, recordLength);
+        } else {
+            if (!hasSpace())
+                return false;
+            putRecord(encoded, insertionPoint(encoded));
         }
+        markDirty();
+        return true;
+    }
 
-        other.entries = splitPoint;
-        this.entries = j + ((table.getMaxRecords() % 2 == 0)?0:1);
+    /**
+     * Take the record with a key out of the page if it is there. Redoes a logged change, nothing is merged or logged
+     */
+    public void discardRecord(Object[] recordOrKey) {
+        int index = findRecord(recordOrKey);
+        if (index < 0)
+            return;
+        takeRecord(index);
+        markDirty();
+    }
 
-        // Creating a new page may have pushed this one out. This page needs to be resaved
-        if (pageBuffer.isPageLoaded(table.getId(), PageTypes.RECORD_PAGE, pageID) == null)
-            this.save();
-        return other;
+    // make room for a record at an index and put it there
+    private void putRecord(byte[] encoded, int at) {
+        System.arraycopy(data, at * recordLength, data, (at + 1) * recordLength, (entries - at) * recordLength);
+        System.arraycopy(encoded, 0, data, at * recordLength, recordLength);
+        entries++;
     }
 
-    @Override
-    public boolean hasSpace() {
-        return table.getMaxRecords() > entries;
+    // close the gap a record leaves
+    private void takeRecord(int index) {
+        System.arraycopy(data, (index + 1) * recordLength, data, index * recordLength,
+                (entries - index - 1) * recordLength);
+        entries--;
     }
 
-    @Override
-    public void save() throws StorageManagerException {
-        DataManager.savePage(this,table.getId());
+    // the index of the first record with a key that is not less than the probe's
+    private int insertionPoint(byte[] probe) {
+        int l = 0, r = entries;
+        while (l < r) {
+            int m = (l + r) >>> 1;
+            if (compareRecord(probe, m) > 0) l = m + 1;
+            else r = m;
+        }
+        return l;
     }
 
     /**
      * find's a record within a page
+     * @return the index of the record, -1 if the page does not hold it
      */
     public int findRecord(Object[] recordOrKey) {
-        Object[] record = table.getRecordFromKey(recordOrKey);
+        byte[] encoded = PageFormat.encodeKey(recordOrKey, table);
+        return encoded == null ? -1 : findRecord(encoded);
+    }
 
+    /**
+     * @param probe a record or a key encoded by {@link PageFormat}
+     */
+    private int findRecord(byte[] probe) {
         // iterative binary search
         int l = 0, r = entries - 1;
         while (l <= r) {
             int m = l + (r - l) / 2;
 
-            // retrieve record at m
-            // Check if record is present at mid
-            int res = compareRecord(record, m);
+            int res = compareRecord(probe, m);
             if(res == 0)
                 return m;
 
@@ -210,25 +252,48 @@ public class RecordPage extends Page<Object[]> {
         return -1;
     }
     /***
-     * getRecord uses the findRecord method to find the index then returns the object[]
+     * getRecord uses the findRecord method to find the index then decodes the record there
      */
     public Object[] getRecord(Object[] record)  {
         int index = findRecord(record);
         if (index < 0) return null;
-        return records[index];
+        return recordAt(index);
+    }
+
+    /**
+     * @return the record at an index of the page, decoded
+     */
+    public Object[] recordAt(int index) {
+        return PageFormat.readRecord(data, index * recordLength, table);
     }
 
     @Override
     public Object[][] getRecords() {
-        return Arrays.copyOf(this.records, entries);
+        Object[][] records = new Object[entries][];
+        copyRecords(records, 0);
+        return records;
+    }
+
+    /**
+     * Decode the page's records straight into an array
+     * @param at where in the array the first record goes
+     */
+    public void copyRecords(Object[][] records, int at) {
+        for (int i = 0; i < entries; i++)
+            records[at + i] = recordAt(i);
+    }
+
+    // the encoded record at an index, as the log keeps it
+    private byte[] recordBytes(int index) {
+        return Arrays.copyOfRange(data, index * recordLength, (index + 1) * recordLength);
     }
 
     /**
      * Get's the bounds of a page
+     * @param probe the key being looked for, encoded by {@link PageFormat#encodeKey}
      */
-    public int[] bounds(Object[] recordOrKey) {
-        Object[] record = table.getRecordFromKey(recordOrKey);
-        return new int[]{compareRecord(record, 0), compareRecord(record, entries-1)};
+    public int[] bounds(byte[] probe) {
+        return new int[]{compareRecord(probe, 0), compareRecord(probe, entries-1)};
     }
 
     /**
@@ -236,40 +301,10 @@ public class RecordPage extends Page<Object[]> {
      * 1 : the record is greater than the other record
      * -1: the record is less than the other record
      * 0: the record is equal to the other record
+     * The keys are compared where they are encoded, nothing is decoded
      */
-    private int compareRecord(Object[] recordOrKey, int index) {
-
-        Object[] record = table.getRecordFromKey(recordOrKey);
-
-        for(int i=0; i < table.getKeyIndices().length; i++){
-
-            int keyIndex = table.getKeyIndices()[i];
-
-            int ret = 0;
-
-            ret = table.compareDataTypes(keyIndex, record[keyIndex], records[index][keyIndex]);
-
-           if(ret != 0) {
-               // restricting this function to return -1 or 1
-               if(ret >= 1)
-                   return 1;
-               else
-                   return -1;
-           }
-        }
-
-        return 0;
-
-    }
-
-
-
-    /**
-     * Sets a pages records to a passed in value at given index
-     * @param records
-     */
-    public void setRecord(Object[] records, int index) {
-        this.records[index] = records;
+    private int compareRecord(byte[] probe, int index) {
+        return table.compareEncodedKeys(probe, 0, data, index * recordLength);
     }
 
     /**
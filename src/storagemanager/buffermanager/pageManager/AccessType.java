@@ -0,0 +1,27 @@
+package storagemanager.buffermanager.pageManager;
+
+/**
+ * How a page is being accessed, lets a replacement policy keep pages read by a scan from displacing hot pages
+ */
+public enum AccessType {
+    /**
+     * a lookup or modification of the page
+     */
+    NORMAL,
+    /**
+     * the page is being read as part of a sequential scan over a table
+     */
+    SCAN,
+    /**
+     * the page was read ahead of a scan reaching it
+     */
+    PREFETCH;
+
+    /**
+     * @return true if the access should not count as a reference, the page enters or stays at the cold end of
+     *         the pool
+     */
+    public boolean isCold() {
+        return this != NORMAL;
+    }
+}
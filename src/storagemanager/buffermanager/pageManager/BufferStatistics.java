@@ -0,0 +1,135 @@
+package storagemanager.buffermanager.pageManager;
+
+/**
+ * Counts what the page buffer has been doing
+ */
+public class BufferStatistics {
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long cleanEvictions = 0;
+    private long pageWrites = 0;
+    private long backgroundWrites = 0;
+    private long cleanPagesSkipped = 0;
+    private long prefetched = 0;
+    private long prefetchWaits = 0;
+    private long prefetchesDiscarded = 0;
+    private long warmedPages = 0;
+
+    void hit() { hits++; }
+    void miss() { misses++; }
+
+    /**
+     * A page was pushed out of the buffer
+     * @param written true if the page was dirty and had to be written to disk
+     */
+    void eviction(boolean written) {
+        evictions++;
+        if (!written) cleanEvictions++;
+    }
+
+    void pageWritten() { pageWrites++; }
+
+    /**
+     * A dirty page was written ahead of its eviction by the background writer
+     */
+    void backgroundWrite() { backgroundWrites++; }
+
+    /**
+     * A clean page was left alone when flushing the buffer
+     */
+    void cleanPageSkipped() { cleanPagesSkipped++; }
+
+    /**
+     * A page read ahead was put in the buffer before it was needed
+     */
+    void prefetched() { prefetched++; }
+
+    /**
+     * A page was needed while it was still being read ahead
+     */
+    void prefetchWait() { prefetchWaits++; }
+
+    /**
+     * A page read ahead was thrown away, its file changed or it was already in the buffer
+     */
+    void prefetchDiscarded() { prefetchesDiscarded++; }
+
+    /**
+     * A page that was hot at the last shut down was loaded back into the buffer
+     */
+    void warmed() { warmedPages++; }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the amount of evicted pages that were not written because they had not changed
+     */
+    public long getCleanEvictions() {
+        return cleanEvictions;
+    }
+
+    /**
+     * @return the amount of pages written by evictions and purges
+     */
+    public long getPageWrites() {
+        return pageWrites;
+    }
+
+    public long getBackgroundWrites() {
+        return backgroundWrites;
+    }
+
+    /**
+     * @return the amount of pages not written by purges because they had not changed
+     */
+    public long getCleanPagesSkipped() {
+        return cleanPagesSkipped;
+    }
+
+    /**
+     * @return the amount of pages read ahead and put in the buffer before they were needed
+     */
+    public long getPrefetched() {
+        return prefetched;
+    }
+
+    /**
+     * @return the amount of misses that waited on a read ahead in flight rather than reading the page
+     */
+    public long getPrefetchWaits() {
+        return prefetchWaits;
+    }
+
+    public long getPrefetchesDiscarded() {
+        return prefetchesDiscarded;
+    }
+
+    /**
+     * @return the amount of pages loaded by the warm up after a restart
+     */
+    public long getWarmedPages() {
+        return warmedPages;
+    }
+
+    @Override
+    public String toString() {
+        return "hits: " + hits + ", misses: " + misses + ", evictions: " + evictions +
+                " (clean: " + cleanEvictions + "), page writes: " + pageWrites +
+                ", background writes: " + backgroundWrites +
+                ", clean pages skipped on purge: " + cleanPagesSkipped +
+                ", pages read ahead: " + prefetched + " (waited on: " + prefetchWaits +
+                ", discarded: " + prefetchesDiscarded + "), pages warmed up: " + warmedPages;
+    }
+}
@@ -0,0 +1,175 @@
+package storagemanager.buffermanager.pageManager;
+
+import storagemanager.util.Subject;
+import storagemanager.util.Subscriber;
+
+import java.util.ArrayList;
+
+/**
+ * A pool of objects using the CLOCK (second chance) replacement policy.
+ *
+ * Every object sits in one of maxSize fixed slots with a reference bit. Touching an object only sets its bit,
+ * when a slot is needed the clock hand sweeps the slots clearing bits until it finds an object which has not been
+ * referenced since the last sweep. Both operations are O(1) amortized.
+ *
+ * Objects admitted by a scan or read ahead start without their reference bit and scans never set it, so they are
+ * the first to go. The hand passes over pinned objects without clearing their bit.
+ * @param <E> object to pool
+ */
+public class ClockReplacer<E> implements ReplacementPolicy<E> {
+
+    private static class ClockFrame<E> extends Frame<E> {
+        // the slot the object occupies in the pool, -1 once the object has left the pool
+        int slot;
+
+        ClockFrame(E object, ClockReplacer<E> pool, int slot) {
+            super(object, pool);
+            this.slot = slot;
+        }
+
+        @Override
+        public boolean isResident() {
+            return slot >= 0;
+        }
+    }
+
+    private final ClockFrame<E>[] frames;
+    private final boolean[] referenced;
+
+    // stack of slots that are not holding an object
+    private final int[] freeSlots;
+    private int freeCount;
+
+    private int hand = 0;
+    private final Subject<E> objectRemoval = new Subject<>();
+
+    /**
+     * Create a pool of objects, objects get pushed out based on usage
+     * @param maxSize the max amount of objects in the pool before objects are pushed
+     */
+    @SuppressWarnings("unchecked")
+    public ClockReplacer(int maxSize) {
+        this.frames = (ClockFrame<E>[]) new ClockFrame<?>[maxSize];
+        this.referenced = new boolean[maxSize];
+        this.freeSlots = new int[maxSize];
+        reset();
+    }
+
+    /**
+     * Create a frame for this pool, the object is automatically added to the pool
+     * @param o object to add
+     * @return the frame holding the object
+     */
+    public Frame<E> createFrameForPool(E o) {
+        return admit(o, AccessType.NORMAL);
+    }
+
+    @Override
+    public Frame<E> admit(E o, AccessType access) {
+        if (freeCount > 0) {
+            return place(o, freeSlots[--freeCount], access);
+        }
+
+        int victimSlot = sweep();
+        ClockFrame<E> victim = frames[victimSlot];
+        victim.slot = -1;
+        Frame<E> frame = place(o, victimSlot, access);
+        objectRemoval.push(victim.getObject());
+        return frame;
+    }
+
+    private Frame<E> place(E o, int slot, AccessType access) {
+        ClockFrame<E> frame = new ClockFrame<>(o, this, slot);
+        frames[slot] = frame;
+        referenced[slot] = !access.isCold();
+        return frame;
+    }
+
+    /**
+     * Advance the clock hand until it rests on an unpinned slot that has not been referenced since the last pass
+     * @return the slot of the victim
+     */
+    private int sweep() {
+        // two passes clear every bit, after that only pins can keep the hand going
+        for (int step = 0; step <= 2 * frames.length; step++) {
+            int slot = hand;
+            hand = (hand + 1) % frames.length;
+            if (frames[slot].isPinned()) continue;
+            if (!referenced[slot]) return slot;
+            referenced[slot] = false;
+        }
+        throw new IllegalStateException("Every object in the pool is pinned");
+    }
+
+    @Override
+    public void touch(Frame<E> frame, AccessType access) {
+        int slot = ((ClockFrame<E>) frame).slot;
+        if (slot >= 0 && !access.isCold())
+            referenced[slot] = true;
+    }
+
+    @Override
+    public boolean remove(Frame<E> frame) {
+        if (frame == null) return false;
+        ClockFrame<E> clockFrame = (ClockFrame<E>) frame;
+        if (clockFrame.slot < 0 || frames[clockFrame.slot] != clockFrame) return false;
+        frames[clockFrame.slot] = null;
+        referenced[clockFrame.slot] = false;
+        freeSlots[freeCount++] = clockFrame.slot;
+        clockFrame.slot = -1;
+        return true;
+    }
+
+    @Override
+    public ArrayList<E> getObjects() {
+        ArrayList<E> objects = new ArrayList<>(size());
+        for (Frame<E> frame: frames)
+            if (frame != null) objects.add(frame.getObject());
+        return objects;
+    }
+
+    /**
+     * Only the next count objects the hand reaches are looked at, so asking for a few candidates costs a few slots
+     * however large the pool is
+     */
+    @Override
+    public ArrayList<E> evictionCandidates(int count) {
+        // at most freeCount of the slots are empty, so this many slots hold the next count objects
+        int window = (int) Math.min(frames.length, (long) count + freeCount);
+        // the slots the hand will stop at unless they are referenced before it gets there,
+        // followed by the referenced slots it will stop at on its next pass
+        ArrayList<E> candidates = new ArrayList<>(Math.min(count, frames.length));
+        for (int pass = 0; pass < 2; pass++) {
+            boolean secondChance = pass == 1;
+            for (int i = 0; i < window && candidates.size() < count; i++) {
+                int slot = (hand + i) % frames.length;
+                if (frames[slot] != null && !frames[slot].isPinned() && referenced[slot] == secondChance)
+                    candidates.add(frames[slot].getObject());
+            }
+        }
+        return candidates;
+    }
+
+    @Override
+    public int size() {
+        return frames.length - freeCount;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < frames.length; i++) {
+            if (frames[i] != null) frames[i].slot = -1;
+            frames[i] = null;
+            referenced[i] = false;
+            // hand out low slots first
+            freeSlots[i] = frames.length - 1 - i;
+        }
+        freeCount = frames.length;
+        hand = 0;
+    }
+
+    @Override
+    public void subscribe(Subscriber<E> removalSubscriber) {
+        objectRemoval.addSubscriber(removalSubscriber);
+    }
+}
@@ -0,0 +1,52 @@
+package storagemanager.buffermanager.pageManager;
+
+/**
+ * A handle to an object held by a {@link ReplacementPolicy}. Each policy keeps its bookkeeping in its own frames.
+ * @param <E> object being held
+ */
+public abstract class Frame<E> {
+
+    private final E object;
+    private final ReplacementPolicy<E> pool;
+    // how many operations are using the object, a pinned object is never picked as a victim
+    private int pinCount = 0;
+
+    Frame(E object, ReplacementPolicy<E> pool) {
+        this.object = object;
+        this.pool = pool;
+    }
+
+    /**
+     * Mark the object as recently used
+     */
+    public void touch() {
+        touch(AccessType.NORMAL);
+    }
+
+    public void touch(AccessType access) {
+        pool.touch(this, access);
+    }
+
+    /**
+     * Keep the object in the pool until it is unpinned, every pin must be matched by an unpin
+     */
+    public void pin() {
+        pinCount++;
+    }
+
+    public void unpin() {
+        if (pinCount == 0)
+            throw new IllegalStateException("Frame is not pinned");
+        pinCount--;
+    }
+
+    public boolean isPinned() {
+        return pinCount > 0;
+    }
+
+    public E getObject() {
+        return object;
+    }
+
+    public abstract boolean isResident();
+}
@@ -0,0 +1,91 @@
+package storagemanager.buffermanager.pageManager;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A fixed set of page sized frames carved out of memory allocated off the heap once, up front.
+ *
+ * A page is read from disk into a frame and decoded out of it, and encoded into one to be written, so the file
+ * channel reads and writes off heap memory directly rather than through a temporary copy of its own. Pages keep
+ * their records on the heap, a frame is only held while its read or write is in flight, so a few frames serve a
+ * buffer of any size. The memory is allocated in chunks of at most a gigabyte so the arena can be larger than a
+ * single direct buffer.
+ */
+public class FrameArena {
+
+    private static final int MAX_CHUNK_BYTES = 1 << 30;
+
+    private final int frameSize;
+    private final int framesPerChunk;
+    private final ByteBuffer[] chunks;
+
+    // stack of frames that are not holding a page
+    private final int[] freeFrames;
+    private int freeCount;
+
+    /**
+     * @param frames the amount of frames
+     * @param frameSize the size of a frame in bytes, the page size
+     */
+    public FrameArena(int frames, int frameSize) {
+        this.frameSize = frameSize;
+        this.framesPerChunk = Math.max(1, MAX_CHUNK_BYTES / frameSize);
+        this.chunks = new ByteBuffer[(frames + framesPerChunk - 1) / framesPerChunk];
+        for (int i = 0; i < chunks.length; i++) {
+            int chunkFrames = Math.min(framesPerChunk, frames - i * framesPerChunk);
+            chunks[i] = ByteBuffer.allocateDirect(chunkFrames * frameSize);
+        }
+        this.freeFrames = new int[frames];
+        reset();
+    }
+
+    /**
+     * Take a free frame
+     * @return the index of the frame
+     */
+    public int acquire() {
+        if (freeCount == 0)
+            throw new IllegalStateException("No free frames left in the arena");
+        return freeFrames[--freeCount];
+    }
+
+    /**
+     * Give a frame back, its contents are left as they are
+     */
+    public void release(int frame) {
+        if (frame < 0) return;
+        freeFrames[freeCount++] = frame;
+    }
+
+    /**
+     * @return a view of the frame with its position at 0 and its limit at the frame size
+     */
+    public ByteBuffer frame(int frame) {
+        ByteBuffer view = chunks[frame / framesPerChunk].duplicate();
+        int start = (frame % framesPerChunk) * frameSize;
+        view.limit(start + frameSize).position(start);
+        return view.slice();
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public int getFrameCount() {
+        return freeFrames.length;
+    }
+
+    public int getFreeFrames() {
+        return freeCount;
+    }
+
+    /**
+     * Free every frame
+     */
+    public void reset() {
+        for (int i = 0; i < freeFrames.length; i++)
+            // hand out low frames first
+            freeFrames[i] = freeFrames.length - 1 - i;
+        freeCount = freeFrames.length;
+    }
+}
@@ -0,0 +1,38 @@
+package storagemanager.buffermanager.pageManager;
+
+import storagemanager.buffermanager.page.PageTypes;
+
+/**
+ * An entry of the hot page manifest, a page that was in the buffer when the database shut down
+ */
+public class HotPage {
+
+    private final int tableId;
+    private final PageTypes pageType;
+    private final int pageId;
+    // higher is hotter, pages are loaded hottest first
+    private final int heat;
+
+    public HotPage(int tableId, PageTypes pageType, int pageId, int heat) {
+        this.tableId = tableId;
+        this.pageType = pageType;
+        this.pageId = pageId;
+        this.heat = heat;
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    public PageTypes getPageType() {
+        return pageType;
+    }
+
+    public int getPageId() {
+        return pageId;
+    }
+
+    public int getHeat() {
+        return heat;
+    }
+}
@@ -0,0 +1,154 @@
+package storagemanager.buffermanager.pageManager;
+
+import storagemanager.util.Subject;
+import storagemanager.util.Subscriber;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.TreeSet;
+
+/**
+ * A pool of objects using the LRU-K replacement policy.
+ *
+ * Each object remembers the times of its last K references. The victim is the object whose K-th most recent
+ * reference is the oldest, objects referenced fewer than K times go first in least recently used order.
+ * A single burst of references is not enough to make an object look hot, it has to be referenced K times.
+ *
+ * Scan accesses are not recorded as references. Objects admitted by a scan or read ahead have no history and are
+ * evicted first, in the order they were admitted.
+ * @param <E> object to pool
+ */
+public class LRUKReplacer<E> implements ReplacementPolicy<E> {
+
+    private static class LRUKFrame<E> extends Frame<E> {
+        // times of the last K references, most recent first. 0 means no reference
+        final long[] history;
+        final long admitted;
+        boolean resident = true;
+
+        LRUKFrame(E object, LRUKReplacer<E> pool, int k, long admitted) {
+            super(object, pool);
+            this.history = new long[k];
+            this.admitted = admitted;
+        }
+
+        void reference(long time) {
+            System.arraycopy(history, 0, history, 1, history.length - 1);
+            history[0] = time;
+        }
+
+        long kthReference() {
+            return history[history.length - 1];
+        }
+
+        long lastReference() {
+            return history[0];
+        }
+
+        @Override
+        public boolean isResident() {
+            return resident;
+        }
+    }
+
+    private static final Comparator<LRUKFrame<?>> EVICTION_ORDER = Comparator
+            .comparingLong((LRUKFrame<?> frame) -> frame.kthReference())
+            .thenComparingLong(LRUKFrame::lastReference)
+            .thenComparingLong(frame -> frame.admitted);
+
+    private final int maxSize;
+    private final int k;
+    // ordered with the next victim first
+    private TreeSet<LRUKFrame<E>> frames = new TreeSet<>(EVICTION_ORDER);
+    private long clock = 0;
+    private final Subject<E> objectRemoval = new Subject<>();
+
+    /**
+     * @param maxSize the max amount of objects in the pool before objects are pushed
+     * @param k the amount of references remembered for each object
+     */
+    public LRUKReplacer(int maxSize, int k) {
+        this.maxSize = maxSize;
+        this.k = k;
+    }
+
+    @Override
+    public Frame<E> admit(E o, AccessType access) {
+        E removed = null;
+        if (frames.size() >= maxSize) {
+            LRUKFrame<E> victim = victim();
+            frames.remove(victim);
+            victim.resident = false;
+            removed = victim.getObject();
+        }
+
+        LRUKFrame<E> frame = new LRUKFrame<>(o, this, k, ++clock);
+        if (!access.isCold())
+            frame.reference(clock);
+        frames.add(frame);
+
+        if (removed != null)
+            objectRemoval.push(removed);
+        return frame;
+    }
+
+    private LRUKFrame<E> victim() {
+        for (LRUKFrame<E> frame: frames)
+            if (!frame.isPinned()) return frame;
+        throw new IllegalStateException("Every object in the pool is pinned");
+    }
+
+    @Override
+    public void touch(Frame<E> frame, AccessType access) {
+        LRUKFrame<E> lrukFrame = (LRUKFrame<E>) frame;
+        if (access.isCold() || !lrukFrame.resident) return;
+        // the frame's position depends on its history, take it out while the history changes
+        frames.remove(lrukFrame);
+        lrukFrame.reference(++clock);
+        frames.add(lrukFrame);
+    }
+
+    @Override
+    public boolean remove(Frame<E> frame) {
+        if (frame == null) return false;
+        LRUKFrame<E> lrukFrame = (LRUKFrame<E>) frame;
+        if (!lrukFrame.resident) return false;
+        lrukFrame.resident = false;
+        return frames.remove(lrukFrame);
+    }
+
+    @Override
+    public ArrayList<E> getObjects() {
+        ArrayList<E> objects = new ArrayList<>(frames.size());
+        for (LRUKFrame<E> frame: frames)
+            objects.add(frame.getObject());
+        return objects;
+    }
+
+    @Override
+    public ArrayList<E> evictionCandidates(int count) {
+        ArrayList<E> candidates = new ArrayList<>(count);
+        for (LRUKFrame<E> frame: frames) {
+            if (candidates.size() >= count) break;
+            if (!frame.isPinned()) candidates.add(frame.getObject());
+        }
+        return candidates;
+    }
+
+    @Override
+    public int size() {
+        return frames.size();
+    }
+
+    @Override
+    public void reset() {
+        for (LRUKFrame<E> frame: frames)
+            frame.resident = false;
+        frames = new TreeSet<>(EVICTION_ORDER);
+    }
+
+    @Override
+    public void subscribe(Subscriber<E> removalSubscriber) {
+        objectRemoval.addSubscriber(removalSubscriber);
+    }
+}
@@ -2,49 +2,157 @@ package storagemanager.buffermanager.pageManager;
 
 import storagemanager.StorageManager;
 import storagemanager.buffermanager.BufferManager;
+import storagemanager.buffermanager.BufferOptions;
+import storagemanager.buffermanager.PageManifest;
 import storagemanager.buffermanager.Table;
+import storagemanager.buffermanager.diskUtils.DataManager;
 import storagemanager.buffermanager.page.Page;
+import storagemanager.buffermanager.page.PageFormat;
 import storagemanager.buffermanager.page.PageTypes;
 import storagemanager.buffermanager.page.RecordPage;
+import storagemanager.buffermanager.wal.Checkpoint;
 import storagemanager.StorageManagerException;
 import storagemanager.util.Subscriber;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.HashMap;
 import java.util.TreeSet;
 
 public class PageBuffer {
 
-    private final HashMap<Integer, EnumMap<PageTypes, TreeSet<Page>>> pages = new HashMap<>();
+    // the order pages are written out in, neighbouring pages of a table's file end up next to each other
+    private static final Comparator<Page<?>> WRITE_ORDER = Comparator.<Page<?>>comparingInt(Page::getTableID)
+            .thenComparing(Page::getPageType)
+            .thenComparingInt(Page::getPageID);
+
+    // resident pages of each table, used to empty or forget a table's pages
+    private final HashMap<Integer, EnumMap<PageTypes, TreeSet<Page<?>>>> pages = new HashMap<>();
+    // resolves a resident page from its ids
+    private final PageTable pageTable;
     private final BufferManager bufferManager;
+    private final BufferStatistics statistics = new BufferStatistics();
 
-    private final AgedObjectPool<Page> pagePool;
-    private final Subscriber<Page> removalSubscriber = new Subscriber<Page>() {
+    private final ReplacementPolicy<Page<?>> pagePool;
+    private final PageWriter pageWriter;
+    private final ReadAhead readAhead;
+    // page sized frames off the heap that page I/O goes through, each held only while its read or write is in
+    // flight, null to do page I/O on the heap
+    private final FrameArena arena;
+    private final int maxPages;
+    // the most misses read at once, the pages read are pinned until all of them are in so they are kept small
+    private final int maxOutstandingReads;
+    // loads the pages that were hot at the last shut down, null when not warming up
+    private WarmUp warmUp = null;
+    // empty pages are written rather than destroyed when they leave, while a restart redoes the log
+    private boolean keepEmptyPages = false;
+    private final Subscriber<Page<?>> removalSubscriber = new Subscriber<Page<?>>() {
         @Override
-        protected void onUpdate(Page next) {
-            pages.get(next.getTableID()).get(next.getPageType()).remove(next);
-            if (next.isEmpty()) destroyPage(next);
-            else writeOutPage(next);
+        protected void onUpdate(Page<?> next) {
+            removePage(next);
+            statistics.eviction(next.isDirty() && !next.isEmpty());
+            try {
+                if (leavesTable(next)) destroyPage(next);
+                else writeOutPage(next);
+            } catch (StorageManagerException e) {
+                // the next victim is written before it is evicted, this one was not it. The operation that pushed
+                // it out fails and is rolled back rather than going on without the page's changes
+                throw new IllegalStateException("Page " + next.getPageID() + " of table " + next.getTableID()
+                        + " could not be written out of the buffer", e);
+            }
         }
     };
 
-    public PageBuffer(BufferManager bufferManager, int maxPages) {
+    /**
+     * @param bufferManager the buffer manager using this buffer, it is also the lock guarding the buffer
+     * @param maxPages the max amount of pages in the buffer
+     * @param options the replacement policy, background writer, read ahead, async read, off heap frame and warm up settings
+     */
+    public PageBuffer(BufferManager bufferManager, int maxPages, BufferOptions options) {
         this.bufferManager = bufferManager;
-        pagePool = new AgedObjectPool<>(maxPages);
+        this.maxPages = maxPages;
+        this.maxOutstandingReads = Math.max(1, Math.min(options.getReadsInFlight(), maxPages / 4));
+        pagePool = options.getReplacementPolicy().create(maxPages,
+                page -> ((long) page.getTableID() << 32) | (page.getPageID() & 0xFFFFFFFFL));
+        pageTable = new PageTable(maxPages);
         pagePool.subscribe(removalSubscriber);
+        // one frame for each read a batch has in flight and as many for the pages written meanwhile, I/O that finds
+        // every frame in use goes through the heap
+        arena = options.isOffHeapFrames()
+                ? new FrameArena(2 * maxOutstandingReads, bufferManager.getPageSize()) : null;
+        pageWriter = new PageWriter(this, bufferManager, options.getWriterPagesPerRound(), options.getWriterRoundMillis());
+        // pages read ahead go in the buffer, keep them from taking over a small buffer
+        readAhead = new ReadAhead(this, bufferManager, statistics, Math.min(options.getReadAheadPages(), maxPages / 4));
     }
 
-    public AgeTracker<Page> addPageToPool(Page page) {
-        if (pages.containsKey(page.getTableID())) { // table already in page buffer
-            pages.get(page.getTableID()).get(page.getPageType()).add(page);
-            return pagePool.createTrackerForPool(page);
+    /**
+     * Put a page in the buffer. When the buffer is full the page next in line to be evicted is written first if it
+     * changed, a write that fails throws before anything is evicted and that page stays in the buffer, still dirty
+     */
+    public Frame<Page<?>> addPageToPool(Page<?> page, AccessType access) throws StorageManagerException {
+        pageWriter.ensureRunning();
+        if (pagePool.size() >= maxPages) {
+            for (Page<?> victim: pagePool.evictionCandidates(1)) {
+                if (victim.isDirty() && !leavesTable(victim)) {
+                    victim.save();
+                    statistics.pageWritten();
+                }
+            }
+        }
+        residentPages(page.getTableID(), page.getPageType()).add(page);
+        pageTable.put(page);
+        return pagePool.admit(page, access);
+    }
+
+    /**
+     * Read a page from disk, through a free off heap frame if the buffer has one
+     */
+    public Page<?> readPage(Table table, PageTypes pageType, int pageId) throws IOException {
+        int frame = acquireFrame();
+        try {
+            return DataManager.getPage(table, pageType, pageId, frameAt(frame));
+        } finally {
+            releaseFrame(frame);
+        }
+    }
+
+    /**
+     * Write a page to its slot in its table's file, through a free off heap frame if the buffer has one
+     */
+    public void writePage(Page<?> page) throws StorageManagerException {
+        int frame = acquireFrame();
+        try {
+            DataManager.savePage(page, page.getTableID(), frameAt(frame));
+        } finally {
+            releaseFrame(frame);
         }
-        // load a table into the buffer
-        this.pages.put(page.getTableID(), new EnumMap<>(PageTypes.class));
-        this.pages.get(page.getTableID()).put(page.getPageType(), new TreeSet<>(){{add(page);}});
-        return pagePool.createTrackerForPool(page);
+    }
+
+    /**
+     * @return a free off heap frame for a read or write, -1 to do it on the heap
+     */
+    private int acquireFrame() {
+        return arena == null || arena.getFreeFrames() == 0 ? -1 : arena.acquire();
+    }
+
+    private ByteBuffer frameAt(int frame) {
+        return frame < 0 ? null : arena.frame(frame);
+    }
+
+    private void releaseFrame(int frame) {
+        if (arena != null) arena.release(frame);
+    }
+
+    /**
+     * Get the set of resident pages of a type for a table, loading the table into the buffer if needed
+     */
+    private TreeSet<Page<?>> residentPages(int tableId, PageTypes pageType) {
+        return pages.computeIfAbsent(tableId, id -> new EnumMap<>(PageTypes.class))
+                .computeIfAbsent(pageType, type -> new TreeSet<>());
     }
 
     /**
@@ -52,141 +160,536 @@ public class PageBuffer {
      * @return
      */
     public RecordPage getRecordPage(int tableId, int pageId) throws  StorageManagerException{
-        Page page = isPageLoaded(tableId, PageTypes.RECORD_PAGE, pageId);
+        return getRecordPage(tableId, pageId, AccessType.NORMAL);
+    }
+
+    /**
+     * Retrieves a page, returns from  the tree-set if it's already in memory
+     * Reading a table's pages in order reads the pages after them ahead in the background.
+     * @param access how the page is being accessed, pages read by a scan should not displace hot pages
+     */
+    public RecordPage getRecordPage(int tableId, int pageId, AccessType access) throws  StorageManagerException{
+        // pages that finished reading ahead are put in first, so they can not push out the page returned
+        readAhead.installReady();
+        Table table = bufferManager.getTable(tableId);
+        Page<?> page = isPageLoaded(tableId, PageTypes.RECORD_PAGE, pageId);
         if (page != null) {
-            page.increaseAge();
+            statistics.hit();
+            page.touch(access);
+            readAhead.accessed(table, pageId, access);
             return (RecordPage) page;
         }
+        statistics.miss();
 
         try {
-            return (RecordPage) Page.loadPageFromDisk(bufferManager.getTable(tableId), PageTypes.RECORD_PAGE, pageId, bufferManager, this);
+            page = readAhead.claim(tableId, pageId);
+            if (page != null)
+                page = Page.attachPage(page, table, pageId, bufferManager, this, access);
+            else
+                page = Page.loadPageFromDisk(table, PageTypes.RECORD_PAGE, pageId, bufferManager, this, access);
+            readAhead.accessed(table, pageId, access);
+            return (RecordPage) page;
         } catch (FileNotFoundException e) {
-            return (RecordPage) Page.createPage(bufferManager.getTable(tableId), PageTypes.RECORD_PAGE, bufferManager, this);
+            return (RecordPage) missingPage(table, pageId);
         } catch (IOException e) {
-            e.printStackTrace();
-            System.exit(1);
+            throw new StorageManagerException(StorageManager.CANNOT_LOAD_DATA);
         }
-        return null;
     }
 
-    public Page isPageLoaded(int tableId, PageTypes pageType, int pageId) {
-        if(this.pages.containsKey(tableId)){
-            // check if loaded in
-            for(Page page: this.pages.get(tableId).get(pageType)){
-                if(pageId == page.getPageID()){
-                    return (RecordPage) page;
+    /**
+     * Retrieves several record pages of a table. The pages that are not in the buffer are read asynchronously,
+     * a batch of them in flight at once, instead of one read after another. With one read in flight they are
+     * read on the calling thread
+     * @param pageIds the pages to get
+     * @param access how the pages are being accessed, pages read by a scan should not displace hot pages
+     * @return the pages, in the order they were asked for
+     */
+    public List<RecordPage> getRecordPages(int tableId, List<Integer> pageIds, AccessType access)
+            throws StorageManagerException {
+        List<RecordPage> found = new ArrayList<>(pageIds.size());
+        if (maxOutstandingReads <= 1) {
+            for (int pageId: pageIds)
+                found.add(getRecordPage(tableId, pageId, access));
+            return found;
+        }
+        readAhead.installReady();
+        Table table = bufferManager.getTable(tableId);
+        for (int from = 0; from < pageIds.size(); from += maxOutstandingReads) {
+            List<Integer> batch = pageIds.subList(from, Math.min(pageIds.size(), from + maxOutstandingReads));
+            List<CompletableFuture<Page<?>>> reads = new ArrayList<>(batch.size());
+            // the off heap frame each read goes through, -1 if it is read on the heap
+            int[] frames = new int[batch.size()];
+            // every read is started before any is waited on
+            for (int i = 0; i < batch.size(); i++) {
+                int pageId = batch.get(i);
+                boolean missing = isPageLoaded(tableId, PageTypes.RECORD_PAGE, pageId) == null
+                        && !readAhead.isStaged(tableId, pageId);
+                frames[i] = missing ? acquireFrame() : -1;
+                reads.add(missing ? DataManager.getPageAsync(table, PageTypes.RECORD_PAGE, pageId,
+                        frameAt(frames[i])) : null);
+            }
+            // pages of the batch that are in stay in until the whole batch is
+            List<Page<?>> pinned = new ArrayList<>(batch.size());
+            int next = 0;
+            try {
+                for (; next < batch.size(); next++) {
+                    int pageId = batch.get(next);
+                    CompletableFuture<Page<?>> read = reads.get(next);
+                    Page<?> page;
+                    // a page read ahead may have come in since its read started, the read is then not used
+                    if (read != null && isPageLoaded(tableId, PageTypes.RECORD_PAGE, pageId) == null) {
+                        statistics.miss();
+                        page = awaitRead(table, pageId, read, frames[next], access);
+                    } else {
+                        discardRead(read, frames[next]);
+                        page = getRecordPage(tableId, pageId, access);
+                    }
+                    page.pin();
+                    pinned.add(page);
+                    found.add((RecordPage) page);
                 }
+            } finally {
+                // a read that failed leaves the reads after it in flight, their frames are free once they are done
+                for (int i = next + 1; i < batch.size(); i++)
+                    discardRead(reads.get(i), frames[i]);
+                for (Page<?> page: pinned)
+                    page.unpin();
             }
         }
-        return null;
+        if (!pageIds.isEmpty())
+            readAhead.accessed(table, pageIds.get(pageIds.size() - 1), access);
+        return found;
+    }
+
+    /**
+     * Wait for a page read to complete and put the page in the buffer
+     * @param frame the off heap frame the page was read through, it is free once the page is decoded out of it
+     */
+    private Page<?> awaitRead(Table table, int pageId, CompletableFuture<Page<?>> read, int frame, AccessType access)
+            throws StorageManagerException {
+        Page<?> page;
+        try {
+            page = read.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof FileNotFoundException)
+                return missingPage(table, pageId);
+            throw new StorageManagerException(StorageManager.CANNOT_LOAD_DATA);
+        } finally {
+            releaseFrame(frame);
+        }
+        return Page.attachPage(page, table, pageId, bufferManager, this, access);
+    }
+
+    /**
+     * Let go of a read whose page is not used, its frame is only given back once nothing is read into it
+     */
+    private void discardRead(CompletableFuture<Page<?>> read, int frame) {
+        if (read == null) return;
+        try {
+            read.join();
+        } catch (CompletionException e) {
+            // the page is not used
+        }
+        releaseFrame(frame);
+    }
+
+    /**
+     * A page of the table's order with nothing on disk was added and not written before the database stopped, it is
+     * empty until the changes made to it are redone. A page the table does not have is made as a new last page
+     */
+    private Page<?> missingPage(Table table, int pageId) throws StorageManagerException {
+        if (table.hasPage(pageId))
+            return Page.emptyPage(table, pageId, bufferManager, this);
+        return Page.createPage(table, PageTypes.RECORD_PAGE, bufferManager, this);
+    }
+
+    public Page<?> isPageLoaded(int tableId, PageTypes pageType, int pageId) {
+        return pageTable.get(tableId, pageType, pageId);
     }
 
     public void updateRecord(Table table, Object[] record) throws StorageManagerException{
 
-        if(!table.validRecord(record)) {
+        if(record.length != table.dataTypeCount() || !table.validRecord(record)) {
             throw new StorageManagerException(StorageManager.UPDATE_RECORD_INVALID_DATA);
         }
         RecordPage page = searchPages(table, record);
-        page.updateRecord(record);
+        if (page == null)
+            throw new StorageManagerException(StorageManager.UPDATE_RECORD_NOT_FOUND);
+        page.pin();
+        try {
+            page.updateRecord(record);
+        } finally {
+            page.unpin();
+        }
     }
 
     public void removeRecord(Table table, Object[] keyValue) throws StorageManagerException{
         RecordPage page = searchPages(table, keyValue);
-        page.deleteRecord(keyValue);
+        if (page == null)
+            throw new StorageManagerException(StorageManager.REMOVE_RECORD_NOT_FOUND);
+        page.pin();
+        try {
+            page.deleteRecord(keyValue);
+        } finally {
+            page.unpin();
+        }
     }
 
     public void insertRecord(Table table, Object[] record) throws  StorageManagerException {
+        insertRecord(table, record, false);
+    }
+
+    /**
+     * Insert a record taken off a page that is going away, it is logged as moved rather than inserted
+     */
+    public void moveRecord(Table table, Object[] record) throws StorageManagerException {
+        insertRecord(table, record, true);
+    }
+
+    private void insertRecord(Table table, Object[] record, boolean moved) throws StorageManagerException {
+        // the record is encoded as it goes in the page, it has to be one the table can hold
+        if (record.length != table.dataTypeCount() || !table.validRecord(record))
+            throw new StorageManagerException(StorageManager.INSERT_RECORD_INVALID_DATA);
 
         // in this case no pages have been created or loaded into memory.
         if (table.getHighestPage() == -1) {
             Page.createPage(table, PageTypes.RECORD_PAGE, bufferManager, this);
         }
 
+        // the page stays in the buffer while it splits and the record is inserted again
         RecordPage page = searchPages(table, record);
-        page.insertRecord(record);
+        // a key with a null value
+        if (page == null)
+            throw new StorageManagerException(StorageManager.INSERT_RECORD_INVALID_DATA);
+        page.pin();
+        try {
+            page.insertRecord(record, moved);
+        } finally {
+            page.unpin();
+        }
     }
 
-    // empties all the loaded pages out into respective tables
+    // empties all the loaded pages out into respective tables, only pages that changed are written
+    // the background writer has already written most of them, it is stopped until pages are loaded again
+    // pages in neighbouring slots of a table's file are written together
     public void purge() throws StorageManagerException {
-        for (Page page: pagePool.getObjects())
-            page.save();
+        pageWriter.stop();
+        readAhead.stop();
+        if (warmUp != null) warmUp.stop();
+        warmUp = null;
+        List<Page<?>> dirty = new ArrayList<>();
+        for (Page<?> page: pagePool.getObjects()) {
+            if (page.isDirty()) dirty.add(page);
+            else statistics.cleanPageSkipped();
+        }
+        writePages(dirty);
+        for (int i = 0; i < dirty.size(); i++)
+            statistics.pageWritten();
         pagePool.reset();
         pages.clear();
+        pageTable.clear();
+    }
+
+    /**
+     * Write out pages sorted by table, type and page id. Each run of record pages in neighbouring slots of a table's
+     * file is written with a single write
+     * @param dirty the pages to write, they are sorted in place
+     */
+    private void writePages(List<Page<?>> dirty) throws StorageManagerException {
+        dirty.sort(WRITE_ORDER);
+        int start = 0;
+        while (start < dirty.size()) {
+            Page<?> first = dirty.get(start);
+            int end = start + 1;
+            while (end < dirty.size() && dirty.get(end).getTableID() == first.getTableID()
+                    && dirty.get(end).getPageType() == first.getPageType())
+                end++;
+            List<Page<?>> run = dirty.subList(start, end);
+            if (first.getPageType() == PageTypes.RECORD_PAGE) {
+                long lsn = 0;
+                for (Page<?> page: run)
+                    lsn = Math.max(lsn, page.getLsn());
+                // the changes in the pages are logged before the pages are written
+                bufferManager.flushLog(lsn);
+                first.getTable().writingPages();
+                int[] held = new int[run.size()];
+                List<ByteBuffer> frames = new ArrayList<>(run.size());
+                for (int i = 0; i < held.length; i++) {
+                    held[i] = acquireFrame();
+                    frames.add(frameAt(held[i]));
+                }
+                try {
+                    DataManager.savePages(first.getTableID(), first.getPageType(), run, frames);
+                } finally {
+                    for (int frame: held)
+                        releaseFrame(frame);
+                }
+                for (Page<?> page: run)
+                    page.written();
+            } else {
+                for (Page<?> page: run)
+                    page.save();
+            }
+            start = end;
+        }
     }
 
+    /**
+     * @return the lsn of the oldest logged change of each dirty page that is not on disk, keyed as a checkpoint keys
+     *         its pages
+     */
+    public Map<Long, Long> dirtyPageTable() {
+        Map<Long, Long> dirtyPages = new HashMap<>();
+        for (Page<?> page: pagePool.getObjects()) {
+            if (page.isDirty() && page.getRecLsn() != 0)
+                dirtyPages.put(Checkpoint.pageKey(page.getTableID(), page.getPageID()), page.getRecLsn());
+        }
+        return dirtyPages;
+    }
+
+    /**
+     * Write the dirty pages whose oldest unwritten change is oldest, so a restart has less of the log to redo.
+     * Must be called holding the buffer's lock.
+     * @param beforeLsn only pages with a change older than this are written
+     * @param maxPages the most pages to write
+     * @return the amount of pages written
+     */
+    public int writeOldest(long beforeLsn, int maxPages) throws StorageManagerException {
+        List<Page<?>> dirty = new ArrayList<>();
+        for (Page<?> page: pagePool.getObjects()) {
+            if (page.isDirty() && page.getRecLsn() != 0 && page.getRecLsn() < beforeLsn)
+                dirty.add(page);
+        }
+        dirty.sort(Comparator.comparingLong(Page::getRecLsn));
+        if (dirty.size() > maxPages)
+            dirty = new ArrayList<>(dirty.subList(0, maxPages));
+        writePages(dirty);
+        for (int i = 0; i < dirty.size(); i++)
+            statistics.backgroundWrite();
+        return dirty.size();
+    }
+
+    /**
+     * Find the page a record with a key is in, or goes in. Pages are kept in key order, a key is looked for in the
+     * page whose records it falls between. One that falls between two pages goes in an empty page between them if
+     * there is one and in the later page otherwise, one past every record goes in the last page that holds any
+     * @param record a record or its key
+     * @return null if the table has no pages, or the key is not one a record of the table can have
+     */
     public RecordPage searchPages(Table table, Object[] record) throws StorageManagerException{
-        TreeSet<Integer> pageIds = table.getPages();
-        if(pageIds.isEmpty()){
+        List<Integer> pageIds = table.getPages();
+        // the key is encoded once and compared to the records of each page where they are
+        byte[] probe = PageFormat.encodeKey(record, table);
+        if(pageIds.isEmpty() || probe == null){
             // in this case there is no page to even find.
             return null;
         }
 
-        // this code no longer is usefull as our pages are not guaranteed in order
+        PageManifest manifest = table.getManifest();
+        // an empty page after the last page with records passed over, a key that falls before the next page's
+        // records can go in it
+        RecordPage empty = null;
+        int lastWithRecords = -1;
         for(int pageId: pageIds){
-            // grab our record page.
-            RecordPage page = getRecordPage(table.getId(), pageId);
-
-            if (page.getEntriesCount() == 0) {
-                return page;
-            } else {
-                // Check if x is present at mid
-                int[] bounds = page.bounds(record);
-                // if we are contained within the bounds of the page, or the first/last entries of the page are our
-                // entry, then this is most certainly our page
-
-                if ((bounds[0] == 1 && bounds[1] == -1) // bigger than first element and smaller than last element
-                        || (bounds[0] == 0 || bounds[1] == 0) // equal to the first or last element
-                        || (bounds[1] == 1 && pageIds.last() == pageId) // there is no page bigger than me, but im larger than the first element: this is my page
-                        || (bounds[0] == -1 && bounds[1] == -1)) // there is no page smaller than me, but im smaller than the first element: this is my page
-                    return page;
-
-                // otherwise we just continue to iterate...
+            RecordPage page = null;
+            // a page on disk is compared against its keys in the manifest without reading it
+            int[] bounds = isPageLoaded(table.getId(), PageTypes.RECORD_PAGE, pageId) == null
+                    ? manifestBounds(table, manifest, pageId, record) : null;
+            if (bounds == null) {
+                page = getRecordPage(table.getId(), pageId);
+                if (page.getEntriesCount() == 0) {
+                    if (empty == null) empty = page;
+                    continue;
+                }
+                bounds = page.bounds(probe);
             }
 
+            // past the page's last record, it is in a page further on
+            if (bounds[1] > 0) {
+                lastWithRecords = pageId;
+                empty = null;
+                continue;
+            }
+            // before the page's first record, it falls between this page and the one with records before it
+            if (bounds[0] < 0 && empty != null)
+                return empty;
+            return page != null ? page : getRecordPage(table.getId(), pageId);
         }
-        return null;
+        if (empty != null || lastWithRecords < 0)
+            return empty;
+        return getRecordPage(table.getId(), lastWithRecords);
+    }
+
+    /**
+     * Compare a key to the first and last keys of a page that is not in the buffer, as the table's manifest has
+     * them, the same way {@link RecordPage#bounds} compares it to the records of a page that was read
+     * @return null if the page has to be read to know
+     */
+    private int[] manifestBounds(Table table, PageManifest manifest, int pageId, Object[] record) {
+        if (manifest.getEntries(pageId) == 0)
+            return null;
+        Object[] lowKey = manifest.getLowKey(pageId);
+        Object[] highKey = manifest.getHighKey(pageId);
+        if (lowKey == null || highKey == null)
+            return null;
+        return new int[]{table.compareToKey(record, lowKey), table.compareToKey(record, highKey)};
     }
 
-    public void emptyTablePool(Table table) {
-        for (Page page: pages.get(table.getId()).get(PageTypes.RECORD_PAGE)) {
+    public void emptyTablePool(Table table) throws StorageManagerException {
+        readAhead.forget(table.getId());
+        if (pages.get(table.getId()) == null) return;
+        // destroying a page removes it from the resident set
+        for (Page<?> page: new ArrayList<>(residentPages(table.getId(), PageTypes.RECORD_PAGE))) {
             destroyPage(page);
         }
     }
 
     public void forgetTablePool(Table table) {
+        readAhead.forget(table.getId());
         if (pages.get(table.getId()) == null) return;
-        for (Page page: pages.get(table.getId()).get(PageTypes.RECORD_PAGE)) {
+        TreeSet<Page<?>> resident = residentPages(table.getId(), PageTypes.RECORD_PAGE);
+        for (Page<?> page: resident) {
             page.forget();
+            pageTable.remove(page);
         }
-        pages.get(table.getId()).get(PageTypes.RECORD_PAGE).clear();
+        resident.clear();
     }
 
-    public void destroyPage(Page page) { // delete a page from the system
+    public void destroyPage(Page<?> page) throws StorageManagerException { // delete a page from the system
         removePage(page);
         page.delete();
     }
 
-    public void writeOutPage(Page page) { // write out a page to disk and remove it from the buffer
-        // writing out a page to disk
-        try {
+    /**
+     * @return true if a page leaving the buffer is destroyed rather than written
+     */
+    private boolean leavesTable(Page<?> page) {
+        return page.isEmpty() && !keepEmptyPages;
+    }
+
+    /**
+     * While a restart redoes the log, a page that is empty may be filled again by a later change, it is not taken
+     * out of its table when it leaves the buffer
+     */
+    public void setKeepEmptyPages(boolean keepEmptyPages) {
+        this.keepEmptyPages = keepEmptyPages;
+    }
+
+    /**
+     * Throw a resident page away without writing it, it is no longer one of its table's pages
+     */
+    public void discardPage(int tableId, int pageId) {
+        Page<?> page = isPageLoaded(tableId, PageTypes.RECORD_PAGE, pageId);
+        if (page == null) return;
+        page.forget();
+        removePage(page);
+    }
+
+    // write out a page to disk and remove it from the buffer
+    public void writeOutPage(Page<?> page) throws StorageManagerException {
+        // writing out a page to disk, a page that has not changed since it was read is already there
+        if (page.isDirty()) {
             page.save();
-        } catch (StorageManagerException e) {
-            e.printStackTrace();
+            statistics.pageWritten();
         }
         removePage(page);
     }
 
-    public void removeTracker(AgeTracker<Page> pageAgeTracker) {
-        pagePool.remove(pageAgeTracker);
+    /**
+     * Write out the dirty pages found among the pages next in line to be evicted, together.
+     * Must be called holding the buffer's lock.
+     * @param lookahead how many of the next victims to look at
+     * @param maxPages the most pages to write
+     * @return the amount of pages written
+     */
+    int cleanPages(int lookahead, int maxPages) {
+        List<Page<?>> dirty = new ArrayList<>();
+        for (Page<?> page: pagePool.evictionCandidates(lookahead)) {
+            if (dirty.size() >= maxPages) break;
+            // empty pages are destroyed rather than written when they leave
+            if (page.isDirty() && !page.isEmpty()) dirty.add(page);
+        }
+        try {
+            writePages(dirty);
+        } catch (StorageManagerException e) {
+            // the pages stay dirty, they are written before they are evicted and a failure then fails the operation
+            return 0;
+        }
+        for (int i = 0; i < dirty.size(); i++)
+            statistics.backgroundWrite();
+        return dirty.size();
+    }
+
+    /**
+     * @return the resident pages, hottest first by the replacement policy's order
+     */
+    public List<HotPage> hotPages() {
+        ArrayList<Page<?>> coldestFirst = pagePool.evictionCandidates(pagePool.size());
+        List<HotPage> hotPages = new ArrayList<>(coldestFirst.size());
+        for (int i = coldestFirst.size() - 1; i >= 0; i--) {
+            Page<?> page = coldestFirst.get(i);
+            hotPages.add(new HotPage(page.getTableID(), page.getPageType(), page.getPageID(), i + 1));
+        }
+        return hotPages;
+    }
+
+    /**
+     * Start loading pages into the buffer in the background, while there is room for them
+     */
+    public void warmUp(List<HotPage> hotPages) {
+        if (warmUp != null) warmUp.stop();
+        if (hotPages.isEmpty()) return;
+        warmUp = new WarmUp(this, bufferManager, hotPages, bufferManager.getPageSize());
+        warmUp.start();
+    }
+
+    /**
+     * Must be called holding the buffer's lock.
+     * @return the table a page read by the warm up belongs to, null if the table no longer exists
+     */
+    Table warmTable(int tableId) {
+        try {
+            return bufferManager.getTable(tableId);
+        } catch (StorageManagerException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Put a page read by the warm up in the buffer, if it is still what is on disk.
+     * Must be called holding the buffer's lock.
+     * @param version the table's page file version from before the page was read
+     * @return false once the buffer is full and the warm up should stop
+     */
+    boolean warmPage(Page<?> page, Table table, HotPage hotPage, long version) throws StorageManagerException {
+        if (pagePool.size() >= maxPages) return false;
+        if (isPageLoaded(hotPage.getTableId(), hotPage.getPageType(), hotPage.getPageId()) != null
+                || version != DataManager.getPageVersion(hotPage.getTableId())
+                || bufferManager.getTableMap().get(table.getId()) != table
+                || !table.hasPage(hotPage.getPageId()))
+            return true;
+        // warmed pages have not been used yet, they go in cold until they are
+        Page.attachPage(page, table, hotPage.getPageId(), bufferManager, this, AccessType.PREFETCH);
+        statistics.warmed();
+        return true;
+    }
+
+    public BufferStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void removeFrame(Frame<Page<?>> pageFrame) {
+        pagePool.remove(pageFrame);
     }
 
-    public void removeFromPool(Page page, AgeTracker<Page> pageAgeTracker) {
-        pagePool.remove(pageAgeTracker);
+    public void removeFromPool(Page<?> page, Frame<Page<?>> pageFrame) {
+        pagePool.remove(pageFrame);
         removePage(page);
     }
 
-    private void removePage(Page page) { // remove a page without saving it to disk
-        pages.get(page.getTableID()).get(page.getPageType()).remove(page);
+    private void removePage(Page<?> page) { // remove a page without saving it to disk
+        residentPages(page.getTableID(), page.getPageType()).remove(page);
+        pageTable.remove(page);
     }
 
 }
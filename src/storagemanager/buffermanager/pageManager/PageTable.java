@@ -0,0 +1,153 @@
+package storagemanager.buffermanager.pageManager;
+
+import storagemanager.buffermanager.page.Page;
+import storagemanager.buffermanager.page.PageTypes;
+
+/**
+ * Maps (table id, page type, page id) to the resident page.
+ *
+ * The table and page id are packed into a single long and kept in an open addressing table with linear probing,
+ * so a lookup is a couple of array reads regardless of how many pages are resident.
+ */
+public class PageTable {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private byte[] types;
+    private Page<?>[] pages;
+    private int size = 0;
+    private int mask;
+
+    public PageTable(int expectedPages) {
+        allocate(capacityFor(expectedPages));
+    }
+
+    private static int capacityFor(int expectedPages) {
+        // keep the table at most half full
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedPages * 2 && capacity < (1 << 30))
+            capacity <<= 1;
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        types = new byte[capacity];
+        pages = new Page<?>[capacity];
+        mask = capacity - 1;
+    }
+
+    private static long key(int tableId, int pageId) {
+        return ((long) tableId << 32) | (pageId & 0xFFFFFFFFL);
+    }
+
+    private int slot(long key, byte type) {
+        long h = (key ^ type) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * @return the resident page or null if the page is not loaded
+     */
+    public Page<?> get(int tableId, PageTypes pageType, int pageId) {
+        long key = key(tableId, pageId);
+        byte type = (byte) pageType.ordinal();
+        for (int i = slot(key, type); pages[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key && types[i] == type)
+                return pages[i];
+        }
+        return null;
+    }
+
+    /**
+     * Map a page under its current ids, replacing any page mapped there
+     */
+    public void put(Page<?> page) {
+        if ((size + 1) * 2 > pages.length)
+            grow();
+        long key = key(page.getTableID(), page.getPageID());
+        byte type = (byte) page.getPageType().ordinal();
+        int i = slot(key, type);
+        for (; pages[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key && types[i] == type) {
+                pages[i] = page;
+                return;
+            }
+        }
+        keys[i] = key;
+        types[i] = type;
+        pages[i] = page;
+        size++;
+    }
+
+    /**
+     * Remove the page mapped under its current ids
+     * @return true if the page was mapped
+     */
+    public boolean remove(Page<?> page) {
+        return remove(page.getTableID(), page.getPageType(), page.getPageID(), page);
+    }
+
+    /**
+     * Remove a page mapped under the given ids, only if it is the page expected
+     * @return true if the page was mapped
+     */
+    public boolean remove(int tableId, PageTypes pageType, int pageId, Page<?> expected) {
+        long key = key(tableId, pageId);
+        byte type = (byte) pageType.ordinal();
+        for (int i = slot(key, type); pages[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key && types[i] == type) {
+                if (pages[i] != expected) return false;
+                delete(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Empty a slot and shift back any entries in the probe chain after it, keeps lookups free of tombstones
+     */
+    private void delete(int hole) {
+        pages[hole] = null;
+        size--;
+        for (int i = (hole + 1) & mask; pages[i] != null; i = (i + 1) & mask) {
+            int home = slot(keys[i], types[i]);
+            // move the entry if its home is not cyclically in (hole, i]
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                types[hole] = types[i];
+                pages[hole] = pages[i];
+                pages[i] = null;
+                hole = i;
+            }
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        byte[] oldTypes = types;
+        Page<?>[] oldPages = pages;
+        allocate(pages.length << 1);
+        for (int i = 0; i < oldPages.length; i++) {
+            if (oldPages[i] == null) continue;
+            int j = slot(oldKeys[i], oldTypes[i]);
+            while (pages[j] != null)
+                j = (j + 1) & mask;
+            keys[j] = oldKeys[i];
+            types[j] = oldTypes[i];
+            pages[j] = oldPages[i];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        for (int i = 0; i < pages.length; i++)
+            pages[i] = null;
+        size = 0;
+    }
+}
@@ -0,0 +1,73 @@
+package storagemanager.buffermanager.pageManager;
+
+/**
+ * Writes dirty pages that are close to being evicted in the background, so a page being pushed out of the buffer
+ * is almost always clean and the operation that needed the room does not pay for the write.
+ *
+ * Each round the writer writes at most pagesPerRound pages while holding the buffer's lock. They are written
+ * sorted by table and page id, so pages in neighbouring slots of a table's file go out in a single write.
+ * A foreground operation waits for at most one round of writes.
+ */
+public class PageWriter implements Runnable {
+
+    private final PageBuffer pageBuffer;
+    private final Object lock;
+    private final int pagesPerRound;
+    private final long roundMillis;
+    // how far into the eviction order the writer looks for dirty pages
+    private final int lookahead;
+
+    private volatile Thread thread = null;
+
+    /**
+     * @param pageBuffer the buffer to clean
+     * @param lock the lock guarding the buffer
+     * @param pagesPerRound the most pages written each round
+     * @param roundMillis the rest between rounds
+     */
+    PageWriter(PageBuffer pageBuffer, Object lock, int pagesPerRound, long roundMillis) {
+        this.pageBuffer = pageBuffer;
+        this.lock = lock;
+        this.pagesPerRound = pagesPerRound;
+        this.roundMillis = roundMillis;
+        this.lookahead = pagesPerRound * 4;
+    }
+
+    /**
+     * Start the writer if it is not already running
+     */
+    void ensureRunning() {
+        if (thread != null || pagesPerRound <= 0) return;
+        synchronized (this) {
+            if (thread != null) return;
+            thread = new Thread(this, "page-writer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stop the writer. Does not wait for it, a round in progress holds the buffer's lock so anything done under
+     * that lock afterwards sees the writer finished.
+     */
+    synchronized void stop() {
+        if (thread == null) return;
+        thread.interrupt();
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        while (thread == Thread.currentThread()) {
+            try {
+                Thread.sleep(roundMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            synchronized (lock) {
+                if (thread != Thread.currentThread()) return;
+                pageBuffer.cleanPages(lookahead, pagesPerRound);
+            }
+        }
+    }
+}
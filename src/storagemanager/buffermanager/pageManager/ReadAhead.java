@@ -0,0 +1,231 @@
+package storagemanager.buffermanager.pageManager;
+
+import storagemanager.StorageManagerException;
+import storagemanager.buffermanager.BufferManager;
+import storagemanager.buffermanager.PageOrder;
+import storagemanager.buffermanager.Table;
+import storagemanager.buffermanager.diskUtils.DataManager;
+import storagemanager.buffermanager.page.Page;
+import storagemanager.buffermanager.page.PageTypes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Reads record pages ahead of a sequential pass over a table, so a scan finds its next pages already in the
+ * buffer instead of waiting on each read.
+ *
+ * Every method besides the readers' own loop must be called holding the buffer's lock. When a table is being read
+ * in page order (or by a scan) the next pages are handed to background readers, which only read the page files
+ * and never take the buffer's lock. Pages they have read are put in the buffer cold on the next page access, or
+ * straight away if the foreground gets to a page whose read is still in flight.
+ *
+ * A read is only used if none of the table's page files changed since it was requested, otherwise it is thrown
+ * away and the page is read again when it is needed.
+ */
+public class ReadAhead implements Runnable {
+
+    private static class Prefetch {
+        final Table table;
+        final int tableId;
+        final int pageId;
+        // the table's page file version when the read was requested
+        final long version;
+        final CompletableFuture<Page<?>> page = new CompletableFuture<>();
+
+        Prefetch(Table table, int pageId, long version) {
+            this.table = table;
+            this.tableId = table.getId();
+            this.pageId = pageId;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Where a pass over a table is at
+     */
+    private static class Stream {
+        int lastPage = PageOrder.NO_PAGE;
+    }
+
+    // reading a page is mostly deserializing it, a second reader keeps up with a scan that finds its pages cheap
+    private static final int READERS = 2;
+
+    private final PageBuffer pageBuffer;
+    private final BufferManager bufferManager;
+    private final BufferStatistics statistics;
+    private final int depth;
+
+    // reads requested and not yet put in the buffer
+    private final HashMap<Long, Prefetch> staged = new HashMap<>();
+    private final HashMap<Integer, Stream> streams = new HashMap<>();
+    private final LinkedBlockingQueue<Prefetch> requests = new LinkedBlockingQueue<>();
+    private final ConcurrentLinkedQueue<Prefetch> ready = new ConcurrentLinkedQueue<>();
+
+    // readers started since the last stop, null if none are running
+    private volatile Thread[] readers = null;
+
+    /**
+     * @param pageBuffer the buffer to read into
+     * @param bufferManager the buffer manager owning the tables
+     * @param statistics where to count the pages read ahead
+     * @param depth how many pages to read ahead of a pass, 0 turns read ahead off
+     */
+    ReadAhead(PageBuffer pageBuffer, BufferManager bufferManager, BufferStatistics statistics, int depth) {
+        this.pageBuffer = pageBuffer;
+        this.bufferManager = bufferManager;
+        this.statistics = statistics;
+        this.depth = depth;
+    }
+
+    private static long key(int tableId, int pageId) {
+        return ((long) tableId << 32) | (pageId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Record an access to a record page, reads ahead the pages after it if the table is being read in order
+     */
+    void accessed(Table table, int pageId, AccessType access) {
+        if (depth <= 0) return;
+        Stream stream = streams.computeIfAbsent(table.getId(), id -> new Stream());
+
+        boolean sequential = stream.lastPage != PageOrder.NO_PAGE && table.getNextPage(stream.lastPage) == pageId;
+        stream.lastPage = pageId;
+        if (!sequential && access != AccessType.SCAN) return;
+
+        long version = DataManager.getPageVersion(table.getId());
+        int scheduled = 0;
+        for (int next: table.getPagesAfter(pageId)) {
+            // pages already read ahead are staged or in the buffer and skipped
+            if (scheduled++ >= depth) break;
+            long key = key(table.getId(), next);
+            if (staged.containsKey(key) || pageBuffer.isPageLoaded(table.getId(), PageTypes.RECORD_PAGE, next) != null)
+                continue;
+            Prefetch prefetch = new Prefetch(table, next, version);
+            staged.put(key, prefetch);
+            ensureRunning();
+            requests.add(prefetch);
+        }
+    }
+
+    /**
+     * @return true if the page has been or is being read ahead
+     */
+    boolean isStaged(int tableId, int pageId) {
+        return staged.containsKey(key(tableId, pageId));
+    }
+
+    /**
+     * Take the page if it has been or is being read ahead, waits for a read in flight
+     * @return the page read from disk, null if it was not read ahead or the read can not be used
+     */
+    Page<?> claim(int tableId, int pageId) {
+        Prefetch prefetch = staged.remove(key(tableId, pageId));
+        if (prefetch == null) return null;
+        if (!prefetch.page.isDone()) statistics.prefetchWait();
+        Page<?> page = prefetch.page.join();
+        if (page == null || prefetch.version != DataManager.getPageVersion(tableId)) {
+            statistics.prefetchDiscarded();
+            return null;
+        }
+        return page;
+    }
+
+    /**
+     * Put the pages that have finished reading in the buffer, they go in cold
+     */
+    void installReady() throws StorageManagerException {
+        Prefetch prefetch;
+        while ((prefetch = ready.poll()) != null) {
+            // a page that was claimed or forgotten is no longer staged
+            if (!staged.remove(key(prefetch.tableId, prefetch.pageId), prefetch)) continue;
+            Page<?> page = prefetch.page.join();
+            Table table = bufferManager.getTableMap().get(prefetch.tableId);
+            if (page == null || table == null || !table.hasPage(prefetch.pageId)
+                    || prefetch.version != DataManager.getPageVersion(prefetch.tableId)
+                    || pageBuffer.isPageLoaded(prefetch.tableId, PageTypes.RECORD_PAGE, prefetch.pageId) != null) {
+                statistics.prefetchDiscarded();
+                continue;
+            }
+            Page.attachPage(page, table, prefetch.pageId, bufferManager, pageBuffer, AccessType.PREFETCH);
+            statistics.prefetched();
+        }
+    }
+
+    /**
+     * Drop everything read ahead for a table
+     */
+    void forget(int tableId) {
+        staged.values().removeIf(prefetch -> prefetch.tableId == tableId);
+        streams.remove(tableId);
+    }
+
+    private void ensureRunning() {
+        if (readers != null) return;
+        Thread[] started = new Thread[READERS];
+        readers = started;
+        for (int i = 0; i < READERS; i++) {
+            started[i] = new Thread(this, "page-reader-" + i);
+            started[i].setDaemon(true);
+            started[i].start();
+        }
+    }
+
+    private boolean isReader(Thread thread) {
+        Thread[] current = readers;
+        if (current == null) return false;
+        for (Thread reader: current)
+            if (reader == thread) return true;
+        return false;
+    }
+
+    /**
+     * Stop the readers and drop everything read ahead, returns once every reader has exited. A reader interrupted
+     * during a read closes the page file's channel, the file is opened again the next time a page of it is read or
+     * written
+     */
+    void stop() {
+        staged.clear();
+        streams.clear();
+        requests.clear();
+        ready.clear();
+        Thread[] stopped = readers;
+        if (stopped == null) return;
+        readers = null;
+        for (Thread reader: stopped)
+            reader.interrupt();
+        try {
+            for (Thread reader: stopped)
+                reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        // each reader reads page files through its own frame, the page read is put in a frame of the buffer later
+        ByteBuffer frame = ByteBuffer.allocateDirect(bufferManager.getPageSize());
+        while (isReader(Thread.currentThread())) {
+            Prefetch prefetch;
+            try {
+                prefetch = requests.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Page<?> page = null;
+            try {
+                page = DataManager.getPage(prefetch.table, PageTypes.RECORD_PAGE, prefetch.pageId, frame);
+            } catch (IOException | RuntimeException e) {
+                // the page moved or is being written, it will be read again when it is needed
+            } finally {
+                prefetch.page.complete(page);
+                ready.add(prefetch);
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package storagemanager.buffermanager.pageManager;
+
+import java.util.function.ToLongFunction;
+
+/**
+ * The replacement policies a page buffer can be built with
+ */
+public enum ReplacementPolicies {
+    CLOCK,
+    LRU_K,
+    TWO_QUEUE;
+
+    // references remembered per page by LRU-K
+    private static final int LRU_K_REFERENCES = 2;
+
+    /**
+     * Create a pool using this policy
+     * @param maxSize the max amount of objects in the pool before objects are pushed
+     * @param identity produces an id for an object that survives the object leaving the pool
+     */
+    public <E> ReplacementPolicy<E> create(int maxSize, ToLongFunction<E> identity) {
+        switch (this) {
+            case LRU_K:
+                return new LRUKReplacer<>(maxSize, LRU_K_REFERENCES);
+            case TWO_QUEUE:
+                return new TwoQueueReplacer<>(maxSize, identity);
+            default:
+                return new ClockReplacer<>(maxSize);
+        }
+    }
+}
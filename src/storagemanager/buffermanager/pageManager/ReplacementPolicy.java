@@ -0,0 +1,56 @@
+package storagemanager.buffermanager.pageManager;
+
+import storagemanager.util.Subscriber;
+
+import java.util.ArrayList;
+
+/**
+ * Decides which object leaves a bounded pool when room is needed for another.
+ *
+ * Objects removed to make room are pushed to the removal subscribers, objects removed through
+ * {@link #remove(Frame)} are not. Pinned objects are never removed to make room.
+ * @param <E> object to pool
+ */
+public interface ReplacementPolicy<E> {
+
+    /**
+     * Add an object to the pool, if the pool is full a victim is removed and pushed to the removal subscribers.
+     * The object must not already be in the pool.
+     * @throws IllegalStateException if the pool is full and every object in it is pinned
+     * @param o object to add
+     * @param access how the object is being accessed
+     * @return the frame holding the object
+     */
+    Frame<E> admit(E o, AccessType access);
+
+    /**
+     * Record an access to an object in the pool
+     * @param frame the frame holding the object
+     * @param access how the object is being accessed
+     */
+    void touch(Frame<E> frame, AccessType access);
+
+    /**
+     * Remove an object without telling anyone about it
+     * @param frame the frame holding the object
+     * @return true if the object was in the pool
+     */
+    boolean remove(Frame<E> frame);
+
+    ArrayList<E> getObjects();
+
+    /**
+     * Get the unpinned objects that are next in line to be evicted, the next victim first
+     * @param count the most objects to return
+     */
+    ArrayList<E> evictionCandidates(int count);
+
+    int size();
+
+    /**
+     * Forget every object in the pool
+     */
+    void reset();
+
+    void subscribe(Subscriber<E> removalSubscriber);
+}
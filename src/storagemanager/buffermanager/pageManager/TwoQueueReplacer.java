@@ -0,0 +1,207 @@
+package storagemanager.buffermanager.pageManager;
+
+import storagemanager.util.Subject;
+import storagemanager.util.Subscriber;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.function.ToLongFunction;
+
+/**
+ * A pool of objects using the 2Q replacement policy.
+ *
+ * New objects enter a probationary FIFO queue (A1in). When they fall out of it their ids are remembered in a ghost
+ * queue (A1out), an object admitted again while its id is still remembered has proven itself and goes into the hot
+ * LRU queue (Am). Victims are taken from the probationary queue while it holds more than its share of the pool.
+ *
+ * Scan accesses never promote an object and objects admitted by a scan or read ahead are not remembered in the
+ * ghost queue, so scanning a large table only cycles pages through the probationary queue.
+ * @param <E> object to pool
+ */
+public class TwoQueueReplacer<E> implements ReplacementPolicy<E> {
+
+    private enum Queue { PROBATION, HOT, NONE }
+
+    private static class QueueFrame<E> extends Frame<E> {
+        QueueFrame<E> previous, next;
+        Queue queue = Queue.NONE;
+        final boolean scanned;
+
+        QueueFrame(E object, TwoQueueReplacer<E> pool, boolean scanned) {
+            super(object, pool);
+            this.scanned = scanned;
+        }
+
+        @Override
+        public boolean isResident() {
+            return queue != Queue.NONE;
+        }
+    }
+
+    /**
+     * Intrusive doubly linked list of frames, most recent at the head
+     */
+    private static class FrameQueue<E> {
+        QueueFrame<E> head, tail;
+        int size = 0;
+
+        void addFirst(QueueFrame<E> frame) {
+            frame.previous = null;
+            frame.next = head;
+            if (head != null) head.previous = frame;
+            head = frame;
+            if (tail == null) tail = frame;
+            size++;
+        }
+
+        void unlink(QueueFrame<E> frame) {
+            if (frame.previous != null) frame.previous.next = frame.next;
+            else head = frame.next;
+            if (frame.next != null) frame.next.previous = frame.previous;
+            else tail = frame.previous;
+            frame.previous = frame.next = null;
+            size--;
+        }
+    }
+
+    private final int maxSize;
+    // max size of the probationary queue before it gives up victims
+    private final int probationSize;
+    // max amount of ids remembered in the ghost queue
+    private final int ghostSize;
+    private final ToLongFunction<E> identity;
+
+    private final FrameQueue<E> probation = new FrameQueue<>();
+    private final FrameQueue<E> hot = new FrameQueue<>();
+    private final LinkedHashSet<Long> ghosts = new LinkedHashSet<>();
+
+    private final Subject<E> objectRemoval = new Subject<>();
+
+    /**
+     * @param maxSize the max amount of objects in the pool before objects are pushed
+     * @param identity produces an id for an object, used to recognise an object evicted from the probationary
+     *                 queue without holding on to it
+     */
+    public TwoQueueReplacer(int maxSize, ToLongFunction<E> identity) {
+        this.maxSize = maxSize;
+        this.probationSize = Math.max(1, maxSize / 4);
+        this.ghostSize = Math.max(1, maxSize / 2);
+        this.identity = identity;
+    }
+
+    @Override
+    public Frame<E> admit(E o, AccessType access) {
+        E removed = null;
+        if (size() >= maxSize)
+            removed = evict();
+
+        QueueFrame<E> frame = new QueueFrame<>(o, this, access.isCold());
+        if (!frame.scanned && ghosts.remove(identity.applyAsLong(o))) {
+            frame.queue = Queue.HOT;
+            hot.addFirst(frame);
+        } else {
+            frame.queue = Queue.PROBATION;
+            probation.addFirst(frame);
+        }
+
+        if (removed != null)
+            objectRemoval.push(removed);
+        return frame;
+    }
+
+    private E evict() {
+        FrameQueue<E> first = probation.size > probationSize || hot.size == 0 ? probation : hot;
+        QueueFrame<E> victim = oldestUnpinned(first);
+        if (victim == null)
+            victim = oldestUnpinned(first == probation ? hot : probation);
+        if (victim == null)
+            throw new IllegalStateException("Every object in the pool is pinned");
+        if (victim.queue == Queue.PROBATION && !victim.scanned)
+            remember(identity.applyAsLong(victim.getObject()));
+        unlink(victim);
+        return victim.getObject();
+    }
+
+    private static <E> QueueFrame<E> oldestUnpinned(FrameQueue<E> queue) {
+        for (QueueFrame<E> frame = queue.tail; frame != null; frame = frame.previous)
+            if (!frame.isPinned()) return frame;
+        return null;
+    }
+
+    private void remember(long id) {
+        ghosts.add(id);
+        if (ghosts.size() > ghostSize) {
+            Iterator<Long> oldest = ghosts.iterator();
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    private void unlink(QueueFrame<E> frame) {
+        if (frame.queue == Queue.PROBATION) probation.unlink(frame);
+        else if (frame.queue == Queue.HOT) hot.unlink(frame);
+        frame.queue = Queue.NONE;
+    }
+
+    @Override
+    public void touch(Frame<E> frame, AccessType access) {
+        QueueFrame<E> queueFrame = (QueueFrame<E>) frame;
+        // references while on probation are treated as correlated with the first one
+        if (access.isCold() || queueFrame.queue != Queue.HOT) return;
+        hot.unlink(queueFrame);
+        hot.addFirst(queueFrame);
+    }
+
+    @Override
+    public boolean remove(Frame<E> frame) {
+        if (frame == null) return false;
+        QueueFrame<E> queueFrame = (QueueFrame<E>) frame;
+        if (queueFrame.queue == Queue.NONE) return false;
+        unlink(queueFrame);
+        return true;
+    }
+
+    @Override
+    public ArrayList<E> getObjects() {
+        ArrayList<E> objects = new ArrayList<>(size());
+        for (QueueFrame<E> frame = hot.head; frame != null; frame = frame.next)
+            objects.add(frame.getObject());
+        for (QueueFrame<E> frame = probation.head; frame != null; frame = frame.next)
+            objects.add(frame.getObject());
+        return objects;
+    }
+
+    @Override
+    public ArrayList<E> evictionCandidates(int count) {
+        ArrayList<E> candidates = new ArrayList<>(count);
+        // the probationary queue gives up victims until it is down to its share, then the hot queue does
+        QueueFrame<E> frame = probation.tail;
+        for (int excess = probation.size - probationSize; excess > 0 && candidates.size() < count; excess--) {
+            if (!frame.isPinned()) candidates.add(frame.getObject());
+            frame = frame.previous;
+        }
+        for (QueueFrame<E> hotFrame = hot.tail; hotFrame != null && candidates.size() < count; hotFrame = hotFrame.previous)
+            if (!hotFrame.isPinned()) candidates.add(hotFrame.getObject());
+        for (; frame != null && candidates.size() < count; frame = frame.previous)
+            if (!frame.isPinned()) candidates.add(frame.getObject());
+        return candidates;
+    }
+
+    @Override
+    public int size() {
+        return probation.size + hot.size;
+    }
+
+    @Override
+    public void reset() {
+        while (probation.tail != null) unlink(probation.tail);
+        while (hot.tail != null) unlink(hot.tail);
+        ghosts.clear();
+    }
+
+    @Override
+    public void subscribe(Subscriber<E> removalSubscriber) {
+        objectRemoval.addSubscriber(removalSubscriber);
+    }
+}
@@ -0,0 +1,85 @@
+package storagemanager.buffermanager.pageManager;
+
+import storagemanager.StorageManagerException;
+import storagemanager.buffermanager.Table;
+import storagemanager.buffermanager.diskUtils.DataManager;
+import storagemanager.buffermanager.page.Page;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Loads the pages that were hot when the database last shut down back into the buffer, hottest first.
+ *
+ * The loader reads pages without holding the buffer's lock and takes it for each page only to put the page in,
+ * so the database serves operations while it warms up. It only fills free room in the buffer, it stops once the
+ * buffer is full rather than push out pages that are being used.
+ */
+public class WarmUp implements Runnable {
+
+    private final PageBuffer pageBuffer;
+    private final Object lock;
+    private final List<HotPage> hotPages;
+    private final int pageSize;
+
+    private volatile boolean stopped = false;
+
+    /**
+     * @param pageBuffer the buffer to load the pages into
+     * @param lock the lock guarding the buffer
+     * @param hotPages the pages to load
+     * @param pageSize the size of a page in bytes
+     */
+    WarmUp(PageBuffer pageBuffer, Object lock, List<HotPage> hotPages, int pageSize) {
+        this.pageBuffer = pageBuffer;
+        this.lock = lock;
+        this.hotPages = new ArrayList<>(hotPages);
+        this.hotPages.sort(Comparator.comparingInt(HotPage::getHeat).reversed());
+        this.pageSize = pageSize;
+    }
+
+    void start() {
+        Thread thread = new Thread(this, "page-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop loading pages, a page being read is never put in the buffer
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    @Override
+    public void run() {
+        ByteBuffer frame = ByteBuffer.allocateDirect(pageSize);
+        for (HotPage hotPage: hotPages) {
+            Table table;
+            synchronized (lock) {
+                if (stopped) return;
+                table = pageBuffer.warmTable(hotPage.getTableId());
+            }
+            if (table == null) continue;
+            // a page file that changes while it is read bumps the version, the page read is then thrown away
+            long version = DataManager.getPageVersion(hotPage.getTableId());
+            Page<?> page;
+            try {
+                page = DataManager.getPage(table, hotPage.getPageType(), hotPage.getPageId(), frame);
+            } catch (IOException | RuntimeException e) {
+                continue; // the page is gone
+            }
+            if (page == null) continue;
+            synchronized (lock) {
+                try {
+                    if (stopped || !pageBuffer.warmPage(page, table, hotPage, version)) return;
+                } catch (StorageManagerException e) {
+                    return; // pages are only warmed in while there is room, no page is written to make it
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package storagemanager.buffermanager.wal;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What a checkpoint record holds, the pages that were dirty when it was taken and the transactions that had not
+ * ended. Nothing is written to take a checkpoint, a restart starts redoing changes at the oldest change of a page
+ * that was dirty and reads the log no further back than that or the first record of a transaction still running.
+ *
+ * <pre>
+ * | dirty pages (4) | per page: table (4) | page (4) | lsn of its oldest change not on disk (8) |
+ * | transactions (4) | per transaction: lsn of its first record (8) | lsn of its last record (8) |
+ * </pre>
+ */
+public final class Checkpoint {
+
+    // the lsn of each dirty page's oldest change that is not on disk, by table in the high half and page in the low
+    private final Map<Long, Long> dirtyPages;
+    // the lsn of each running transaction's last record, by its first
+    private final Map<Long, Long> transactions;
+
+    public Checkpoint(Map<Long, Long> dirtyPages, Map<Long, Long> transactions) {
+        this.dirtyPages = dirtyPages;
+        this.transactions = transactions;
+    }
+
+    public static long pageKey(int table, int page) {
+        return ((long) table << 32) | (page & 0xFFFFFFFFL);
+    }
+
+    public Map<Long, Long> getDirtyPages() {
+        return dirtyPages;
+    }
+
+    public Map<Long, Long> getTransactions() {
+        return transactions;
+    }
+
+    /**
+     * @return the oldest lsn a restart needs, the given lsn if nothing needs an older one
+     */
+    public long oldestNeeded(long lsn) {
+        for (long recLsn: dirtyPages.values())
+            lsn = Math.min(lsn, recLsn);
+        for (long first: transactions.keySet())
+            lsn = Math.min(lsn, first);
+        return lsn;
+    }
+
+    /**
+     * @return the checkpoint encoded as the after image of its log record
+     */
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + dirtyPages.size() * 16 + transactions.size() * 16);
+        buffer.putInt(dirtyPages.size());
+        for (Map.Entry<Long, Long> page: dirtyPages.entrySet()) {
+            buffer.putLong(page.getKey());
+            buffer.putLong(page.getValue());
+        }
+        buffer.putInt(transactions.size());
+        for (Map.Entry<Long, Long> transaction: transactions.entrySet()) {
+            buffer.putLong(transaction.getKey());
+            buffer.putLong(transaction.getValue());
+        }
+        return buffer.array();
+    }
+
+    public static Checkpoint fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        Map<Long, Long> dirtyPages = new HashMap<>();
+        for (int i = buffer.getInt(); i > 0; i--)
+            dirtyPages.put(buffer.getLong(), buffer.getLong());
+        Map<Long, Long> transactions = new HashMap<>();
+        for (int i = buffer.getInt(); i > 0; i--)
+            transactions.put(buffer.getLong(), buffer.getLong());
+        return new Checkpoint(dirtyPages, transactions);
+    }
+}
@@ -0,0 +1,155 @@
+package storagemanager.buffermanager.wal;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * One record of the write ahead log. A change is logged with the page it is made to and the records it touches
+ * rather than the bytes of the page, so a restart redoes it on that page only if the lsn in the page's header is
+ * older, and undoes it by its key whichever page the record has moved to since.
+ *
+ * <pre>
+ * | length (4) | crc (4) | type (1) | transaction (8) | reference (8) | table (4) | page (4) |
+ * | before length (4) | before | after length (4) | after |
+ * </pre>
+ *
+ * The length counts the whole log record and the crc covers everything after it, a record cut short by a crash
+ * fails its crc. Before and after images are records encoded the way pages keep them, one after another.
+ */
+public final class LogRecord {
+
+    static final int HEADER_SIZE = 4 + 4 + 1 + 8 + 8 + 4 + 4 + 4 + 4;
+    private static final int CRC_START = 8;
+    private static final byte[] NONE = new byte[0];
+
+    private long lsn;
+    private final LogRecordType type;
+    // the lsn of the transaction's first record
+    private final long transaction;
+    // the lsn of the change this one undoes, 0 if it undoes none
+    private final long reference;
+    private final int table;
+    // the page changed, -1 if the record is not about a page
+    private final int page;
+    private final byte[] before;
+    private final byte[] after;
+
+    /**
+     * @param before the image of the records before the change, null if there were none
+     * @param after the image of the records after the change, null if there are none
+     */
+    public LogRecord(LogRecordType type, long transaction, long reference, int table, int page, byte[] before,
+                     byte[] after) {
+        this.type = type;
+        this.transaction = transaction;
+        this.reference = reference;
+        this.table = table;
+        this.page = page;
+        this.before = before == null ? NONE : before;
+        this.after = after == null ? NONE : after;
+    }
+
+    /**
+     * @return where the record is in the log, set once it is appended
+     */
+    public long getLsn() {
+        return lsn;
+    }
+
+    void setLsn(long lsn) {
+        this.lsn = lsn;
+    }
+
+    public LogRecordType getType() {
+        return type;
+    }
+
+    public long getTransaction() {
+        return transaction;
+    }
+
+    public long getReference() {
+        return reference;
+    }
+
+    public int getTable() {
+        return table;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public byte[] getBefore() {
+        return before;
+    }
+
+    public byte[] getAfter() {
+        return after;
+    }
+
+    /**
+     * @return the bytes the record takes in the log
+     */
+    public int size() {
+        return HEADER_SIZE + before.length + after.length;
+    }
+
+    /**
+     * Encode the record at the buffer's position, the position is moved past it
+     */
+    void write(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putInt(size());
+        buffer.putInt(0);
+        buffer.put((byte) type.ordinal());
+        buffer.putLong(transaction);
+        buffer.putLong(reference);
+        buffer.putInt(table);
+        buffer.putInt(page);
+        buffer.putInt(before.length);
+        buffer.put(before);
+        buffer.putInt(after.length);
+        buffer.put(after);
+        buffer.putInt(start + 4, crc(buffer, start, buffer.position()));
+    }
+
+    /**
+     * Decode a record
+     * @param buffer exactly one log record, from its position to its limit
+     * @return the record, null if it is damaged or incomplete
+     */
+    static LogRecord read(ByteBuffer buffer, long lsn) {
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(start) != buffer.remaining()
+                || buffer.getInt(start + 4) != crc(buffer, start, buffer.limit()))
+            return null;
+        buffer.position(start + CRC_START);
+        int type = buffer.get();
+        if (type < 0 || type >= LogRecordType.values().length)
+            return null;
+        long transaction = buffer.getLong();
+        long reference = buffer.getLong();
+        int table = buffer.getInt();
+        int page = buffer.getInt();
+        byte[] before = new byte[buffer.getInt()];
+        buffer.get(before);
+        byte[] after = new byte[buffer.getInt()];
+        buffer.get(after);
+        LogRecord record = new LogRecord(LogRecordType.values()[type], transaction, reference, table, page, before,
+                after);
+        record.setLsn(lsn);
+        return record;
+    }
+
+    private static int crc(ByteBuffer buffer, int start, int end) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate().limit(end).position(start + CRC_START));
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return type + "@" + lsn + " transaction " + transaction + " table " + table + " page " + page;
+    }
+}
@@ -0,0 +1,27 @@
+package storagemanager.buffermanager.wal;
+
+/**
+ * What a record in the write ahead log describes
+ */
+public enum LogRecordType {
+    // a record was inserted into the page, the after image is the record
+    INSERT,
+    // a record in the page was replaced, the before and after images are the old and new record
+    UPDATE,
+    // a record was removed from the page, the before image is the record
+    DELETE,
+    // records left the page, the before image, or arrived on it, the after image, by a split or merge
+    MOVE,
+    // the transaction's changes are durable once this record is
+    COMMIT,
+    // the transaction's changes were undone
+    ABORT,
+    // every record of the table was removed
+    CLEAR,
+    // the page was added to the table's order, the after image is the page it comes after
+    PAGE_ADDED,
+    // the page was taken out of the table's order
+    PAGE_REMOVED,
+    // the dirty pages and running transactions at a point in the log, the after image is a Checkpoint
+    CHECKPOINT
+}
@@ -0,0 +1,386 @@
+package storagemanager.buffermanager.wal;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The write ahead log of a database, every change is appended to it before the change is made to a page.
+ *
+ * <pre>
+ * header  | magic (4) | version (4) | lsn of the first record (8) | lsn of the first byte after the header (8) |
+ * records | one after another, see {@link LogRecord} |
+ * </pre>
+ *
+ * A record's lsn is where it is in the log counted from the start of the first log, it keeps growing when the log
+ * is emptied or cut. Records are appended in memory and reach the disk when something needs them to, a commit or a
+ * page about to be written that holds changes they describe.
+ *
+ * Records a restart no longer needs are cut off the front of the log by moving the lsn of the first record. The
+ * file is only rewritten without them once they take more room than the records left, so each record is copied
+ * at most about once.
+ *
+ * Commits are forced in groups. The first commit to find the log not being forced leads: it waits the commit delay
+ * for others to join, then writes and forces everything appended so far outside the log's lock. Commits arriving
+ * meanwhile wait for the leader and one of them leads the next group, so a force is shared by every commit that
+ * came in while the one before it was running.
+ */
+public class WriteAheadLog {
+
+    private static final int MAGIC = 0x57414C47;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int INITIAL_BUFFER = 64 * 1024;
+
+    private final Path path;
+    private FileChannel channel;
+    // how long the leader of a group commit waits for others to join
+    private final long commitDelayNanos;
+    // false for a log whose records need not outlast the process, it is written but never forced
+    private final boolean durable;
+
+    // the lsn of the first record
+    private long startLsn;
+    // the lsn of the first byte after the header, records from here to the first record are no longer needed
+    private long baseLsn;
+    // records appended and not yet handed to a leader, they start at pendingLsn
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER);
+    // the buffer the next group is appended to once the leader takes pending, null while the leader writes it
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER);
+    private long pendingLsn;
+    // the lsn after the last record appended
+    private long appendedTo;
+    // every record before this lsn is on disk
+    private long flushedTo;
+    // a leader is writing and forcing a group
+    private boolean flushing = false;
+    // a write or force failed, nothing appended after the last good force is known to be on disk
+    private IOException failure = null;
+
+    private WriteAheadLog(Path path, FileChannel channel, long commitDelayNanos, boolean durable) {
+        this.path = path;
+        this.channel = channel;
+        this.commitDelayNanos = commitDelayNanos;
+        this.durable = durable;
+    }
+
+    /**
+     * Open the log, a new one is made if there is none. A record cut short by a crash and everything after it is
+     * cut off the end of the log.
+     * @param commitDelayMicros how long a group commit waits for more commits to join it, 0 to not wait
+     * @throws IOException the log could not be opened or is not a log
+     */
+    public static WriteAheadLog open(Path path, long commitDelayMicros) throws IOException {
+        return open(path, TimeUnit.MICROSECONDS.toNanos(commitDelayMicros), true);
+    }
+
+    /**
+     * Open an empty log whose records only need to last as long as the process, anything in the file is dropped.
+     * It is written out like any log but never forced, a flush only makes its records readable
+     */
+    public static WriteAheadLog openScratch(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        return open(path, 0, false);
+    }
+
+    private static WriteAheadLog open(Path path, long commitDelayNanos, boolean durable) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        WriteAheadLog log = new WriteAheadLog(path, channel, commitDelayNanos, durable);
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                log.startLsn = log.baseLsn = HEADER_SIZE;
+                log.writeHeader();
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                readFully(channel, header, 0);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+                    throw new IOException("Not a write ahead log");
+                log.startLsn = header.getLong(8);
+                log.baseLsn = header.getLong(16);
+            }
+            long end = log.startLsn;
+            for (LogRecord record = log.readAt(end); record != null; record = log.readAt(end))
+                end += record.size();
+            channel.truncate(log.position(end));
+            log.pendingLsn = log.appendedTo = log.flushedTo = end;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return log;
+    }
+
+    /**
+     * @return the lsn the next record appended gets
+     */
+    public synchronized long nextLsn() {
+        return appendedTo;
+    }
+
+    /**
+     * @return the lsn of the first record in the log
+     */
+    public synchronized long firstLsn() {
+        return startLsn;
+    }
+
+    /**
+     * @return the bytes of records appended that are not yet written out
+     */
+    public synchronized long pendingBytes() {
+        return appendedTo - pendingLsn;
+    }
+
+    /**
+     * Add a record to the end of the log, it is not on disk until a flush or commit reaches it
+     * @return the record's lsn
+     * @throws IOException an earlier write to the log failed
+     */
+    public synchronized long append(LogRecord record) throws IOException {
+        checkFailure();
+        int size = record.size();
+        if (pending.remaining() < size) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        long lsn = appendedTo;
+        record.write(pending);
+        record.setLsn(lsn);
+        appendedTo += size;
+        return lsn;
+    }
+
+    /**
+     * Wait until the record at the lsn is on disk, without waiting for other commits to join. Pages are written
+     * only once the records describing their changes are flushed
+     */
+    public void flush(long lsn) throws IOException {
+        force(lsn, 0);
+    }
+
+    /**
+     * Wait until the commit record at the lsn is on disk, the force is shared with the commits around it
+     */
+    public void commit(long lsn) throws IOException {
+        force(lsn, commitDelayNanos);
+    }
+
+    private void force(long lsn, long delayNanos) throws IOException {
+        synchronized (this) {
+            while (true) {
+                checkFailure();
+                if (flushedTo > lsn)
+                    return;
+                if (!flushing)
+                    break;
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for the log to be forced");
+                }
+            }
+            flushing = true;
+        }
+
+        // this thread leads the group, commits arriving while it waits are written with it
+        if (delayNanos > 0)
+            LockSupport.parkNanos(delayNanos);
+        ByteBuffer group;
+        long position;
+        long target;
+        synchronized (this) {
+            group = pending;
+            pending = spare;
+            spare = null;
+            position = position(pendingLsn);
+            target = appendedTo;
+            pendingLsn = appendedTo;
+        }
+        try {
+            group.flip();
+            while (group.hasRemaining())
+                position += channel.write(group, position);
+            if (durable)
+                channel.force(false);
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+                flushing = false;
+                notifyAll();
+            }
+            throw e;
+        }
+        synchronized (this) {
+            group.clear();
+            spare = group;
+            flushedTo = target;
+            flushing = false;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Read a record that is on disk
+     * @return the record, null if there is none at the lsn or it is damaged
+     */
+    public synchronized LogRecord read(long lsn) throws IOException {
+        if (lsn < startLsn || lsn >= flushedTo)
+            return null;
+        return readAt(lsn);
+    }
+
+    /**
+     * Read the records on disk from an lsn on, a block of the log at a time
+     * @param maxBytes about how much of the log to read, the first record is read whatever its size
+     * @return the records in order, none if there is no record at the lsn
+     */
+    public synchronized List<LogRecord> read(long lsn, int maxBytes) throws IOException {
+        List<LogRecord> records = new ArrayList<>();
+        if (lsn < startLsn || lsn >= flushedTo)
+            return records;
+        ByteBuffer block = ByteBuffer.allocate((int) Math.min(maxBytes, flushedTo - lsn));
+        readFully(channel, block, position(lsn));
+        while (block.remaining() >= Integer.BYTES) {
+            int length = block.getInt(block.position());
+            if (length < LogRecord.HEADER_SIZE || length > block.remaining())
+                break;
+            LogRecord record = LogRecord.read(block.slice(block.position(), length), lsn);
+            if (record == null)
+                break;
+            records.add(record);
+            block.position(block.position() + length);
+            lsn += length;
+        }
+        if (records.isEmpty()) {
+            LogRecord record = readAt(lsn);
+            if (record != null)
+                records.add(record);
+        }
+        return records;
+    }
+
+    private LogRecord readAt(long lsn) throws IOException {
+        long position = position(lsn);
+        long size = channel.size();
+        if (position + LogRecord.HEADER_SIZE > size)
+            return null;
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(channel, length, position);
+        int recordLength = length.getInt(0);
+        if (recordLength < LogRecord.HEADER_SIZE || position + recordLength > size)
+            return null;
+        ByteBuffer bytes = ByteBuffer.allocate(recordLength);
+        readFully(channel, bytes, position);
+        return LogRecord.read(bytes, lsn);
+    }
+
+    /**
+     * Empty the log, everything it describes is on disk. Lsns carry on from where the log ended
+     */
+    public synchronized void reset() throws IOException {
+        awaitLeader();
+        pending.clear();
+        channel.truncate(HEADER_SIZE);
+        startLsn = baseLsn = pendingLsn = flushedTo = appendedTo;
+        writeHeader();
+        failure = null;
+    }
+
+    /**
+     * Cut the records before an lsn off the front of the log, a restart will not read them
+     * @param lsn the first record to keep, it must be on disk
+     */
+    public synchronized void truncate(long lsn) throws IOException {
+        awaitLeader();
+        checkFailure();
+        if (lsn <= startLsn || lsn > flushedTo)
+            return;
+        startLsn = lsn;
+        if (lsn - baseLsn < flushedTo - lsn) {
+            writeHeader();
+            return;
+        }
+        // the records kept are copied to a new log that replaces this one
+        Path written = path.resolveSibling(path.getFileName() + ".new");
+        try (FileChannel out = FileChannel.open(written, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = header(lsn, lsn);
+            while (header.hasRemaining())
+                out.write(header);
+            long from = position(lsn);
+            long count = flushedTo - lsn;
+            for (long copied = 0; copied < count; )
+                copied += channel.transferTo(from + copied, count - copied, out);
+            out.force(true);
+        }
+        Files.move(written, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel.close();
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        baseLsn = lsn;
+    }
+
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = header(startLsn, baseLsn);
+        while (header.hasRemaining())
+            channel.write(header, header.position());
+        if (durable)
+            channel.force(true);
+    }
+
+    private static ByteBuffer header(long startLsn, long baseLsn) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        header.putInt(4, VERSION);
+        header.putLong(8, startLsn);
+        header.putLong(16, baseLsn);
+        return header;
+    }
+
+    private long position(long lsn) {
+        return HEADER_SIZE + (lsn - baseLsn);
+    }
+
+    /**
+     * Wait for a leader forcing the log to finish, must hold the log's lock
+     */
+    private void awaitLeader() throws IOException {
+        while (flushing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the log to be forced");
+            }
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null)
+            throw new IOException("An earlier write to the log failed", failure);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("The log ends early");
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,170 @@
+package testing;
+
+import storagemanager.StorageManager;
+import storagemanager.StorageManagerException;
+import storagemanager.buffermanager.diskUtils.DataManager;
+import storagemanager.buffermanager.page.PageCompression;
+import storagemanager.buffermanager.page.PageFormat;
+import storagemanager.buffermanager.page.PageTypes;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CompressionBenchmark {
+    /**
+     * Measures how well record pages compress and how fast, on tables shaped like the inputs/*.csv files.
+     *
+     * Each file is loaded into an uncompressed table, the pages are read back out of the table's segment file,
+     * then compressed and decompressed in a loop. The same rows are then loaded into a table that compresses its
+     * pages, and the time to load, purge and read them back is compared with the uncompressed table.
+     */
+
+    private static final String DB_LOC = "benchmarkdb/";
+    private static final int PAGE_SIZE = 4096;
+    private static final int BUFFER_PAGES = 100;
+    // bytes of pages compressed and decompressed per timed run
+    private static final long WORK_BYTES = 256L << 20;
+
+    private static final Shape[] SHAPES = {
+            new Shape("inputs/data1.csv", new String[]{"integer", "char(40)", "double", "boolean"},
+                    new Integer[]{0}),
+            new Shape("inputs/data2.csv", new String[]{"integer", "varchar(60)"}, new Integer[]{0}),
+            new Shape("inputs/data3.csv", new String[]{"integer", "char(40)", "double", "boolean", "integer",
+                    "varchar(60)"}, new Integer[]{0, 4}),
+    };
+
+    public static void main(String[] args) throws IOException, StorageManagerException {
+        System.out.printf("%-18s %6s %6s %12s %14s %14s %12s %12s%n", "input", "rows", "pages", "stored ratio",
+                "compress MB/s", "decomp MB/s", "none load ms", "lz4 load ms");
+        for (Shape shape: SHAPES) {
+            List<Object[]> rows = shape.read();
+
+            // one untimed pass to warm up the jit
+            load(shape, rows, PageCompression.LZ4);
+            double plainMillis = load(shape, rows, PageCompression.NONE);
+            List<ByteBuffer> pages = readPages(1);
+            double lz4Millis = load(shape, rows, PageCompression.LZ4);
+
+            ByteBuffer compressed = ByteBuffer.allocate(PAGE_SIZE);
+            ByteBuffer decompressed = ByteBuffer.allocate(PAGE_SIZE);
+            long stored = 0;
+            for (ByteBuffer page: pages) {
+                compressed.clear();
+                stored += PageFormat.compress(page, PageCompression.LZ4, compressed) ? compressed.limit() : PAGE_SIZE;
+            }
+
+            int rounds = (int) Math.max(1, WORK_BYTES / ((long) Math.max(1, pages.size()) * PAGE_SIZE));
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (ByteBuffer page: pages) {
+                    compressed.clear();
+                    PageFormat.compress(page, PageCompression.LZ4, compressed);
+                }
+            }
+            double compressSeconds = (System.nanoTime() - start) / 1e9;
+
+            List<ByteBuffer> storedPages = new ArrayList<>();
+            for (ByteBuffer page: pages) {
+                ByteBuffer copy = ByteBuffer.allocate(PAGE_SIZE);
+                if (PageFormat.compress(page, PageCompression.LZ4, copy))
+                    storedPages.add(copy);
+            }
+            start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                for (ByteBuffer page: storedPages)
+                    PageFormat.decompress(page, decompressed, PAGE_SIZE);
+            }
+            double decompressSeconds = (System.nanoTime() - start) / 1e9;
+
+            double megabytes = (double) rounds * pages.size() * PAGE_SIZE / (1 << 20);
+            double storedMegabytes = (double) rounds * storedPages.size() * PAGE_SIZE / (1 << 20);
+            System.out.printf("%-18s %6d %6d %11.2fx %14.0f %14.0f %12.1f %12.1f%n", shape.path, rows.size(),
+                    pages.size(), (double) pages.size() * PAGE_SIZE / Math.max(1, stored),
+                    megabytes / compressSeconds, storedMegabytes / decompressSeconds, plainMillis, lz4Millis);
+        }
+        DataManager.deleteDb(DB_LOC);
+    }
+
+    /**
+     * Load rows into a new database with a single table, purge it and read every record back
+     * @return the milliseconds it took
+     */
+    private static double load(Shape shape, List<Object[]> rows, PageCompression compression)
+            throws StorageManagerException {
+        long start = System.nanoTime();
+        StorageManager storageManager = new StorageManager(DB_LOC, BUFFER_PAGES, PAGE_SIZE, false);
+        storageManager.addTable(1, shape.dataTypes, shape.keyIndices, compression);
+        for (Object[] row: rows)
+            storageManager.insertRecord(1, row);
+        storageManager.purgeBuffer();
+        if (storageManager.getRecords(1).length != rows.size())
+            throw new IllegalStateException("Records were lost loading " + shape.path);
+        storageManager.terminateDatabase();
+        return (System.nanoTime() - start) / 1e6;
+    }
+
+    /**
+     * @return the record pages of a table, each in a buffer of its own
+     */
+    private static List<ByteBuffer> readPages(int table) throws IOException {
+        List<ByteBuffer> pages = new ArrayList<>();
+        Path path = Paths.get(DB_LOC, "db", String.valueOf(table),
+                PageTypes.RECORD_PAGE.relLoc + DataManager.segmentExtension);
+        try (FileChannel channel = FileChannel.open(path)) {
+            for (long position = 0; position + PAGE_SIZE <= channel.size(); position += PAGE_SIZE) {
+                ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE);
+                while (page.hasRemaining() && channel.read(page, position + page.position()) > 0);
+                page.flip();
+                if (PageFormat.isPageFormat(page))
+                    pages.add(page);
+            }
+        }
+        return pages;
+    }
+
+    private static class Shape {
+        final String path;
+        final String[] dataTypes;
+        final Integer[] keyIndices;
+
+        Shape(String path, String[] dataTypes, Integer[] keyIndices) {
+            this.path = path;
+            this.dataTypes = dataTypes;
+            this.keyIndices = keyIndices;
+        }
+
+        List<Object[]> read() throws IOException {
+            List<Object[]> rows = new ArrayList<>();
+            if (!Files.exists(Paths.get(path))) {
+                System.err.println("Missing " + new File(path).getAbsolutePath());
+                return rows;
+            }
+            try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] elems = line.split(",");
+                    Object[] row = new Object[dataTypes.length];
+                    for (int i = 0; i < dataTypes.length; i++) {
+                        switch (dataTypes[i]) {
+                            case "integer": row[i] = Integer.parseInt(elems[i]); break;
+                            case "double": row[i] = Double.parseDouble(elems[i]); break;
+                            case "boolean": row[i] = Boolean.valueOf(elems[i]); break;
+                            default: row[i] = elems[i];
+                        }
+                    }
+                    rows.add(row);
+                }
+            }
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package testing;
+
+import storagemanager.AStorageManager;
+import storagemanager.StorageManager;
+import storagemanager.StorageManagerException;
+import storagemanager.buffermanager.BufferOptions;
+import storagemanager.buffermanager.diskUtils.DataManager;
+import storagemanager.buffermanager.diskUtils.Superblock;
+import storagemanager.buffermanager.wal.WriteAheadLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class RecoveryTester {
+    /**
+     * Tests that a database logging its changes comes back from a crash with exactly what was committed.
+     *
+     * A second process loads the table, commits a transaction, then starts one that it never commits and halts
+     * without shutting down. The buffer holds a few of the table's pages, so most of the uncommitted changes were
+     * written out as pages were pushed out of it, and the database is left with its log and a superblock that does
+     * not say it was shut down cleanly. The restart has to keep every committed row and take back every uncommitted
+     * insert, update and delete, and a second restart after a clean shut down finds the same rows.
+     *
+     * Then processes insert and remove rows one at a time into a table of small pages, splitting and merging them,
+     * and halt part way. The restart has to put the pages back in key order: every row committed is found by a scan,
+     * in order, and by looking up its key, and no other row is.
+     */
+
+    private static final String DB_LOC = "recoverydb/";
+    private static final int PAGE_SIZE = 512;
+    // small enough that pages are pushed out while the rows are loaded
+    private static final int BUFFER_PAGES = 10;
+    private static final int ROWS = 2000;
+    private static final String[] DATA_TYPES = {"integer", "varchar(20)"};
+    private static final Integer[] KEY_INDICES = {0};
+
+    // rows are inserted and removed one at a time, pages hold a handful so they split and merge often
+    private static final int SPLIT_PAGE_SIZE = 256;
+    private static final int SPLIT_BUFFER_PAGES = 6;
+    private static final int SPLIT_KEYS = 3000;
+    private static final String[] SPLIT_DATA_TYPES = {"integer", "char(10)"};
+    private static final int SPLIT_OPERATIONS = 4500;
+    private static final int SPLIT_RUNS = 6;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("crash")) {
+            crash();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("splits")) {
+            crashSplitting(Integer.parseInt(args[1]));
+            return;
+        }
+
+        DataManager.deleteDb(DB_LOC);
+        System.out.println("Crashing a database in the middle of a transaction");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process crashed = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                RecoveryTester.class.getName(), "crash").inheritIO().start();
+        if (crashed.waitFor() != 0) {
+            System.err.println("The crashing process failed before it crashed");
+            System.exit(1);
+        }
+        checkCrashed();
+
+        System.out.println("Restarting the database: keep the committed rows, take back the uncommitted transaction");
+        AStorageManager sm = new StorageManager(DB_LOC, BUFFER_PAGES, PAGE_SIZE, true, options());
+        verify(sm);
+
+        System.out.println("Testing a transaction rolled back after the restart");
+        sm.beginTransaction();
+        for (int i = 1; i < ROWS; i += 2)
+            sm.insertRecord(1, new Object[]{i, "rolled back"});
+        sm.removeRecord(1, new Object[]{0});
+        sm.rollbackTransaction();
+        verify(sm);
+        sm.terminateDatabase();
+
+        System.out.println("Restarting the database after a clean shut down");
+        sm = new StorageManager(DB_LOC, BUFFER_PAGES, PAGE_SIZE, true, options());
+        verify(sm);
+        sm.terminateDatabase();
+
+        for (int run = 0; run < SPLIT_RUNS; run++) {
+            System.out.println("Crashing a database while inserts and removes split and merge its pages"
+                    + (run % 2 == 1 ? ", taking checkpoints" : ""));
+            DataManager.deleteDb(DB_LOC);
+            Process splitting = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    RecoveryTester.class.getName(), "splits", String.valueOf(run))
+                    .inheritIO().start();
+            if (splitting.waitFor() != 0) {
+                System.err.println("The crashing process failed before it crashed");
+                System.exit(1);
+            }
+            sm = new StorageManager(DB_LOC, SPLIT_BUFFER_PAGES, SPLIT_PAGE_SIZE, true, options());
+            verifySplits(sm, run);
+            sm.terminateDatabase();
+        }
+        DataManager.deleteDb(DB_LOC);
+
+        System.out.println("All tests passed!");
+    }
+
+    /**
+     * Runs in its own process and never shuts the database down. Even keys are committed, odd keys and the changes
+     * to every fourth key are made by a transaction that is never committed
+     */
+    private static void crash() throws StorageManagerException {
+        AStorageManager sm = new StorageManager(DB_LOC, BUFFER_PAGES, PAGE_SIZE, false, options());
+        sm.addTable(1, DATA_TYPES, KEY_INDICES);
+        for (int i = 0; i < ROWS; i += 2)
+            sm.insertRecord(1, new Object[]{i, "inserted"});
+
+        // committed: every even key is updated
+        sm.beginTransaction();
+        for (int i = 0; i < ROWS; i += 2)
+            sm.updateRecord(1, new Object[]{i, "committed"});
+        sm.commitTransaction();
+
+        // never committed
+        sm.beginTransaction();
+        for (int i = 1; i < ROWS; i += 2)
+            sm.insertRecord(1, new Object[]{i, "uncommitted"});
+        for (int i = 0; i < ROWS; i += 4)
+            sm.updateRecord(1, new Object[]{i, "uncommitted"});
+        for (int i = 2; i < ROWS; i += 4)
+            sm.removeRecord(1, new Object[]{i});
+        // pages holding uncommitted changes were pushed out of the buffer onto disk, the restart has to take them
+        // back out
+        Runtime.getRuntime().halt(0);
+    }
+
+    /**
+     * The crashed database was not shut down: its superblock does not say it was shut down cleanly and its log still
+     * holds the changes a restart reads
+     */
+    private static void checkCrashed() throws IOException {
+        DataManager.setDbmsPath(DB_LOC);
+        Superblock superblock = DataManager.openSuperblock();
+        if (superblock != null && superblock.isClean()) {
+            System.err.println("The crashed database says it was shut down cleanly");
+            System.exit(1);
+        }
+        WriteAheadLog log = WriteAheadLog.open(DataManager.logPath(), 0);
+        boolean empty = log.firstLsn() == log.nextLsn();
+        log.close();
+        if (empty) {
+            System.err.println("The crashed database's log is empty");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Runs in its own process, makes the run's inserts and removes and halts without shutting down
+     * @param run odd runs take checkpoints while the rows change
+     */
+    private static void crashSplitting(int run) throws StorageManagerException {
+        BufferOptions options = options();
+        if (run % 2 == 1) {
+            options.setRecoveryTargetMillis(40);
+            options.setRedoBytesPerSecond(200000);
+        }
+        AStorageManager sm = new StorageManager(DB_LOC, SPLIT_BUFFER_PAGES, SPLIT_PAGE_SIZE, false, options);
+        sm.addTable(1, SPLIT_DATA_TYPES, KEY_INDICES);
+        Random random = new Random(run);
+        for (int i = 0; i < SPLIT_OPERATIONS; i++) {
+            int key = random.nextInt(SPLIT_KEYS);
+            try {
+                if (random.nextInt(10) < 6)
+                    sm.insertRecord(1, new Object[]{key, "row " + i});
+                else
+                    sm.removeRecord(1, new Object[]{key});
+            } catch (StorageManagerException e) {
+                // the key is already in the table or is not in it
+            }
+        }
+        Runtime.getRuntime().halt(0);
+    }
+
+    /**
+     * The rows the run committed are in the table in key order, each is found by its key, no other key is found
+     * and a row can not be inserted again
+     */
+    private static void verifySplits(AStorageManager sm, int run) throws StorageManagerException {
+        TreeMap<Integer, String> committed = new TreeMap<>();
+        Random random = new Random(run);
+        for (int i = 0; i < SPLIT_OPERATIONS; i++) {
+            int key = random.nextInt(SPLIT_KEYS);
+            if (random.nextInt(10) < 6)
+                committed.putIfAbsent(key, "row " + i);
+            else
+                committed.remove(key);
+        }
+
+        Object[][] records = sm.getRecords(1);
+        if (records.length != committed.size()) {
+            System.err.println("Expected " + committed.size() + " records, found " + records.length);
+            System.exit(1);
+        }
+        int i = 0;
+        for (Map.Entry<Integer, String> row: committed.entrySet()) {
+            Object[] record = records[i++];
+            if (!record[0].equals(row.getKey()) || !((String) record[1]).trim().equals(row.getValue())) {
+                System.err.println("Record " + Arrays.toString(record) + " is out of order or not what was "
+                        + "committed, expected key " + row.getKey());
+                System.exit(1);
+            }
+        }
+        for (int key = 0; key < SPLIT_KEYS; key++) {
+            if ((sm.getRecord(1, new Object[]{key}) != null) != committed.containsKey(key)) {
+                System.err.println("Looking up key " + key + " after the restart found the wrong record");
+                System.exit(1);
+            }
+        }
+        for (int key: committed.keySet()) {
+            try {
+                sm.insertRecord(1, new Object[]{key, "again"});
+                System.err.println("Key " + key + " was inserted twice after the restart");
+                System.exit(1);
+            } catch (StorageManagerException e) {
+                // it is already in the table
+            }
+        }
+    }
+
+    /**
+     * Every even key and only the even keys are in the table, as the committed transaction left them
+     */
+    private static void verify(AStorageManager sm) throws StorageManagerException {
+        Object[][] records = sm.getRecords(1);
+        if (records.length != ROWS / 2) {
+            System.err.println("Expected " + ROWS / 2 + " records, found " + records.length);
+            System.exit(1);
+        }
+        for (int i = 0; i < records.length; i++) {
+            Object[] record = records[i];
+            if (!record[0].equals(i * 2) || !record[1].equals("committed")) {
+                System.err.println("Record " + Arrays.toString(record) + " is not what was committed");
+                System.exit(1);
+            }
+        }
+    }
+
+    private static BufferOptions options() {
+        BufferOptions options = new BufferOptions();
+        options.setWriteAheadLog(true);
+        return options;
+    }
+}
@@ -0,0 +1,97 @@
+package testing;
+
+import storagemanager.buffermanager.pageManager.AgeTracker;
+import storagemanager.buffermanager.pageManager.AgedObjectPool;
+import storagemanager.buffermanager.pageManager.ClockReplacer;
+import storagemanager.buffermanager.pageManager.Frame;
+import storagemanager.util.Subscriber;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class ReplacerBenchmark {
+    /**
+     * Compares the cost of a page access between the old sorted AgedObjectPool and the ClockReplacer.
+     *
+     * The workload mimics the page buffer: look the page up, touch it if it is resident otherwise admit it
+     * (evicting another page once the pool is full). Page ids are drawn from twice the pool size so roughly
+     * half of the accesses are misses.
+     */
+
+    private static final int[] POOL_SIZES = {100, 1000, 10000, 100000};
+    private static final int CLOCK_ACCESSES = 2000000;
+    // the aged pool sorts the whole pool on every access, scale the run down so large pools finish
+    private static final long AGED_WORK = 20000000L;
+
+    public static void main(String[] args) {
+        System.out.printf("%10s %12s %16s %16s %10s%n", "pool size", "accesses", "aged ns/access", "clock ns/access", "speedup");
+        for (int poolSize: POOL_SIZES) {
+            int agedAccesses = (int) Math.max(500, AGED_WORK / poolSize);
+
+            // one untimed pass to warm up the jit
+            benchmarkAged(poolSize, agedAccesses);
+            benchmarkClock(poolSize, CLOCK_ACCESSES);
+
+            double aged = benchmarkAged(poolSize, agedAccesses);
+            double clock = benchmarkClock(poolSize, CLOCK_ACCESSES);
+            System.out.printf("%10d %12d %16.1f %16.1f %9.1fx%n", poolSize, agedAccesses, aged, clock, aged / clock);
+        }
+    }
+
+    /**
+     * @return nanoseconds per access
+     */
+    private static double benchmarkAged(int poolSize, int accesses) {
+        AgedObjectPool<Integer> pool = new AgedObjectPool<>(poolSize);
+        Map<Integer, AgeTracker<Integer>> resident = new HashMap<>();
+        pool.subscribe(new Subscriber<Integer>() {
+            @Override
+            protected void onUpdate(Integer next) {
+                resident.remove(next);
+            }
+        });
+        for (int i = 0; i < poolSize; i++)
+            resident.put(i, pool.createTrackerForPool(i));
+
+        Random random = new Random(421);
+        long start = System.nanoTime();
+        for (int i = 0; i < accesses; i++) {
+            int page = random.nextInt(poolSize * 2);
+            AgeTracker<Integer> tracker = resident.get(page);
+            if (tracker != null)
+                tracker.ageIncrement();
+            else
+                resident.put(page, pool.createTrackerForPool(page));
+        }
+        return (double) (System.nanoTime() - start) / accesses;
+    }
+
+    /**
+     * @return nanoseconds per access
+     */
+    private static double benchmarkClock(int poolSize, int accesses) {
+        ClockReplacer<Integer> pool = new ClockReplacer<>(poolSize);
+        Map<Integer, Frame<Integer>> resident = new HashMap<>();
+        pool.subscribe(new Subscriber<Integer>() {
+            @Override
+            protected void onUpdate(Integer next) {
+                resident.remove(next);
+            }
+        });
+        for (int i = 0; i < poolSize; i++)
+            resident.put(i, pool.createFrameForPool(i));
+
+        Random random = new Random(421);
+        long start = System.nanoTime();
+        for (int i = 0; i < accesses; i++) {
+            int page = random.nextInt(poolSize * 2);
+            Frame<Integer> frame = resident.get(page);
+            if (frame != null)
+                frame.touch();
+            else
+                resident.put(page, pool.createFrameForPool(page));
+        }
+        return (double) (System.nanoTime() - start) / accesses;
+    }
+}
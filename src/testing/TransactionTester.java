@@ -0,0 +1,113 @@
+package testing;
+
+import storagemanager.AStorageManager;
+import storagemanager.StorageManager;
+import storagemanager.StorageManagerException;
+import storagemanager.buffermanager.BufferOptions;
+import storagemanager.buffermanager.diskUtils.DataManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class TransactionTester {
+    /**
+     * Tests that rolling back a transaction takes back every change it made, with and without the write ahead log.
+     *
+     * The pages are small, so the inserts made in shuffled order split pages and the deletes merge them: the
+     * records a rollback takes back are in other pages than the ones they went in. A table that was empty before the
+     * transaction has to be empty after it, and one that held committed rows has to hold exactly those. A
+     * transaction left open when the database shuts down is rolled back before it is.
+     */
+
+    private static final String DB_LOC = "transactiondb/";
+    private static final int PAGE_SIZE = 256;
+    private static final int BUFFER_PAGES = 8;
+    private static final int[] ROWS = {10, 50, 500, 3000};
+    private static final String[] DATA_TYPES = {"integer", "char(10)"};
+    private static final Integer[] KEY_INDICES = {0};
+
+    public static void main(String[] args) throws StorageManagerException {
+        for (boolean logged: new boolean[]{false, true}) {
+            for (int rows: ROWS) {
+                System.out.println("Rolling back " + rows + " inserts" + (logged ? " with the write ahead log" : ""));
+                DataManager.deleteDb(DB_LOC);
+                AStorageManager sm = new StorageManager(DB_LOC, BUFFER_PAGES, PAGE_SIZE, false, options(logged));
+                sm.addTable(1, DATA_TYPES, KEY_INDICES);
+                List<Integer> keys = shuffled(rows, rows);
+
+                // inserts that split pages and deletes that merge them, all taken back
+                sm.beginTransaction();
+                for (int key: keys)
+                    sm.insertRecord(1, new Object[]{key, "inserted"});
+                for (int key: shuffled(rows, rows + 1).subList(0, rows / 2))
+                    sm.removeRecord(1, new Object[]{key});
+                sm.rollbackTransaction();
+                verify(sm, rows, false);
+
+                // committed rows survive a rollback of updates and deletes made to them
+                for (int key: keys)
+                    sm.insertRecord(1, new Object[]{key, "committed"});
+                sm.beginTransaction();
+                for (int key: shuffled(rows, rows + 2).subList(0, rows / 2))
+                    sm.updateRecord(1, new Object[]{key, "updated"});
+                for (int key: shuffled(rows, rows + 3).subList(0, rows / 2))
+                    sm.removeRecord(1, new Object[]{key});
+                sm.rollbackTransaction();
+                verify(sm, rows, true);
+
+                // a transaction still open at shut down is rolled back
+                sm.beginTransaction();
+                for (int key: keys)
+                    sm.removeRecord(1, new Object[]{key});
+                sm.terminateDatabase();
+                sm = new StorageManager(DB_LOC, BUFFER_PAGES, PAGE_SIZE, true, options(logged));
+                verify(sm, rows, true);
+                sm.terminateDatabase();
+            }
+        }
+        DataManager.deleteDb(DB_LOC);
+
+        System.out.println("All tests passed!");
+    }
+
+    /**
+     * @param committed the table holds every key as committed, otherwise it is empty
+     */
+    private static void verify(AStorageManager sm, int rows, boolean committed) throws StorageManagerException {
+        Object[][] records = sm.getRecords(1);
+        int expected = committed ? rows : 0;
+        if (records.length != expected) {
+            System.err.println("Expected " + expected + " records after the rollback, found " + records.length);
+            System.exit(1);
+        }
+        for (int i = 0; i < records.length; i++) {
+            if (!records[i][0].equals(i) || !((String) records[i][1]).trim().equals("committed")) {
+                System.err.println("Record " + records[i][0] + " is not what was committed");
+                System.exit(1);
+            }
+        }
+        // every key is found where it is looked for
+        for (int key = 0; key < rows; key++) {
+            if ((sm.getRecord(1, new Object[]{key}) != null) != committed) {
+                System.err.println("Looking up key " + key + " after the rollback found the wrong record");
+                System.exit(1);
+            }
+        }
+    }
+
+    private static List<Integer> shuffled(int rows, long seed) {
+        List<Integer> keys = new ArrayList<>(rows);
+        for (int key = 0; key < rows; key++)
+            keys.add(key);
+        Collections.shuffle(keys, new Random(seed));
+        return keys;
+    }
+
+    private static BufferOptions options(boolean logged) {
+        BufferOptions options = new BufferOptions();
+        options.setWriteAheadLog(logged);
+        return options;
+    }
+}